@@ -0,0 +1,85 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ItemCatalogParser (cached reader per schema, reused decoder, DTO and decode buffer) vs. decoding into a fresh
+ * byte[] and building a SpecificDatumReader and BinaryDecoder for every record, and vs. a cached reader still
+ * decoding into a fresh byte[] and DTO. Every arm reads the same Confluent-framed records and returns the
+ * ItemCatalog model. Compare gc.alloc.rate.norm for bytes per record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AvroParserBenchmark {
+
+    private static final int SCHEMA_ID = 3;
+    // Magic byte and schema id, skipped by the baselines, which know the writer schema
+    private static final int CONFLUENT_HEADER_LENGTH = 5;
+
+    /** Entries per level of reconciledAttributes (attributes x locales x values) */
+    @Param({"2", "6"})
+    public int attributes;
+
+    private ItemCatalogParser parser;
+    private SpecificDatumReader<ItemCatalogDTO> reader;
+    private List<KafkaEvent.KafkaEventRecord> framed;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        AvroSchemaCache schemas = new AvroSchemaCache();
+        schemas.register(SCHEMA_ID, ItemCatalogDTO.getClassSchema());
+        parser = new ItemCatalogParser(AvroRecordParser.WireFormat.CONFLUENT, schemas);
+        reader = new SpecificDatumReader<>(ItemCatalogDTO.class);
+        framed = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            ItemCatalogDTO dto = ItemCatalogRecords.dto(i + 1, 1_000L + i, attributes);
+            framed.add(ItemCatalogRecords.record(i, ItemCatalogRecords.encode(dto, SCHEMA_ID)));
+        }
+    }
+
+    @Benchmark
+    public ItemCatalog cachedReader() throws Exception {
+        KafkaEvent.KafkaEventRecord record = framed.get(next);
+        next = (next + 1) % framed.size();
+        return parser.parseRecord(record);
+    }
+
+    @Benchmark
+    public ItemCatalog readerPerRecord() throws Exception {
+        KafkaEvent.KafkaEventRecord record = framed.get(next);
+        next = (next + 1) % framed.size();
+        byte[] avro = Base64.getDecoder().decode(record.getValue().getBytes(StandardCharsets.UTF_8));
+        SpecificDatumReader<ItemCatalogDTO> reader = new SpecificDatumReader<>(ItemCatalogDTO.class);
+        BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(avro, CONFLUENT_HEADER_LENGTH,
+                avro.length - CONFLUENT_HEADER_LENGTH, null);
+        return parser.toModel(reader.read(null, decoder));
+    }
+
+    @Benchmark
+    public ItemCatalog cachedReaderFreshArray() throws Exception {
+        KafkaEvent.KafkaEventRecord record = framed.get(next);
+        next = (next + 1) % framed.size();
+        byte[] avro = Base64.getDecoder().decode(record.getValue());
+        return parser.toModel(reader.read(null, DecoderFactory.get().binaryDecoder(avro, CONFLUENT_HEADER_LENGTH,
+                avro.length - CONFLUENT_HEADER_LENGTH, null)));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size and cost of the nested columns of a Dish (dishOptions, openHours) and an ItemCatalog
+ * (reconciledAttributes) in each ColumnEncoding. JSON is the baseline of a text-encoded value.
+ *
+ * The secondary results of encode are the encoded size of each column and of the three together
+ * (mutationBytes): the payload each write sends and each replica stores, which drives the write latency on
+ * the wire. encode is the client-side cost added to each write, decode the cost added to each read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColumnEncodingBenchmark {
+
+    @Param({"JSON", "SMILE", "CBOR", "SMILE_LZ4", "CBOR_LZ4"})
+    public ColumnEncoding encoding;
+
+    /** dishOptions per dish, with as many items each; also the entries per level of reconciledAttributes */
+    @Param({"3", "8"})
+    public int size;
+
+    private Dish dish;
+    private ItemCatalog item;
+    private BlobColumnCodec<Object> options;
+    private BlobColumnCodec<Object> openHours;
+    private BlobColumnCodec<Object> attributes;
+    private ByteBuffer encodedOptions;
+    private ByteBuffer encodedOpenHours;
+    private ByteBuffer encodedAttributes;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        // Assigned, not accumulated: each is the size of one operation's encoding
+        public long dishOptionsBytes;
+        public long openHoursBytes;
+        public long reconciledAttributesBytes;
+        public long mutationBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            dishOptionsBytes = 0;
+            openHoursBytes = 0;
+            reconciledAttributesBytes = 0;
+            mutationBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        dish = KafkaEventGenerator.builder()
+                .dishOptions(size)
+                .optionItemsPerOption(size)
+                .openHours(7)
+                .build()
+                .dish(1, 1, new Random(42));
+        item = new ItemCatalog();
+        item.setReconciledAttributes(ItemCatalogRecords.dto(1, 1, size).getReconciledAttributes());
+
+        options = codec(Dish.class, "dishOptions");
+        openHours = codec(Dish.class, "openHours");
+        attributes = codec(ItemCatalog.class, "reconciledAttributes");
+        encodedOptions = options.encode(dish.getDishOptions());
+        encodedOpenHours = openHours.encode(dish.getOpenHours());
+        encodedAttributes = attributes.encode(item.getReconciledAttributes());
+    }
+
+    @Benchmark
+    public int encode(Sizes sizes) {
+        int optionsBytes = options.encode(dish.getDishOptions()).remaining();
+        int openHoursBytes = openHours.encode(dish.getOpenHours()).remaining();
+        int attributesBytes = attributes.encode(item.getReconciledAttributes()).remaining();
+        sizes.dishOptionsBytes = optionsBytes;
+        sizes.openHoursBytes = openHoursBytes;
+        sizes.reconciledAttributesBytes = attributesBytes;
+        sizes.mutationBytes = optionsBytes + openHoursBytes + attributesBytes;
+        return optionsBytes + openHoursBytes + attributesBytes;
+    }
+
+    @Benchmark
+    public Object[] decode() {
+        return new Object[]{
+                options.decode(encodedOptions),
+                openHours.decode(encodedOpenHours),
+                attributes.decode(encodedAttributes)
+        };
+    }
+
+    private BlobColumnCodec<Object> codec(Class<?> modelClass, String field) throws NoSuchFieldException {
+        Type type = modelClass.getDeclaredField(field).getGenericType();
+        return new BlobColumnCodec<>(type, encoding);
+    }
+}
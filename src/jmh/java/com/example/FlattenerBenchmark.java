@@ -0,0 +1,53 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * KafkaEventFlattener.flatten and RecordCoalescer.coalesce over a whole event, the per-invocation
+ * work done before any record is parsed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FlattenerBenchmark {
+
+    @Param({"1", "16"})
+    public int partitions;
+
+    @Param({"100", "1000"})
+    public int recordsPerPartition;
+
+    private KafkaEvent event;
+    private List<KafkaEvent.KafkaEventRecord> records;
+
+    @Setup
+    public void setUp() {
+        event = KafkaEventGenerator.builder()
+                .partitions(partitions)
+                .recordsPerPartition(recordsPerPartition)
+                .build()
+                .generate();
+        records = KafkaEventFlattener.flatten(event);
+    }
+
+    @Benchmark
+    public List<KafkaEvent.KafkaEventRecord> flatten() {
+        return KafkaEventFlattener.flatten(event);
+    }
+
+    @Benchmark
+    public RecordCoalescer.CoalescedBatch coalesce() {
+        return RecordCoalescer.coalesce(records, true);
+    }
+}
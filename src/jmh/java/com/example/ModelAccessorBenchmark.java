@@ -0,0 +1,71 @@
+package com.example;
+
+import com.example.annotations.VersionKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading @VersionKey / @PartitionKey per entity: the previous Field.get + cast path
+ * vs. ModelMetadata's generated accessors vs. a direct getter call as the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ModelAccessorBenchmark {
+
+    private Dish dish;
+    private Field versionField;
+    private Field idField;
+    private ModelMetadata metadata;
+
+    @Setup
+    public void setUp() {
+        dish = new Dish();
+        dish.setId(77593308L);
+        dish.setVersion(1726727253238000000L);
+        for (Field f : Dish.class.getDeclaredFields()) {
+            if (f.isAnnotationPresent(VersionKey.class)) {
+                f.setAccessible(true);
+                versionField = f;
+            }
+            if ("id".equals(f.getName())) {
+                f.setAccessible(true);
+                idField = f;
+            }
+        }
+        metadata = ModelMetadata.of(Dish.class);
+    }
+
+    @Benchmark
+    public long versionViaFieldGet() throws IllegalAccessException {
+        return (long) versionField.get(dish);
+    }
+
+    @Benchmark
+    public long versionViaModelMetadata() {
+        return metadata.versionOf(dish);
+    }
+
+    @Benchmark
+    public long versionViaGetter() {
+        return dish.getVersion();
+    }
+
+    @Benchmark
+    public Object partitionKeyViaFieldGet() throws IllegalAccessException {
+        return idField.get(dish);
+    }
+
+    @Benchmark
+    public Object partitionKeyViaModelMetadata() {
+        return metadata.partitionKeyOf(dish);
+    }
+}
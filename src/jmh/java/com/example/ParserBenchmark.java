@@ -0,0 +1,71 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DishParser.parseRecord per record, from a small Dish to one with many options and open hours, vs. decoding
+ * each value into a fresh byte[] with java.util.Base64 before Jackson reads it. Run with the gc profiler (the
+ * default in build.gradle): gc.alloc.rate.norm is the bytes allocated per record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParserBenchmark {
+
+    @Param({"0", "20"})
+    public int dishOptions;
+
+    @Param({"5"})
+    public int optionItemsPerOption;
+
+    @Param({"0", "7"})
+    public int openHours;
+
+    private DishParser parser;
+    private ObjectReader reader;
+    private List<KafkaEvent.KafkaEventRecord> records;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        parser = new DishParser();
+        reader = new ObjectMapper().registerModule(new BlackbirdModule()).readerFor(Dish.class);
+        KafkaEvent event = KafkaEventGenerator.builder()
+                .recordsPerPartition(256)
+                .dishOptions(dishOptions)
+                .optionItemsPerOption(optionItemsPerOption)
+                .openHours(openHours)
+                .build()
+                .generate();
+        records = KafkaEventFlattener.flatten(event);
+    }
+
+    @Benchmark
+    public Dish parseDish() throws Exception {
+        KafkaEvent.KafkaEventRecord record = records.get(next);
+        next = (next + 1) % records.size();
+        return parser.parseRecord(record);
+    }
+
+    @Benchmark
+    public Dish decodeToFreshArray() throws Exception {
+        KafkaEvent.KafkaEventRecord record = records.get(next);
+        next = (next + 1) % records.size();
+        return reader.readValue(Base64.getDecoder().decode(record.getValue()));
+    }
+}
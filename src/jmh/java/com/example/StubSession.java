@@ -0,0 +1,95 @@
+package com.example;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A network-free driver Session for benchmarks: executeAsync acknowledges every request after a fixed
+ * round-trip latency plus a per-statement cost, and counts requests and statements.
+ */
+final class StubSession {
+
+    private final long requestLatencyMicros;
+    private final long perStatementMicros;
+    private final ScheduledExecutorService acks = Executors.newScheduledThreadPool(2, r -> {
+        Thread t = new Thread(r, "stub-session-ack");
+        t.setDaemon(true);
+        return t;
+    });
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong statements = new AtomicLong();
+
+    StubSession(long requestLatencyMicros, long perStatementMicros) {
+        this.requestLatencyMicros = requestLatencyMicros;
+        this.perStatementMicros = perStatementMicros;
+    }
+
+    Session session() {
+        return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> {
+                    if ("executeAsync".equals(method.getName()) && args.length == 1 && args[0] instanceof Statement) {
+                        return executeAsync((Statement) args[0]);
+                    }
+                    if ("isClosed".equals(method.getName())) {
+                        return false;
+                    }
+                    return null;
+                });
+    }
+
+    void shutdown() {
+        acks.shutdownNow();
+    }
+
+    private ResultSetFuture executeAsync(Statement statement) {
+        int count = statement instanceof BatchStatement ? ((BatchStatement) statement).size() : 1;
+        requests.incrementAndGet();
+        statements.addAndGet(count);
+        StubResultSetFuture future = new StubResultSetFuture();
+        acks.schedule(future::acknowledge, requestLatencyMicros + perStatementMicros * count, TimeUnit.MICROSECONDS);
+        return future;
+    }
+
+    static final class StubResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        void acknowledge() {
+            set(null);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            try {
+                return Uninterruptibles.getUninterruptibly(this);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) throws TimeoutException {
+            try {
+                return Uninterruptibles.getUninterruptibly(this, timeout, unit);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example;
+
+import com.datastax.driver.core.SimpleStatement;
+import com.example.annotations.PartitionKey;
+import com.example.annotations.VersionKey;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One-statement-per-entity vs partition-key-grouped UNLOGGED batches, against a stubbed session
+ * that charges a fixed round trip per request plus a small per-statement cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WriterBatchingBenchmark {
+
+    @Param({"1", "20"})
+    public int batchMaxStatements;
+
+    @Param({"1", "10"})
+    public int rowsPerPartition;
+
+    @Param({"2000"})
+    public int entities;
+
+    @Param({"500"})
+    public long requestLatencyMicros;
+
+    private StubSession stub;
+    private AsyncCassandraWriter writer;
+    private List<Object> items;
+
+    /**
+     * A model with a compound primary key: several rows (dishId) share one partition (storeId).
+     */
+    public static class StoreDish {
+        @PartitionKey
+        private Long storeId;
+        private Long dishId;
+        @VersionKey
+        private Long version;
+
+        // ModelMetadata requires a no-arg constructor, as the Mapper does
+        StoreDish() {
+        }
+
+        StoreDish(long storeId, long dishId, long version) {
+            this.storeId = storeId;
+            this.dishId = dishId;
+            this.version = version;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Requests {
+        public long requests;
+        public long statements;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stub = new StubSession(requestLatencyMicros, 5);
+        WriteEngine engine = (entity, timestamp) -> {
+            StoreDish dish = (StoreDish) entity;
+            return new SimpleStatement(
+                    "INSERT INTO store_dish (store_id, dish_id, version) VALUES (?, ?, ?) USING TIMESTAMP ?",
+                    dish.storeId, dish.dishId, dish.version, timestamp);
+        };
+        writer = new AsyncCassandraWriter(AsyncCassandraWriter.Settings.builder()
+                .rows(DriverCassandraSession.rowWriter(stub.session(), engine))
+                .modelClass(StoreDish.class)
+                .window(new AdaptiveWriteWindow(8, 256, 200))
+                .batchMaxStatements(batchMaxStatements)
+                .build());
+        items = new ArrayList<>(entities);
+        for (int i = 0; i < entities; i++) {
+            items.add(new StoreDish(i / rowsPerPartition, i, 1_000L + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.shutdown();
+    }
+
+    @Benchmark
+    public void executeAsyncWrites(Requests counters) {
+        long requestsBefore = stub.requests.get();
+        long statementsBefore = stub.statements.get();
+        writer.executeAsyncWrites(items);
+        counters.requests += stub.requests.get() - requestsBefore;
+        counters.statements += stub.statements.get() - statementsBefore;
+    }
+}
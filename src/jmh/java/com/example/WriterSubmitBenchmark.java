@@ -0,0 +1,81 @@
+package com.example;
+
+import com.datastax.driver.core.SimpleStatement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The AsyncCassandraWriter submission path for Dish entities (statement building, window accounting,
+ * callbacks) against a stubbed session that acknowledges immediately, so the client-side CPU and
+ * allocation cost per entity is measured rather than the round trip. With laneStripes set, the ten versions
+ * of each dish id go through WriteLanes, ordered or collapsed into the newest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WriterSubmitBenchmark {
+
+    @Param({"1", "20"})
+    public int batchMaxStatements;
+
+    @Param({"1000"})
+    public int entities;
+
+    /** 0 submits without WriteLanes */
+    @Param({"0", "4096"})
+    public int laneStripes;
+
+    private StubSession stub;
+    private AsyncCassandraWriter writer;
+    private List<Object> items;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stub = new StubSession(0, 0);
+        WriteEngine engine = (entity, timestamp) -> {
+            Dish dish = (Dish) entity;
+            return new SimpleStatement(
+                    "INSERT INTO dish (id, version, store_id, sale_price) VALUES (?, ?, ?, ?) USING TIMESTAMP ?",
+                    dish.getId(), dish.getVersion(), dish.getStoreId(), dish.getSalePrice(), timestamp);
+        };
+        writer = new AsyncCassandraWriter(AsyncCassandraWriter.Settings.builder()
+                .rows(DriverCassandraSession.rowWriter(stub.session(), engine))
+                .modelClass(Dish.class)
+                .window(new AdaptiveWriteWindow(8, 256, 200))
+                .batchMaxStatements(batchMaxStatements)
+                .lanes(laneStripes > 0 ? new WriteLanes(Dish.class, laneStripes, false) : null)
+                .build());
+        KafkaEventGenerator generator = KafkaEventGenerator.builder().build();
+        Random random = new Random(42);
+        items = new ArrayList<>(entities);
+        for (int i = 0; i < entities; i++) {
+            // Ten dishes per store, so batching has partitions to group by
+            Dish dish = generator.dish(i, 1_000L + i, random);
+            dish.setId((long) i / 10);
+            items.add(dish);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.shutdown();
+    }
+
+    @Benchmark
+    public List<Object> writeAsync() {
+        return writer.writeAsync(items).join();
+    }
+}
@@ -0,0 +1,268 @@
+package com.example;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds the number of in-flight Cassandra writes and adapts that bound with AIMD:
+ *  - until the first congestion signal the window grows by 1 per ack (doubling per window, like TCP slow start),
+ *  - after that every acknowledged write under the latency threshold grows the window by 1/window
+ *    (about +1 per full window of acks),
+ *  - a timeout, a busy/overloaded error or a slow ack halves the window, at most once per cooldown
+ *    so that one burst of failures only counts as a single congestion signal.
+ * The window lives as long as its writer, so warm invocations start from the limit learned previously.
+ *
+ * Callers that must not block (lane followers, retries) wait in a FIFO queue via {@link #acquireAsync}; a
+ * released permit goes to them before any caller blocked in {@link #acquire}, so a stream of new submissions
+ * cannot starve them.
+ */
+@Slf4j
+public class AdaptiveWriteWindow {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final long decreaseCooldownNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+
+    // Guarded by lock
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long lastDecreaseNanos;
+    private boolean slowStart = true;
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param minLimit           the window never shrinks below this many in-flight writes
+     * @param maxLimit           the window never grows above this many in-flight writes
+     * @param latencyThresholdMs an ack slower than this is treated as a congestion signal
+     */
+    public AdaptiveWriteWindow(int minLimit, int maxLimit, long latencyThresholdMs) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid write window bounds: min=" + minLimit + ", max=" + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.decreaseCooldownNanos = latencyThresholdNanos;
+        this.limit = minLimit;
+        this.lastDecreaseNanos = System.nanoTime() - decreaseCooldownNanos;
+    }
+
+    public static AdaptiveWriteWindow fromConfig(EnvironmentConfig config) {
+        return new AdaptiveWriteWindow(config.getWriteMinInFlight(), config.getWriteMaxInFlight(),
+                config.getWriteLatencyThresholdMs());
+    }
+
+    /**
+     * Blocks until the number of in-flight writes is below the current window, then takes one permit.
+     * The caller counts as queued while it waits.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            queued++;
+            try {
+                while (!hasFreePermit()) {
+                    permitReleased.await();
+                }
+                inFlight++;
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #acquire()}, giving up after {@code timeoutMillis}.
+     *
+     * @return whether a permit was taken
+     */
+    public boolean tryAcquire(long timeoutMillis) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            queued++;
+            try {
+                while (!hasFreePermit()) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = permitReleased.awaitNanos(remaining);
+                }
+                inFlight++;
+                return true;
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a permit only if one is free right now; never waits, so it is never counted as queued.
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (!hasFreePermit()) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a permit without blocking the caller: {@code onPermit} runs on {@code executor} once the permit is
+     * held, right away if one is free, otherwise when a released permit reaches it. The caller counts as
+     * queued until then. {@code onPermit} owns the permit and must release or cancel it.
+     */
+    public void acquireAsync(Executor executor, Runnable onPermit) {
+        lock.lock();
+        try {
+            if (!hasFreePermit()) {
+                waiters.addLast(new Waiter(executor, onPermit));
+                queued++;
+                return;
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        executor.execute(onPermit);
+    }
+
+    /**
+     * Returns the permit of a write that was never sent (e.g. the statement could not be built) or was
+     * cancelled before its outcome was known.
+     */
+    public void cancel() {
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            granted = grantWaiters();
+            permitReleased.signal();
+        } finally {
+            lock.unlock();
+        }
+        run(granted);
+    }
+
+    /**
+     * Returns the permit of a finished write and feeds its outcome into the window.
+     *
+     * @param latencyNanos time from submission to completion
+     * @param success      whether the write was acknowledged
+     * @param overloaded   whether the failure signals coordinator or connection saturation
+     */
+    public void release(long latencyNanos, boolean success, boolean overloaded) {
+        if (success) {
+            completed.increment();
+        } else {
+            failed.increment();
+        }
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            if (overloaded || latencyNanos > latencyThresholdNanos) {
+                long now = System.nanoTime();
+                if (now - lastDecreaseNanos >= decreaseCooldownNanos) {
+                    lastDecreaseNanos = now;
+                    slowStart = false;
+                    double previous = limit;
+                    limit = Math.max(minLimit, limit / 2);
+                    log.debug("Write window decreased {} -> {} (overloaded={}, latencyMs={})",
+                            (int) previous, (int) limit, overloaded, TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+                }
+            } else if (success) {
+                limit = Math.min(maxLimit, limit + (slowStart ? 1.0 : 1.0 / limit));
+            }
+            granted = grantWaiters();
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        run(granted);
+    }
+
+    // Guarded by lock: a blocking caller only takes a permit no async waiter is queued for
+    private boolean hasFreePermit() {
+        return inFlight < (int) limit && waiters.isEmpty();
+    }
+
+    /**
+     * Hands the free permits to the async waiters, oldest first. The caller holds the lock and runs the
+     * returned waiters once it released it.
+     */
+    private List<Waiter> grantWaiters() {
+        if (waiters.isEmpty() || inFlight >= (int) limit) {
+            return Collections.emptyList();
+        }
+        List<Waiter> granted = new ArrayList<>(1);
+        while (!waiters.isEmpty() && inFlight < (int) limit) {
+            inFlight++;
+            queued--;
+            granted.add(waiters.pollFirst());
+        }
+        return granted;
+    }
+
+    private static void run(List<Waiter> granted) {
+        for (Waiter waiter : granted) {
+            waiter.executor.execute(waiter.onPermit);
+        }
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats((int) limit, inFlight, queued, completed.sum(), failed.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Waiter {
+        private final Executor executor;
+        private final Runnable onPermit;
+
+        private Waiter(Executor executor, Runnable onPermit) {
+            this.executor = executor;
+            this.onPermit = onPermit;
+        }
+    }
+
+    @Value
+    public static class Stats {
+        int windowSize;
+        int inFlight;
+        /** Callers waiting for a permit right now */
+        int queued;
+        long completed;
+        long failed;
+    }
+}
@@ -1,57 +1,144 @@
 package com.example;
 
-import com.datastax.driver.mapping.Mapper;
-import com.datastax.driver.mapping.MappingManager;
-import com.datastax.driver.mapping.Mapper.Option;
-import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.MoreExecutors;
-
-import com.example.annotations.VersionKey;
+import com.datastax.driver.core.exceptions.BusyConnectionException;
+import com.datastax.driver.core.exceptions.BusyPoolException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
 
+import lombok.Builder;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An AsyncCassandraWriter that:
- *  1) Uses DataStax's Mapper<Object> (3.x) for the entity.
- *  2) Finds one field annotated with @VersionKey, applying it as the TIMESTAMP
+ *  1) Executes requests through a CassandraSession.RowWriter: on the driver, a WriteEngine (the driver's Mapper,
+ *     or PreparedWriteEngine) builds the statement for the entity.
+ *  2) Reads the field annotated with @VersionKey (via ModelMetadata), applying it as the TIMESTAMP
  *     so that only columns with an older timestamp get overwritten.
- *  3) Executes all writes asynchronously in parallel, returning a single future.
+ *  3) Executes all writes asynchronously in parallel, bounded by an AdaptiveWriteWindow so a large batch
+ *     never floods the driver's per-connection request queue.
+ *  4) Optionally groups entities sharing the @PartitionKey value into UNLOGGED batches, so each group is a
+ *     single request routed token-aware to a replica of that partition. Every statement in a batch keeps
+ *     its own USING TIMESTAMP.
+ *  5) Optionally runs the requests of each @PartitionKey value one at a time through WriteLanes, so versions
+ *     of a row are written in order (or collapsed into the newest) instead of racing to the coordinator.
+ *     A request waiting in its lane holds no window permit.
  */
 @Slf4j
 public class AsyncCassandraWriter {
 
-    private final Mapper<Object> mapper;
-    private final Field versionField;
+    private final CassandraSession.RowWriter rows;
+    private final ModelMetadata metadata;
+    private final AdaptiveWriteWindow window;
+    private final int batchMaxStatements;
+    private final WriteRetryPolicy retryPolicy;
+    private final ChangeDetectionCache changeCache;
+    private final StaleVersionGuard versionGuard;
+    private final WriteLanes lanes;
+    private final boolean idempotent;
+    // Failed entities of a non-idempotent model whose write may have been applied, until takeUnreplayable()
+    private final Set<Object> unreplayable =
+            Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
 
-    /**
-     * @param manager    the MappingManager from the driver
-     * @param modelClass the entity class discovered at runtime (e.g. Dish.class)
-     */
-    @SuppressWarnings("unchecked")
-    public AsyncCassandraWriter(MappingManager manager, Class<?> modelClass) {
-        // Cast modelClass to Class<Object> to avoid "raw type" warnings:
-        Class<Object> castedClass = (Class<Object>) modelClass;
+    // Schedules retries after their backoff; shared by all writers, never blocks on the write window
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cassandra-write-retry");
+        t.setDaemon(true);
+        return t;
+    });
+    // Starts the next request of a lane once the running one completed; shared by all writers. Completions
+    // arrive on driver I/O threads, which must neither block (the first write of a statement prepares it) nor
+    // recurse through a lane whose writes complete synchronously.
+    private static final ExecutorService LANE_EXECUTOR = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "cassandra-write-lane");
+        t.setDaemon(true);
+        return t;
+    });
 
-        // Build the mapper for that class
-        this.mapper = manager.mapper(castedClass);
+    public AsyncCassandraWriter(Settings settings) {
+        if (settings.getRows() == null || settings.getModelClass() == null) {
+            throw new IllegalArgumentException("AsyncCassandraWriter needs rows and a modelClass: " + settings);
+        }
+        if (settings.getBatchMaxStatements() < 1) {
+            throw new IllegalArgumentException("batchMaxStatements must be >= 1: " + settings.getBatchMaxStatements());
+        }
+        Class<?> modelClass = settings.getModelClass();
+        this.rows = settings.getRows();
+        this.metadata = ModelMetadata.of(modelClass);
+        this.window = settings.getWindow() == null
+                ? AdaptiveWriteWindow.fromConfig(EnvironmentConfig.builder().build())
+                : settings.getWindow();
+        this.batchMaxStatements = settings.getBatchMaxStatements();
+        this.retryPolicy = settings.getRetryPolicy();
+        this.changeCache = settings.getChangeCache();
+        this.versionGuard = settings.getVersionGuard();
+        this.lanes = settings.getLanes();
+        this.idempotent = metadata.isIdempotent();
 
-        // Reflect to find the single field annotated with @VersionKey
-        this.versionField = findVersionField(castedClass);
+        log.info("AsyncCassandraWriter initialized for model={}, versionField={}, partitionKeyField={}, batchMaxStatements={}, lanes={}",
+                modelClass.getSimpleName(), metadata.getVersion().getName(),
+                metadata.getPartitionKey().getName(), batchMaxStatements, lanes != null);
+    }
 
-        log.info("AsyncCassandraWriter initialized for model={}, versionField={}",
-                castedClass.getSimpleName(), versionField.getName());
+    /**
+     * What a writer writes with and how. Only {@code rows} and {@code modelClass} are required; the rest
+     * defaults to the default EnvironmentConfig, without change cache, version guard or lanes.
+     */
+    @Value
+    @Builder
+    public static class Settings {
+        /** Executes write requests, e.g. {@link CassandraSession#rowWriter} of the provider's session */
+        CassandraSession.RowWriter rows;
+        /** The entity class discovered at runtime (e.g. Dish.class) */
+        Class<?> modelClass;
+        /** Bounds and adapts the number of in-flight writes; null for a new window of the default bounds */
+        AdaptiveWriteWindow window;
+        /** Maximum statements per UNLOGGED batch; 1 sends one statement per entity */
+        @Builder.Default
+        int batchMaxStatements = 1;
+        /** How failed requests are retried before their entities are reported as failed */
+        @Builder.Default
+        WriteRetryPolicy retryPolicy = WriteRetryPolicy.fromConfig(EnvironmentConfig.builder().build());
+        /** Skips unchanged and superseded rows (see RecordPipeline); null disables it */
+        ChangeDetectionCache changeCache;
+        /** Drops records older than an acknowledged version (see RecordPipeline); null disables it */
+        StaleVersionGuard versionGuard;
+        /** Orders the writes of each partition key; null submits every request as soon as it has a permit */
+        WriteLanes lanes;
+
+        public static class SettingsBuilder {
+            /**
+             * Takes the window, batching and retries from the configuration.
+             */
+            public SettingsBuilder config(EnvironmentConfig config) {
+                return window(AdaptiveWriteWindow.fromConfig(config))
+                        .batchMaxStatements(config.getWriteBatchMaxStatements())
+                        .retryPolicy(WriteRetryPolicy.fromConfig(config));
+            }
+        }
     }
 
     /**
      * Asynchronously writes all items, passing "Option.timestamp(...)" with the entity's versionKey.
      * If a column in Cassandra is newer, it remains; older columns get overwritten.
+     * Blocks until every write completed and throws if any of them failed.
      */
     public void executeAsyncWrites(List<Object> items) {
         if (items == null || items.isEmpty()) {
@@ -59,67 +146,355 @@ public class AsyncCassandraWriter {
             return;
         }
 
-        log.info("executeAsyncWrites called with {} item(s).", items.size());
-        List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+        int failed;
+        try {
+            failed = writeAsync(items).join().size();
+        } finally {
+            log.info("executeAsyncWrites finished, window={}, lanes={}.", window.stats(), getLaneStats());
+        }
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " of " + items.size() + " write(s) failed");
+        }
+    }
 
-        for (Object entity : items) {
-            CompletableFuture<Void> cf = saveEntityAsync(entity);
-            futures.add(cf);
+    /**
+     * Submits all items and returns without waiting for their acks, so the caller can keep producing
+     * entities while these are in flight. Blocks only while the write window is full.
+     * A failed request is retried per the WriteRetryPolicy before its entities count as failed.
+     *
+     * @return a future of the entities whose write finally failed; it never completes exceptionally
+     */
+    public CompletableFuture<List<Object>> writeAsync(List<Object> items) {
+        return writeAsync(items, null);
+    }
+
+    /**
+     * Same as {@link #writeAsync(List)}, additionally recording the submit-to-ack latency of every
+     * request attempt into {@code ackLatency} (may be null).
+     */
+    public CompletableFuture<List<Object>> writeAsync(List<Object> items, LatencyHistogram ackLatency) {
+        return writeAsync(items, ackLatency, InvocationDeadline.none());
+    }
+
+    /**
+     * Same as {@link #writeAsync(List, LatencyHistogram)}, bounded by {@code deadline}: requests that get no
+     * window permit before it are not submitted, retries that would start after it are not scheduled, and
+     * requests still in flight at the deadline are cancelled. Their entities are reported as failed.
+     * With WriteLanes, a request whose lane is busy is queued (or collapsed) without waiting for a permit.
+     */
+    public CompletableFuture<List<Object>> writeAsync(List<Object> items, LatencyHistogram ackLatency,
+                                                      InvocationDeadline deadline) {
+        if (items == null || items.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        List<List<Object>> requests = batchMaxStatements > 1
+                ? groupByPartition(items)
+                : singletons(items);
+        log.debug("writeAsync called with {} item(s) in {} request(s), window={}.",
+                items.size(), requests.size(), window.stats());
+        List<CompletableFuture<Void>> futures = new ArrayList<>(requests.size());
+        List<Object> failed = Collections.synchronizedList(new ArrayList<>());
+
+        for (int i = 0; i < requests.size(); i++) {
+            List<Object> request = requests.get(i);
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            futures.add(result.whenComplete((v, t) -> {
+                if (t != null) {
+                    failed.addAll(request);
+                }
+            }));
+            Object key = lanes == null ? null : metadata.partitionKeyOf(request.get(0));
+            WriteLanes.Pending pending = key == null ? null
+                    : new WriteLanes.Pending(key, request, result, ackLatency, deadline);
+            if (pending != null) {
+                WriteLanes.Admission admission = lanes.offer(pending);
+                if (admission != WriteLanes.Admission.RUN) {
+                    continue;
+                }
+            }
+            if (!acquire(deadline)) {
+                int unsubmitted = requests.size() - i;
+                result.completeExceptionally(new CancellationException("Deadline reached before submission"));
+                for (List<Object> rest : requests.subList(i + 1, requests.size())) {
+                    failed.addAll(rest);
+                }
+                if (pending != null) {
+                    startNext(key);
+                }
+                log.warn("Deadline reached, {} write request(s) of {} entity(ies) not submitted.",
+                        unsubmitted, items.size());
+                break;
+            }
+            if (pending != null) {
+                runInLane(pending);
+            } else {
+                attempt(request, 1, result, ackLatency, deadline);
+            }
         }
 
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .handle((v, t) -> new ArrayList<>(failed));
     }
 
     /**
-     * Saves a single entity with a custom TIMESTAMP (the @VersionKey field).
+     * Takes a window permit, waiting at most until the deadline.
      */
-    private CompletableFuture<Void> saveEntityAsync(Object entity) {
-        CompletableFuture<Void> cf = new CompletableFuture<>();
+    private boolean acquire(InvocationDeadline deadline) {
         try {
-            // Grab the version (timestamp) from the @VersionKey field
-            long versionVal = (long) versionField.get(entity);
-
-            // mapper.saveAsync(...) returns a Guava ListenableFuture<Void>
-            ListenableFuture<Void> lf = mapper.saveAsync(entity, Option.timestamp(versionVal));
-
-            // Convert it to a Java CompletableFuture
-            Futures.addCallback(lf, new FutureCallback<Void>() {
-                @Override
-                public void onSuccess(Void result) {
-                    log.debug("Save succeeded for entity: {}", entity);
-                    cf.complete(null);
-                }
-                @Override
-                public void onFailure(Throwable t) {
-                    log.error("Save failed for entity {}: {}", entity, t.getMessage(), t);
-                    cf.completeExceptionally(t);
+            if (!deadline.isBounded()) {
+                window.acquire();
+                return true;
+            }
+            return !deadline.isExpired() && window.tryAcquire(deadline.remainingMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a write permit", e);
+        }
+    }
+
+    /**
+     * Runs one attempt of a request (the caller holds its permit) and schedules the next one after a backoff
+     * when the failure is transient, attempts are left and the backoff ends before the deadline.
+     */
+    private void attempt(List<Object> request, int attempt, CompletableFuture<Void> result,
+                         LatencyHistogram ackLatency, InvocationDeadline deadline) {
+        saveAsync(request, ackLatency, deadline).whenComplete((v, t) -> {
+            if (t == null) {
+                result.complete(null);
+                return;
+            }
+            long delay = retryPolicy.delayMillis(attempt);
+            if (attempt < retryPolicy.getMaxAttempts() && WriteRetryPolicy.isRetryable(t, idempotent)
+                    && delay < deadline.remainingMillis()) {
+                log.warn("Retrying write of {} entity(ies) in {} ms (attempt {} of {}): {}",
+                        request.size(), delay, attempt + 1, retryPolicy.getMaxAttempts(), t.getMessage());
+                RETRY_SCHEDULER.schedule(() -> retryWhenPermitted(request, attempt + 1, result, ackLatency, deadline),
+                        delay, TimeUnit.MILLISECONDS);
+            } else {
+                if (!idempotent && WriteRetryPolicy.mayHaveBeenApplied(t)) {
+                    unreplayable.addAll(request);
                 }
-            }, MoreExecutors.directExecutor());
+                result.completeExceptionally(t);
+            }
+        });
+    }
+
+    /**
+     * Waits for a permit in the window's queue without holding a scheduler thread, then runs the attempt.
+     */
+    private void retryWhenPermitted(List<Object> request, int attempt, CompletableFuture<Void> result,
+                                    LatencyHistogram ackLatency, InvocationDeadline deadline) {
+        if (deadline.isExpired()) {
+            result.completeExceptionally(new CancellationException("Deadline reached before retry attempt " + attempt));
+            return;
+        }
+        window.acquireAsync(RETRY_SCHEDULER, () -> {
+            if (deadline.isExpired()) {
+                window.cancel();
+                result.completeExceptionally(new CancellationException("Deadline reached before retry attempt " + attempt));
+            } else {
+                attempt(request, attempt, result, ackLatency, deadline);
+            }
+        });
+    }
+
+    /**
+     * Runs the head request of a lane (the caller holds its permit) and, on the lane executor, starts the lane's
+     * next request once it completed, retries included.
+     */
+    private void runInLane(WriteLanes.Pending pending) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        done.whenCompleteAsync((v, t) -> {
+            if (t == null) {
+                pending.getResult().complete(null);
+            } else {
+                pending.getResult().completeExceptionally(t);
+            }
+            startNext(pending.getKey());
+        }, LANE_EXECUTOR);
+        attempt(pending.getRequest(), 1, done, pending.getAckLatency(), pending.getDeadline());
+    }
+
+    /**
+     * Starts the next waiting request of a lane whose running request completed, failing those whose
+     * deadline passed while they waited. Runs on the lane executor and the writing thread, so it never blocks
+     * for a permit.
+     */
+    private void startNext(Object key) {
+        WriteLanes.Pending next;
+        while ((next = lanes.next(key)) != null) {
+            if (!next.getDeadline().isExpired()) {
+                startWhenPermitted(next);
+                return;
+            }
+            next.getResult().completeExceptionally(new CancellationException("Deadline reached while queued in its lane"));
+        }
+    }
+
+    /**
+     * Queues the lane's next request for a permit; the window hands it one before any new submission, so a
+     * lane cannot be starved by the thread submitting further requests.
+     */
+    private void startWhenPermitted(WriteLanes.Pending pending) {
+        window.acquireAsync(LANE_EXECUTOR, () -> {
+            if (pending.getDeadline().isExpired()) {
+                window.cancel();
+                pending.getResult().completeExceptionally(new CancellationException("Deadline reached while queued in its lane"));
+                startNext(pending.getKey());
+            } else {
+                runInLane(pending);
+            }
+        });
+    }
+
+    /**
+     * Removes and returns the failed entities, by identity, whose write may have been applied although it
+     * failed (a write timeout, a lost connection, a cancellation in flight). Only a non-idempotent model has
+     * any: writing them again would append their list elements again, so they must not be replayed.
+     */
+    public Set<Object> takeUnreplayable() {
+        Set<Object> taken = Collections.newSetFromMap(new IdentityHashMap<>());
+        synchronized (unreplayable) {
+            taken.addAll(unreplayable);
+            unreplayable.clear();
+        }
+        return taken;
+    }
+
+    /**
+     * The container-scoped change detection cache of this writer's model, or null when disabled.
+     */
+    public ChangeDetectionCache getChangeCache() {
+        return changeCache;
+    }
+
+    /**
+     * The container-scoped stale version guard of this writer's model, or null when disabled.
+     */
+    public StaleVersionGuard getVersionGuard() {
+        return versionGuard;
+    }
+
+    public AdaptiveWriteWindow.Stats getWindowStats() {
+        return window.stats();
+    }
+
+    /**
+     * Queue depths of the write lanes, or null when they are disabled.
+     */
+    public WriteLanes.Stats getLaneStats() {
+        return lanes == null ? null : lanes.stats();
+    }
 
-        } catch (IllegalAccessException e) {
-            log.error("Failed to read @VersionKey field on entity {}", entity, e);
+    /**
+     * Saves one entity, or an UNLOGGED batch of entities sharing a partition key, each statement carrying
+     * a custom TIMESTAMP (the @VersionKey field).
+     * The caller must hold a window permit; it is released when the write completes or is cancelled at
+     * the deadline.
+     */
+    private CompletableFuture<Void> saveAsync(List<Object> entities, LatencyHistogram ackLatency,
+                                              InvocationDeadline deadline) {
+        CompletableFuture<Void> cf = new CompletableFuture<>();
+        long start = System.nanoTime();
+        CompletableFuture<Void> write;
+        try {
+            // Grab the version (timestamp) of each entity from its @VersionKey field
+            long[] timestamps = new long[entities.size()];
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = versionOf(entities.get(i));
+            }
+            write = deadline.cancelOnExpiry(rows.writeAsync(entities, timestamps, deadline));
+        } catch (RuntimeException e) {
+            window.cancel();
+            log.error("Failed to submit write for {} entity(ies) {}", entities.size(), entities, e);
             cf.completeExceptionally(e);
+            return cf;
         }
+
+        write.whenComplete((v, t) -> {
+            long latency = System.nanoTime() - start;
+            if (ackLatency != null) {
+                ackLatency.recordNanos(latency);
+            }
+            if (t == null) {
+                window.release(latency, true, false);
+                log.debug("Save succeeded for {} entity(ies): {}", entities.size(), entities);
+                cf.complete(null);
+            } else if (t instanceof CancellationException) {
+                // Cancelled at the deadline: says nothing about the cluster, so it does not resize the window
+                window.cancel();
+                log.debug("Write of {} entity(ies) cancelled at the deadline after {} ms.",
+                        entities.size(), TimeUnit.NANOSECONDS.toMillis(latency));
+                cf.completeExceptionally(t);
+            } else {
+                Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                window.release(latency, false, isOverload(cause));
+                log.warn("Save failed for {} entity(ies) {}: {}", entities.size(), entities, cause.getMessage(), cause);
+                cf.completeExceptionally(cause);
+            }
+        });
         return cf;
     }
 
     /**
-     * Finds the single field with @VersionKey in the given class (or throws if missing/duplicate).
+     * Groups entities by @PartitionKey value, keeping first-seen order, and splits each group into
+     * chunks of at most batchMaxStatements. Entities without a partition key value are sent alone.
      */
-    private Field findVersionField(Class<?> cls) {
-        Field found = null;
-        for (Field f : cls.getDeclaredFields()) {
-            if (f.isAnnotationPresent(VersionKey.class)) {
-                if (found != null) {
-                    throw new RuntimeException("Multiple @VersionKey fields in " + cls.getName());
-                }
-                f.setAccessible(true);
-                found = f;
+    private List<List<Object>> groupByPartition(List<Object> items) {
+        Map<Object, List<Object>> byPartition = new LinkedHashMap<>();
+        List<List<Object>> requests = new ArrayList<>();
+        for (Object entity : items) {
+            Object partitionKey = metadata.partitionKeyOf(entity);
+            if (partitionKey == null) {
+                requests.add(Collections.singletonList(entity));
+                continue;
+            }
+            List<Object> group = byPartition.computeIfAbsent(partitionKey, k -> new ArrayList<>());
+            group.add(entity);
+            if (group.size() == batchMaxStatements) {
+                requests.add(group);
+                byPartition.remove(partitionKey);
             }
         }
-        if (found == null) {
-            throw new RuntimeException("No @VersionKey field found in " + cls.getName());
+        requests.addAll(byPartition.values());
+        return requests;
+    }
+
+    private static List<List<Object>> singletons(List<Object> items) {
+        List<List<Object>> requests = new ArrayList<>(items.size());
+        for (Object entity : items) {
+            requests.add(Collections.singletonList(entity));
+        }
+        return requests;
+    }
+
+    /**
+     * Reads the @VersionKey value of an entity of this writer's model class.
+     */
+    public long versionOf(Object entity) {
+        return metadata.versionOf(entity);
+    }
+
+    /**
+     * Whether a write failure means the coordinator or the connection pool is saturated,
+     * i.e. the window should shrink rather than the write simply be reported.
+     */
+    static boolean isOverload(Throwable t) {
+        if (t instanceof WriteTimeoutException
+                || t instanceof OperationTimedOutException
+                || t instanceof OverloadedException
+                || t instanceof BusyPoolException
+                || t instanceof BusyConnectionException) {
+            return true;
+        }
+        if (t instanceof NoHostAvailableException) {
+            for (Throwable hostError : ((NoHostAvailableException) t).getErrors().values()) {
+                if (isOverload(hostError)) {
+                    return true;
+                }
+            }
         }
-        return found;
+        return false;
     }
 }
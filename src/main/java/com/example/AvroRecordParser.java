@@ -0,0 +1,211 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.avro.util.Utf8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Base class for parsers whose Kafka value is base64-encoded Avro, decoded into a generated SpecificRecord
+ * class (the DTO) and then mapped onto the model.
+ *
+ * The value is decoded from its base64 String into the thread's DecodeBuffer and read in place by a
+ * BinaryDecoder that is reused per thread, and each writer schema gets one cached SpecificDatumReader
+ * resolving it against the DTO's schema. Values in the Confluent wire format (magic byte 0, then a 4-byte
+ * big-endian schema id) are decoded with the writer schema of that id, looked up in an AvroSchemaCache;
+ * no schema registry is called.
+ *
+ * parseRecord also reuses one DTO per thread. The model may keep the DTO's maps, lists, bytes and nested
+ * records, which Avro would clear and refill on the next read, so those fields are detached from the DTO
+ * once toModel returns; only the DTO itself and its immutable values are reused.
+ *
+ * @param <D> the generated Avro class
+ * @param <T> the model class
+ */
+@Slf4j
+public abstract class AvroRecordParser<D extends SpecificRecord, T> implements ParserInterface<T> {
+
+    public enum WireFormat {
+        /** Plain Avro binary written with the DTO's schema. */
+        RAW,
+        /** Confluent framing: magic byte 0, 4-byte schema id, Avro binary. */
+        CONFLUENT,
+        /**
+         * Confluent framing when the value starts with the magic byte followed by a schema id known to the
+         * cache, plain Avro otherwise.
+         */
+        AUTO
+    }
+
+    private static final int MAGIC_BYTE = 0;
+    private static final int HEADER_LENGTH = 5;
+    // Reader cache key of values without a schema id, written with the DTO's own schema
+    private static final int NO_SCHEMA_ID = -1;
+
+    private final Class<T> modelClass;
+    private final Schema readerSchema;
+    private final WireFormat wireFormat;
+    private final AvroSchemaCache schemas;
+    private final int fieldCount;
+    private final ConcurrentMap<Integer, DatumReader<D>> readers = new ConcurrentHashMap<>();
+    // Parsed on several pipeline threads; each keeps its own decoder and DTO
+    private final ThreadLocal<BinaryDecoder> decoders = new ThreadLocal<>();
+    private final ThreadLocal<D> dtos = new ThreadLocal<>();
+
+    protected AvroRecordParser(Class<D> dtoClass, Class<T> modelClass, WireFormat wireFormat, AvroSchemaCache schemas) {
+        this.modelClass = modelClass;
+        this.readerSchema = SpecificData.get().getSchema(dtoClass);
+        this.wireFormat = wireFormat;
+        this.schemas = schemas;
+        this.fieldCount = readerSchema.getFields().size();
+    }
+
+    /**
+     * Maps a decoded DTO onto the model.
+     */
+    protected abstract T toModel(D dto);
+
+    /**
+     * A representative DTO for {@link #primingRecords()}, or null for none.
+     */
+    protected D primingDto() {
+        return null;
+    }
+
+    /**
+     * The priming DTO as a plain Avro value.
+     */
+    @Override
+    public List<KafkaEvent.KafkaEventRecord> primingRecords() {
+        D dto = primingDto();
+        if (dto == null) {
+            return Collections.emptyList();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(bytes, null);
+        try {
+            new SpecificDatumWriter<D>(readerSchema).write(dto, encoder);
+            encoder.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode priming record of " + readerSchema.getFullName(), e);
+        }
+        String value = Base64.getEncoder().encodeToString(bytes.toByteArray());
+        return Collections.singletonList(SnapStartPriming.syntheticRecord(value));
+    }
+
+    @Override
+    public T parseRecord(KafkaEvent.KafkaEventRecord record) throws Exception {
+        return parseRecord(record, null);
+    }
+
+    /**
+     * Records the base64 decoding and the Avro read into the DTO as the decode time; mapping the DTO to the
+     * model is parsing.
+     */
+    @Override
+    public T parseRecord(KafkaEvent.KafkaEventRecord record, LatencyHistogram decodeLatency) throws Exception {
+        String valueB64 = record.getValue();
+        if (valueB64 == null || valueB64.isEmpty()) {
+            log.warn("Empty record value. offset={}, partition={}", record.getOffset(), record.getPartition());
+            return null;
+        }
+        long start = decodeLatency == null ? 0 : System.nanoTime();
+        D dto = decode(valueB64, dtos.get());
+        if (decodeLatency != null) {
+            decodeLatency.recordNanos(System.nanoTime() - start);
+        }
+        try {
+            return toModel(dto);
+        } finally {
+            dtos.set(detach(dto));
+        }
+    }
+
+    /**
+     * Decodes a base64-encoded Avro value into a new DTO.
+     */
+    protected D decode(String base64Avro) throws IOException {
+        return decode(base64Avro, null);
+    }
+
+    private D decode(String base64Avro, D reuse) throws IOException {
+        DecodeBuffer avro = DecodeBuffer.decode(base64Avro);
+        byte[] bytes = avro.array();
+        int length = avro.length();
+        int offset = 0;
+        int schemaId = NO_SCHEMA_ID;
+        if (wireFormat != WireFormat.RAW) {
+            if (length > 0 && bytes[0] == MAGIC_BYTE) {
+                if (length < HEADER_LENGTH) {
+                    throw new IOException("Truncated Confluent header");
+                }
+                int id = (bytes[1] & 0xFF) << 24 | (bytes[2] & 0xFF) << 16 | (bytes[3] & 0xFF) << 8 | (bytes[4] & 0xFF);
+                // AUTO: otherwise a plain Avro value that happens to start with 0x00
+                if (wireFormat == WireFormat.CONFLUENT || schemas.contains(id)) {
+                    schemaId = id;
+                    offset = HEADER_LENGTH;
+                }
+            } else if (wireFormat == WireFormat.CONFLUENT) {
+                throw new IOException("Value does not start with the Confluent magic byte: "
+                        + (length > 0 ? bytes[0] & 0xFF : -1));
+            }
+        }
+
+        BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(bytes, offset, length - offset, decoders.get());
+        decoders.set(decoder);
+        return readerFor(schemaId).read(reuse, decoder);
+    }
+
+    /**
+     * Clears the DTO's fields that Avro would mutate in place on the next read into it.
+     *
+     * @return {@code dto}, safe to reuse
+     */
+    private D detach(D dto) {
+        for (int i = 0; i < fieldCount; i++) {
+            Object value = dto.get(i);
+            if (value instanceof Map || value instanceof Collection || value instanceof ByteBuffer
+                    || value instanceof GenericContainer || value instanceof Utf8) {
+                dto.put(i, null);
+            }
+        }
+        return dto;
+    }
+
+    private DatumReader<D> readerFor(int schemaId) throws IOException {
+        DatumReader<D> reader = readers.get(schemaId);
+        if (reader == null) {
+            Schema writerSchema = schemaId == NO_SCHEMA_ID ? readerSchema : schemas.get(schemaId);
+            reader = readers.computeIfAbsent(schemaId, id -> new SpecificDatumReader<>(writerSchema, readerSchema));
+            log.info("Created Avro reader for {} with writer schema id={}", readerSchema.getFullName(),
+                    schemaId == NO_SCHEMA_ID ? "none" : schemaId);
+        }
+        return reader;
+    }
+
+    @Override
+    public Class<T> getModelClass() {
+        return modelClass;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Writer schemas by Confluent schema-registry id, resolved locally so that decoding never calls a registry.
+ *
+ * A schema is either registered in code or read from the classpath resource
+ * {@code avro-schemas/<id>.avsc} the first time its id is seen. Ship the .avsc of every schema id the
+ * producers use under src/main/resources/avro-schemas/ and list the ids in AVRO_SCHEMA_IDS: the handler
+ * checks them with {@link #requireAll} before the first record, so a missing schema stops the deployment at
+ * startup instead of failing every record framed with it.
+ */
+@Slf4j
+public class AvroSchemaCache {
+
+    public static final String RESOURCE_DIR = "avro-schemas/";
+
+    private static final AvroSchemaCache SHARED = new AvroSchemaCache();
+
+    // Optional.empty() remembers ids with no resource, so a bad id costs one classpath lookup, not one per record
+    private final ConcurrentMap<Integer, Optional<Schema>> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cache shared by every parser in this container.
+     */
+    public static AvroSchemaCache shared() {
+        return SHARED;
+    }
+
+    public void register(int id, Schema schema) {
+        schemas.put(id, Optional.of(schema));
+    }
+
+    /**
+     * Whether the id is registered or has a schema resource.
+     */
+    public boolean contains(int id) {
+        return lookup(id).isPresent();
+    }
+
+    /**
+     * Loads the schema of every id.
+     *
+     * @throws IllegalStateException naming every id that is neither registered nor found on the classpath
+     */
+    public void requireAll(Collection<Integer> ids) {
+        List<Integer> missing = new ArrayList<>();
+        for (int id : ids) {
+            if (!contains(id)) {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("No Avro schema for id(s) " + missing + " listed in AVRO_SCHEMA_IDS: add "
+                    + RESOURCE_DIR + "<id>.avsc to src/main/resources or remove the id");
+        }
+    }
+
+    /**
+     * @throws IOException if the id is neither registered nor found on the classpath
+     */
+    public Schema get(int id) throws IOException {
+        return lookup(id).orElseThrow(() -> new IOException("Unknown Avro schema id " + id
+                + ": register it or add " + RESOURCE_DIR + id + ".avsc to the classpath"));
+    }
+
+    private Optional<Schema> lookup(int id) {
+        Optional<Schema> schema = schemas.get(id);
+        if (schema == null) {
+            schema = schemas.computeIfAbsent(id, AvroSchemaCache::loadResource);
+        }
+        return schema;
+    }
+
+    private static Optional<Schema> loadResource(int id) {
+        String resource = RESOURCE_DIR + id + ".avsc";
+        try (InputStream in = AvroSchemaCache.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                return Optional.empty();
+            }
+            Schema schema = new Schema.Parser().parse(in);
+            log.info("Loaded Avro schema id={} ({}) from {}", id, schema.getFullName(), resource);
+            return Optional.of(schema);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to load Avro schema resource {}: {}", resource, e.getMessage(), e);
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.TypeCodec;
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+import com.datastax.driver.core.utils.Bytes;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.reflect.TypeToken;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+
+/**
+ * Driver codec between a nested Java value and a CQL blob, in one of the {@link ColumnEncoding}s.
+ * LZ4-compressed values are stored as the uncompressed length (4 bytes, big-endian) followed by an LZ4 block.
+ */
+public class BlobColumnCodec<T> extends TypeCodec<T> {
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private final ColumnEncoding encoding;
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+
+    /**
+     * @param javaType the field's generic type, e.g. {@code List<DishOption>}
+     */
+    @SuppressWarnings("unchecked")
+    public BlobColumnCodec(Type javaType, ColumnEncoding encoding) {
+        super(DataType.blob(), (TypeToken<T>) TypeToken.of(javaType));
+        this.encoding = encoding;
+        JavaType type = encoding.getMapper().getTypeFactory().constructType(javaType);
+        this.writer = encoding.getMapper().writerFor(type);
+        this.reader = encoding.getMapper().readerFor(type);
+    }
+
+    public ColumnEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Encodes the value into the bytes stored in the blob column.
+     */
+    public ByteBuffer encode(Object value) {
+        try {
+            byte[] encoded = writer.writeValueAsBytes(value);
+            if (!encoding.isCompressed()) {
+                return ByteBuffer.wrap(encoded);
+            }
+            ByteBuffer compressed = ByteBuffer.allocate(Integer.BYTES + COMPRESSOR.maxCompressedLength(encoded.length));
+            compressed.putInt(encoded.length);
+            int length = COMPRESSOR.compress(encoded, 0, encoded.length,
+                    compressed.array(), Integer.BYTES, compressed.capacity() - Integer.BYTES);
+            compressed.limit(Integer.BYTES + length);
+            compressed.position(0);
+            return compressed;
+        } catch (IOException e) {
+            throw new InvalidTypeException("Cannot encode value as " + encoding + ": " + e.getMessage(), e);
+        }
+    }
+
+    public T decode(ByteBuffer bytes) {
+        ByteBuffer buffer = bytes.duplicate();
+        byte[] encoded;
+        if (encoding.isCompressed()) {
+            int length = buffer.getInt();
+            byte[] compressed = new byte[buffer.remaining()];
+            buffer.get(compressed);
+            encoded = DECOMPRESSOR.decompress(compressed, length);
+        } else {
+            encoded = new byte[buffer.remaining()];
+            buffer.get(encoded);
+        }
+        try {
+            return reader.readValue(encoded);
+        } catch (IOException e) {
+            throw new InvalidTypeException("Cannot decode " + encoding + " value: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public ByteBuffer serialize(T value, ProtocolVersion protocolVersion) {
+        return value == null ? null : encode(value);
+    }
+
+    @Override
+    public T deserialize(ByteBuffer bytes, ProtocolVersion protocolVersion) {
+        return bytes == null || bytes.remaining() == 0 ? null : decode(bytes);
+    }
+
+    @Override
+    public T parse(String value) {
+        return value == null || value.isEmpty() || value.equalsIgnoreCase("NULL") ? null : decode(Bytes.fromHexString(value));
+    }
+
+    @Override
+    public String format(T value) {
+        return value == null ? "NULL" : Bytes.toHexString(encode(value));
+    }
+}
@@ -1,73 +1,139 @@
 package com.example;
 
-import com.datastax.driver.core.Cluster;
-import com.datastax.driver.core.Session;
-import com.datastax.driver.mapping.MappingManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * CassandraClientProvider for driver 3.x + SLF4J.
- * Builds a Cluster, obtains a Session, reuses it as a singleton.
+ * Owns the container-scoped CassandraSession and one AsyncCassandraWriter per model class.
+ * Connection settings come from a CassandraConnectionProfile, validated when the provider is created
+ * (the Lambda init phase for the shared one). The connection is opened lazily on first use, health-checked
+ * on every access and rebuilt if it went away, so warm Lambda invocations reuse the same session instead of
+ * paying the handshake again.
+ *
+ * Writers are bound to a session and rebuilt after a reconnect or a SnapStart restore. The ChangeDetectionCache
+ * and StaleVersionGuard of each route describe what Cassandra acknowledged, which no reconnect changes, so they
+ * are kept here for the life of the container and handed to every writer of their route.
  */
 public class CassandraClientProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(CassandraClientProvider.class);
 
-    private final MappingManager manager;
+    private static volatile CassandraClientProvider shared;
 
-    public CassandraClientProvider() {
-        // Read environment variables
-        String contactPointsStr = System.getenv("CASSANDRA_CONTACT_POINTS"); // e.g. "host1,host2"
-        String localDc = System.getenv("CASSANDRA_LOCAL_DC");               // e.g. "datacenter1"
-        String portStr = System.getenv("CASSANDRA_PORT");                   // e.g. "9042"
-
-        if (contactPointsStr == null || contactPointsStr.isEmpty()) {
-            contactPointsStr = "localhost";
-            logger.warn("CASSANDRA_CONTACT_POINTS not set. Defaulting to 'localhost'");
-        }
-        if (localDc == null || localDc.isEmpty()) {
-            localDc = "datacenter1";
-            logger.warn("CASSANDRA_LOCAL_DC not set. Defaulting to 'datacenter1'");
-        }
-        int port = (portStr != null && !portStr.isEmpty()) ? Integer.parseInt(portStr) : 9042;
+    private final Supplier<? extends CassandraSession> connector;
+    // Null when the connector is not built from a profile (tests, load runs)
+    private final CassandraConnectionProfile profile;
+    // Keyed by model class and table: topic routes may write one model to several tables
+    private final Map<RouteKey, AsyncCassandraWriter> writers = new HashMap<>();
+    // Outlive the writers: close() drops those, not these
+    private final Map<RouteKey, ChangeDetectionCache> changeCaches = new HashMap<>();
+    private final Map<RouteKey, StaleVersionGuard> versionGuards = new HashMap<>();
 
-        String[] hosts = contactPointsStr.split(",");
-        for (int i = 0; i < hosts.length; i++) {
-            hosts[i] = hosts[i].trim();
+    private CassandraSession session;
+
+    /**
+     * Returns the provider shared by every invocation in this container, creating it on first call.
+     */
+    public static CassandraClientProvider shared() {
+        CassandraClientProvider provider = shared;
+        if (provider == null) {
+            synchronized (CassandraClientProvider.class) {
+                provider = shared;
+                if (provider == null) {
+                    provider = new CassandraClientProvider();
+                    Runtime.getRuntime().addShutdownHook(new Thread(provider::close, "cassandra-shutdown"));
+                    shared = provider;
+                }
+            }
         }
+        return provider;
+    }
 
-        logger.info("Initializing Cassandra cluster with hosts={}, port={}, localDc={}",
-                Arrays.toString(hosts), port, localDc);
+    public CassandraClientProvider() {
+        this(CassandraConnectionProfile.fromEnv());
+    }
 
-        // Build cluster. If you have credentials, SSL, etc., do them here.
-        Cluster.Builder builder = Cluster.builder();
-        for (String host : hosts) {
-            builder.addContactPoint(host);
-        }
-        builder.withPort(port);
+    /**
+     * @param profile validated here, before the first connect
+     */
+    public CassandraClientProvider(CassandraConnectionProfile profile) {
+        profile.validate();
+        this.connector = () -> new DriverCassandraSession(profile.connect(), profile);
+        this.profile = profile;
+    }
 
-        // local DC is typically used for load balancing policies in 3.x, e.g. DCAwareRoundRobinPolicy
-        builder.withLoadBalancingPolicy(
-                new com.datastax.driver.core.policies.DCAwareRoundRobinPolicy(localDc)
-        );
+    /**
+     * @param connector opens a new session; invoked on first use and again whenever the current one is unhealthy
+     */
+    CassandraClientProvider(Supplier<? extends CassandraSession> connector) {
+        this.connector = connector;
+        this.profile = null;
+    }
 
-        // If you have credentials:
-        // builder.withCredentials("username", "password");
+    /**
+     * The profile sessions are opened with, or null when they come from a custom connector.
+     */
+    public CassandraConnectionProfile getProfile() {
+        return profile;
+    }
+
+    public synchronized CassandraSession getSession() {
+        ensureConnected();
+        return session;
+    }
 
-        Cluster cluster = builder.build();
+    /**
+     * Returns the cached writer for the model class and table, building its write path and window only once
+     * per session. Its change cache and version guard are built only once per container.
+     */
+    public synchronized AsyncCassandraWriter writerFor(Class<?> modelClass, EnvironmentConfig config) {
+        // Health-checks the session first; a reconnect drops the writers bound to the old one
+        CassandraSession current = getSession();
+        RouteKey key = RouteKey.of(modelClass, config);
+        AsyncCassandraWriter writer = writers.get(key);
+        if (writer == null) {
+            writer = new AsyncCassandraWriter(AsyncCassandraWriter.Settings.builder()
+                    .rows(current.rowWriter(modelClass, config))
+                    .modelClass(modelClass)
+                    .config(config)
+                    .changeCache(changeCaches.computeIfAbsent(key, k -> ChangeDetectionCache.fromConfig(modelClass, config)))
+                    .versionGuard(versionGuards.computeIfAbsent(key, k -> StaleVersionGuard.fromConfig(modelClass, config)))
+                    .lanes(WriteLanes.fromConfig(modelClass, config))
+                    .build());
+            writers.put(key, writer);
+        }
+        return writer;
+    }
 
-        // Connect
-        // If you have a keyspace already: cluster.connect("myKeyspace")
-        Session session = cluster.connect();
-        logger.info("Cassandra session established successfully.");
-        // Create the MappingManager
-        manager = new MappingManager(session);
+    synchronized boolean isHealthy() {
+        return session != null && session.isHealthy();
     }
 
-    public MappingManager getMapperManager() {
-        return manager;
+    public synchronized void close() {
+        if (session == null) {
+            return;
+        }
+        logger.info("Closing Cassandra session.");
+        session.close();
+        session = null;
+        writers.clear();
+    }
+
+    private void ensureConnected() {
+        if (session != null) {
+            if (isHealthy()) {
+                return;
+            }
+            logger.warn("Cassandra session is unhealthy, reconnecting.");
+            close();
+        }
+        long start = System.nanoTime();
+        session = connector.get();
+        logger.info("Cassandra session established in {} ms.", (System.nanoTime() - start) / 1_000_000);
     }
 }
@@ -0,0 +1,255 @@
+package com.example;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.ProtocolOptions;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SocketOptions;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * How the driver connects to Cassandra: contact points, cluster and keyspace, protocol compression,
+ * connection pooling, load balancing, socket and statement timeouts and speculative execution.
+ * Loaded once per container from CASSANDRA_* environment variables and validated before the first connect,
+ * so a misconfiguration fails the Lambda init phase instead of the first write.
+ */
+@Slf4j
+@Value
+@Builder(toBuilder = true)
+public class CassandraConnectionProfile {
+
+    @Builder.Default
+    List<String> contactPoints = Collections.singletonList("localhost");
+    @Builder.Default
+    int port = 9042;
+    @Builder.Default
+    String localDc = "datacenter1";
+    /** Null for the driver's generated name */
+    String clusterName;
+    /** Keyspace the session is logged into and the PREPARED engine qualifies tables with; null for none */
+    String keyspace;
+    // LZ4 needs lz4-java and SNAPPY snappy-java on the classpath; both are bundled
+    @Builder.Default
+    ProtocolOptions.Compression compression = ProtocolOptions.Compression.LZ4;
+    @Builder.Default
+    int coreConnectionsPerHost = 1;
+    @Builder.Default
+    int maxConnectionsPerHost = 1;
+    // Requests a connection multiplexes; beyond connections x this, requests wait up to poolTimeoutMs
+    @Builder.Default
+    int maxRequestsPerConnection = 1024;
+    @Builder.Default
+    int poolTimeoutMs = 5000;
+    @Builder.Default
+    int maxQueueSize = 256;
+    // Sends each statement to a replica of its partition instead of a coordinator that forwards it
+    @Builder.Default
+    boolean tokenAware = true;
+    @Builder.Default
+    int connectTimeoutMs = 5000;
+    // Client-side timeout of a request, for statements without their own
+    @Builder.Default
+    int readTimeoutMs = 12000;
+    // Timeout of each write statement; 0 uses readTimeoutMs
+    @Builder.Default
+    int statementTimeoutMs = 0;
+    // Delay before an idempotent write is sent to the next replica as well; 0 disables speculative execution
+    @Builder.Default
+    long speculativeDelayMs = 0;
+    @Builder.Default
+    int speculativeMaxExecutions = 1;
+
+    public static CassandraConnectionProfile fromEnv() {
+        return fromEnv(System::getenv);
+    }
+
+    static CassandraConnectionProfile fromEnv(Function<String, String> env) {
+        String compression = env.apply("CASSANDRA_COMPRESSION");
+        String tokenAware = env.apply("CASSANDRA_TOKEN_AWARE");
+        CassandraConnectionProfile profile = CassandraConnectionProfile.builder()
+                .contactPoints(listEnv(env, "CASSANDRA_CONTACT_POINTS", Collections.singletonList("localhost")))
+                .port(intEnv(env, "CASSANDRA_PORT", 9042))
+                .localDc(stringEnv(env, "CASSANDRA_LOCAL_DC", "datacenter1"))
+                .clusterName(stringEnv(env, "CASSANDRA_CLUSTER", null))
+                .keyspace(stringEnv(env, "CASSANDRA_KEYSPACE", null))
+                .compression(compression == null || compression.isEmpty()
+                        ? ProtocolOptions.Compression.LZ4
+                        : ProtocolOptions.Compression.valueOf(compression.trim().toUpperCase()))
+                .coreConnectionsPerHost(intEnv(env, "CASSANDRA_CORE_CONNECTIONS_PER_HOST", 1))
+                .maxConnectionsPerHost(intEnv(env, "CASSANDRA_MAX_CONNECTIONS_PER_HOST", 1))
+                .maxRequestsPerConnection(intEnv(env, "CASSANDRA_MAX_REQUESTS_PER_CONNECTION", 1024))
+                .poolTimeoutMs(intEnv(env, "CASSANDRA_POOL_TIMEOUT_MS", 5000))
+                .maxQueueSize(intEnv(env, "CASSANDRA_MAX_QUEUE_SIZE", 256))
+                .tokenAware(tokenAware == null || tokenAware.isEmpty() || Boolean.parseBoolean(tokenAware.trim()))
+                .connectTimeoutMs(intEnv(env, "CASSANDRA_CONNECT_TIMEOUT_MS", 5000))
+                .readTimeoutMs(intEnv(env, "CASSANDRA_READ_TIMEOUT_MS", 12000))
+                .statementTimeoutMs(intEnv(env, "CASSANDRA_STATEMENT_TIMEOUT_MS", 0))
+                .speculativeDelayMs(intEnv(env, "CASSANDRA_SPECULATIVE_DELAY_MS", 0))
+                .speculativeMaxExecutions(intEnv(env, "CASSANDRA_SPECULATIVE_MAX_EXECUTIONS", 1))
+                .build();
+        profile.validate();
+        return profile;
+    }
+
+    /**
+     * Checks the settings against each other and against the driver's limits.
+     *
+     * @throws IllegalArgumentException naming every invalid setting
+     */
+    public void validate() {
+        List<String> errors = new ArrayList<>();
+        if (contactPoints == null || contactPoints.isEmpty()) {
+            errors.add("CASSANDRA_CONTACT_POINTS is empty");
+        }
+        if (port <= 0 || port > 65535) {
+            errors.add("CASSANDRA_PORT must be between 1 and 65535, was " + port);
+        }
+        if (localDc == null || localDc.isEmpty()) {
+            errors.add("CASSANDRA_LOCAL_DC is empty");
+        }
+        if (coreConnectionsPerHost < 1 || maxConnectionsPerHost < coreConnectionsPerHost) {
+            errors.add("connections per host must satisfy 1 <= core <= max, were core=" + coreConnectionsPerHost
+                    + ", max=" + maxConnectionsPerHost);
+        }
+        // The native protocol v3+ stream id space of a connection
+        if (maxRequestsPerConnection < 1 || maxRequestsPerConnection > 32768) {
+            errors.add("CASSANDRA_MAX_REQUESTS_PER_CONNECTION must be between 1 and 32768, was " + maxRequestsPerConnection);
+        }
+        if (poolTimeoutMs < 0 || maxQueueSize < 0) {
+            errors.add("CASSANDRA_POOL_TIMEOUT_MS and CASSANDRA_MAX_QUEUE_SIZE must not be negative");
+        }
+        if (connectTimeoutMs <= 0 || readTimeoutMs <= 0 || statementTimeoutMs < 0) {
+            errors.add("connect and read timeouts must be positive and the statement timeout not negative");
+        }
+        if (speculativeDelayMs < 0 || speculativeMaxExecutions < 1) {
+            errors.add("CASSANDRA_SPECULATIVE_DELAY_MS must not be negative and CASSANDRA_SPECULATIVE_MAX_EXECUTIONS must be at least 1");
+        } else if (speculativeDelayMs > 0 && speculativeDelayMs >= effectiveStatementTimeoutMs()) {
+            errors.add("CASSANDRA_SPECULATIVE_DELAY_MS (" + speculativeDelayMs + ") must be below the statement timeout ("
+                    + effectiveStatementTimeoutMs() + "), or it never fires");
+        }
+        if (compression != null && compression != ProtocolOptions.Compression.NONE && !compressorAvailable(compression)) {
+            errors.add("CASSANDRA_COMPRESSION=" + compression + " but its library is not on the classpath");
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid Cassandra connection profile: " + String.join("; ", errors));
+        }
+    }
+
+    /**
+     * Returns a Cluster.Builder with every setting of this profile applied.
+     */
+    public Cluster.Builder clusterBuilder() {
+        Cluster.Builder builder = Cluster.builder()
+                .addContactPoints(contactPoints.toArray(new String[0]))
+                .withPort(port)
+                .withCompression(compression)
+                .withPoolingOptions(new PoolingOptions()
+                        .setConnectionsPerHost(HostDistance.LOCAL, coreConnectionsPerHost, maxConnectionsPerHost)
+                        .setMaxRequestsPerConnection(HostDistance.LOCAL, maxRequestsPerConnection)
+                        .setPoolTimeoutMillis(poolTimeoutMs)
+                        .setMaxQueueSize(maxQueueSize))
+                .withSocketOptions(new SocketOptions()
+                        .setConnectTimeoutMillis(connectTimeoutMs)
+                        .setReadTimeoutMillis(readTimeoutMs));
+        if (clusterName != null) {
+            builder.withClusterName(clusterName);
+        }
+        LoadBalancingPolicy local = DCAwareRoundRobinPolicy.builder().withLocalDc(localDc).build();
+        builder.withLoadBalancingPolicy(tokenAware ? new TokenAwarePolicy(local) : local);
+        // Only applies to statements marked idempotent, i.e. writes of models without non-frozen lists
+        if (speculativeDelayMs > 0) {
+            builder.withSpeculativeExecutionPolicy(
+                    new ConstantSpeculativeExecutionPolicy(speculativeDelayMs, speculativeMaxExecutions));
+        }
+        return builder;
+    }
+
+    /**
+     * Builds the cluster and opens a session, logged into the keyspace if one is set.
+     */
+    public Session connect() {
+        log.info("Initializing Cassandra cluster with {}", this);
+        Cluster cluster = clusterBuilder().build();
+        try {
+            return keyspace == null ? cluster.connect() : cluster.connect(keyspace);
+        } catch (RuntimeException e) {
+            cluster.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Applies the per-statement settings to a write.
+     */
+    public void applyTo(Statement statement) {
+        applyTo(statement, InvocationDeadline.none());
+    }
+
+    /**
+     * Applies the per-statement settings to a write that must complete before {@code deadline}: its timeout
+     * is no longer than the time left, so a slow replica fails the write (and frees its stream id) before the
+     * deadline cancels it.
+     */
+    public void applyTo(Statement statement, InvocationDeadline deadline) {
+        if (deadline.isBounded()) {
+            // At least 1 ms: a read timeout of 0 would mean none at all
+            long remaining = Math.max(1, deadline.remainingMillis());
+            statement.setReadTimeoutMillis((int) Math.min(effectiveStatementTimeoutMs(), remaining));
+        } else if (statementTimeoutMs > 0) {
+            statement.setReadTimeoutMillis(statementTimeoutMs);
+        }
+    }
+
+    private int effectiveStatementTimeoutMs() {
+        return statementTimeoutMs > 0 ? statementTimeoutMs : readTimeoutMs;
+    }
+
+    private static boolean compressorAvailable(ProtocolOptions.Compression compression) {
+        String className = compression == ProtocolOptions.Compression.LZ4
+                ? "net.jpountz.lz4.LZ4Factory"
+                : "org.xerial.snappy.Snappy";
+        try {
+            Class.forName(className, false, CassandraConnectionProfile.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static List<String> listEnv(Function<String, String> env, String name, List<String> defaultValue) {
+        String value = env.apply(name);
+        if (value == null || value.isEmpty()) {
+            log.warn("{} not set. Defaulting to {}", name, defaultValue);
+            return defaultValue;
+        }
+        List<String> values = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                values.add(item.trim());
+            }
+        }
+        return values;
+    }
+
+    private static String stringEnv(Function<String, String> env, String name, String defaultValue) {
+        String value = env.apply(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    private static int intEnv(Function<String, String> env, String name, int defaultValue) {
+        return EnvironmentConfig.intValue(name, env.apply(name), defaultValue);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The connection CassandraClientProvider hands out: the DataStax driver session in production
+ * (DriverCassandraSession), or a network-free stand-in for tests and load runs.
+ */
+public interface CassandraSession {
+
+    /**
+     * Returns the write path for rows of the model class. Called once per model class and session.
+     */
+    RowWriter rowWriter(Class<?> modelClass, EnvironmentConfig config);
+
+    /**
+     * Whether the session can still serve requests; an unhealthy session is closed and replaced.
+     */
+    boolean isHealthy();
+
+    void close();
+
+    @FunctionalInterface
+    interface RowWriter {
+
+        /**
+         * Executes one write request: a single entity, or entities sharing a partition key as one
+         * UNLOGGED batch, each written with its own timestamp.
+         *
+         * @param timestamps write timestamp of each entity, in the same order
+         * @return completes when the request was acknowledged, exceptionally with the driver's error otherwise
+         */
+        CompletableFuture<Void> writeAsync(List<Object> entities, long[] timestamps);
+
+        /**
+         * Same as {@link #writeAsync(List, long[])}, for a request that must complete before {@code deadline}:
+         * writers with a client-side request timeout shorten it to the time left. By default the deadline is
+         * only enforced by the caller cancelling the returned future.
+         */
+        default CompletableFuture<Void> writeAsync(List<Object> entities, long[] timestamps, InvocationDeadline deadline) {
+            return writeAsync(entities, timestamps);
+        }
+    }
+}
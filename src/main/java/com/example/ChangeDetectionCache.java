@@ -0,0 +1,411 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Warm-container LRU cache of what was last written per @PartitionKey value: a 64-bit hash of the written
+ * columns (the @VersionKey excluded), which columns were non-null, and the highest version known for the key.
+ * It lets the write path drop work Cassandra would not need:
+ *  - unchanged: same content as the cached row and a newer version. The write is skipped and the cached
+ *    version raised, since rewriting identical values only moves their timestamps;
+ *  - superseded: a version at or below the cached one whose columns are all covered by the cached row.
+ *    Every cell would lose to the cached ones, or (after a skip) must lose to the newer version they stand for.
+ *
+ * Only acknowledged writes populate the cache. To stay safe with out-of-order versions:
+ *  - a key with a write in flight is never skipped, so the in-flight version cannot overtake a skipped one;
+ *  - only rows writing every column (the Mapper writes nulls too) are skipped, so no cell of an older write
+ *    can survive next to the skipped content;
+ *  - entries belong to the topic-partition they were written from. When a partition's next batch does not
+ *    start at the offset after the last one seen here (another container consumed it, or the batch is retried),
+ *    its entries are invalidated;
+ *  - after a write failure the cache is cleared and skips are suspended until the spool is drained, since the
+ *    replayed version would otherwise overwrite one that was skipped.
+ *
+ * Content hashes are 64-bit; values of nested beans contribute their own 32-bit hashCode.
+ */
+@Slf4j
+public class ChangeDetectionCache {
+
+    // LinkedHashMap node, Entry and a boxed key, roughly
+    static final int ENTRY_OVERHEAD_BYTES = 112;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final ModelMetadata metadata;
+    private final long maxBytes;
+    private final long allColumnsMask;
+    private final boolean nullsWritten;
+
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<Object, Integer> inFlight = new HashMap<>();
+    private final Map<String, PartitionState> partitions = new HashMap<>();
+    private long bytes;
+    private boolean skipsSuspended;
+
+    /**
+     * @param maxBytes     approximate memory budget of the entries
+     * @param nullsWritten whether the write engine writes null columns (as tombstones), i.e. every write
+     *                     covers every column
+     */
+    public ChangeDetectionCache(Class<?> modelClass, long maxBytes, boolean nullsWritten) {
+        this.metadata = ModelMetadata.of(modelClass);
+        if (metadata.getColumns().size() > Long.SIZE) {
+            throw new IllegalArgumentException("Change detection supports at most " + Long.SIZE + " columns, "
+                    + modelClass.getName() + " has " + metadata.getColumns().size());
+        }
+        this.maxBytes = maxBytes;
+        this.allColumnsMask = metadata.getColumns().size() == Long.SIZE ? -1L : (1L << metadata.getColumns().size()) - 1;
+        this.nullsWritten = nullsWritten;
+    }
+
+    /**
+     * Returns the cache configured by CHANGE_CACHE_MAX_BYTES, or null when it is disabled (0) or the model
+     * has too many columns.
+     */
+    public static ChangeDetectionCache fromConfig(Class<?> modelClass, EnvironmentConfig config) {
+        if (config.getChangeCacheMaxBytes() <= 0) {
+            return null;
+        }
+        try {
+            ChangeDetectionCache cache = new ChangeDetectionCache(modelClass, config.getChangeCacheMaxBytes(),
+                    config.getWriteEngine() == WriteEngine.Kind.MAPPER);
+            log.info("ChangeDetectionCache enabled for model={}, maxBytes={}", modelClass.getSimpleName(),
+                    config.getChangeCacheMaxBytes());
+            return cache;
+        } catch (IllegalArgumentException e) {
+            log.warn("ChangeDetectionCache disabled: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Records the offset range of every topic-partition of an invocation, see {@link #beginPartition}.
+     */
+    public void observeOffsets(List<KafkaEvent.KafkaEventRecord> records) {
+        Map<String, long[]> ranges = new LinkedHashMap<>();
+        for (KafkaEvent.KafkaEventRecord r : records) {
+            long[] range = ranges.computeIfAbsent(r.getTopic() + "-" + r.getPartition(),
+                    tp -> new long[]{Long.MAX_VALUE, Long.MIN_VALUE});
+            range[0] = Math.min(range[0], r.getOffset());
+            range[1] = Math.max(range[1], r.getOffset());
+        }
+        for (Map.Entry<String, long[]> range : ranges.entrySet()) {
+            beginPartition(range.getKey(), range.getValue()[0]);
+            endPartition(range.getKey(), range.getValue()[1]);
+        }
+    }
+
+    /**
+     * Must be called with the first offset of a topic-partition's batch before any of its entities is filtered.
+     * A gap since the last batch seen invalidates the partition's entries.
+     */
+    public synchronized void beginPartition(String topicPartition, long firstOffset) {
+        PartitionState state = partitions.computeIfAbsent(topicPartition, tp -> new PartitionState());
+        if (state.nextOffset >= 0 && firstOffset != state.nextOffset) {
+            state.epoch++;
+            log.info("Offset gap on topicPartition='{}' (expected {}, got {}): invalidating its cached rows.",
+                    topicPartition, state.nextOffset, firstOffset);
+        }
+    }
+
+    public synchronized void endPartition(String topicPartition, long lastOffset) {
+        PartitionState state = partitions.computeIfAbsent(topicPartition, tp -> new PartitionState());
+        state.nextOffset = lastOffset + 1;
+    }
+
+    /**
+     * Decides which entities of a chunk must be written. The returned Filtered must be passed to
+     * {@link #onWritten} once the writes completed.
+     */
+    public Filtered filter(String topicPartition, List<Object> chunk) {
+        long[] hashes = new long[chunk.size()];
+        long[] masks = new long[chunk.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            Object entity = chunk.get(i);
+            long mask = 0;
+            hashes[i] = contentHash(entity, metadata);
+            for (ModelMetadata.Column column : metadata.getColumns()) {
+                if (column.get(entity) != null) {
+                    mask |= 1L << column.getIndex();
+                }
+            }
+            masks[i] = nullsWritten ? allColumnsMask : mask;
+        }
+
+        Filtered filtered = new Filtered(chunk.size());
+        synchronized (this) {
+            PartitionState state = partitions.get(topicPartition);
+            filtered.partition = state;
+            filtered.epoch = state == null ? 0 : state.epoch;
+            for (int i = 0; i < hashes.length; i++) {
+                Object entity = chunk.get(i);
+                Object key = metadata.partitionKeyOf(entity);
+                Entry entry = state == null || key == null ? null : validEntry(key, state);
+                if (state != null && key != null) {
+                    filtered.lookups++;
+                    if (entry != null) {
+                        filtered.hits++;
+                    }
+                }
+                if (entry != null) {
+                    long version = metadata.versionOf(entity);
+                    if (version <= entry.version && (masks[i] & ~entry.mask) == 0) {
+                        filtered.superseded++;
+                        continue;
+                    }
+                    if (version > entry.version && hashes[i] == entry.hash && masks[i] == allColumnsMask
+                            && entry.mask == allColumnsMask && !skipsSuspended && !inFlight.containsKey(key)) {
+                        entry.version = version;
+                        filtered.unchanged++;
+                        continue;
+                    }
+                }
+                if (key != null) {
+                    inFlight.merge(key, 1, Integer::sum);
+                }
+                filtered.add(entity, hashes[i], masks[i]);
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Populates the cache from the acknowledged writes of {@code filtered}.
+     *
+     * @param failed entities whose write finally failed; they leave the cache cleared and skips suspended
+     */
+    public synchronized void onWritten(Filtered filtered, Collection<Object> failed) {
+        Set<Object> failedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        failedSet.addAll(failed);
+        for (int i = 0; i < filtered.writes.size(); i++) {
+            Object entity = filtered.writes.get(i);
+            Object key = metadata.partitionKeyOf(entity);
+            if (key == null) {
+                continue;
+            }
+            inFlight.computeIfPresent(key, (k, n) -> n > 1 ? n - 1 : null);
+            if (failedSet.contains(entity)) {
+                continue;
+            }
+            PartitionState state = filtered.partition;
+            if (state == null || state.epoch != filtered.epoch) {
+                remove(key);
+                continue;
+            }
+            long version = metadata.versionOf(entity);
+            Entry entry = validEntry(key, state);
+            if (entry == null || version > entry.version) {
+                put(key, new Entry(filtered.hashes[i], filtered.masks[i], version, state, state.epoch));
+            } else if ((filtered.masks[i] & ~entry.mask) != 0) {
+                // An older write added cells the entry does not describe
+                remove(key);
+            }
+        }
+        if (!failedSet.isEmpty()) {
+            entries.clear();
+            bytes = 0;
+            skipsSuspended = true;
+            log.warn("{} write(s) failed: change detection cache cleared, skips suspended until the spool is drained.",
+                    failedSet.size());
+        }
+    }
+
+    public synchronized boolean isSkipsSuspended() {
+        return skipsSuspended;
+    }
+
+    /**
+     * Called once no failed write is left to replay.
+     */
+    public synchronized void resumeSkips() {
+        if (skipsSuspended) {
+            skipsSuspended = false;
+            log.info("Write spool drained: change detection skips resumed.");
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    private Entry validEntry(Object key, PartitionState state) {
+        Entry entry = entries.get(key);
+        if (entry != null && (entry.partition != state || entry.epoch != state.epoch)) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private void put(Object key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous == null) {
+            bytes += entryBytes(key);
+        }
+        Iterator<Map.Entry<Object, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Object evicted = eldest.next().getKey();
+            eldest.remove();
+            bytes -= entryBytes(evicted);
+        }
+    }
+
+    private void remove(Object key) {
+        if (entries.remove(key) != null) {
+            bytes -= entryBytes(key);
+        }
+    }
+
+    private static long entryBytes(Object key) {
+        return ENTRY_OVERHEAD_BYTES + (key instanceof String ? 40 + 2L * ((String) key).length() : 0);
+    }
+
+    /**
+     * Hash of every non-null column but the @VersionKey, so two versions of the same content hash equal.
+     */
+    static long contentHash(Object entity, ModelMetadata metadata) {
+        long h = FNV_OFFSET;
+        for (ModelMetadata.Column column : metadata.getColumns()) {
+            if (column == metadata.getVersion()) {
+                continue;
+            }
+            Object value = column.get(entity);
+            if (value != null) {
+                h = mix(h ^ (column.getIndex() * 0x9E3779B97F4A7C15L) ^ hashOf(value));
+            }
+        }
+        return h;
+    }
+
+    private static long hashOf(Object value) {
+        if (value == null) {
+            return 0x632BE59BD9B4E019L;
+        }
+        if (value instanceof CharSequence) {
+            CharSequence s = (CharSequence) value;
+            long h = FNV_OFFSET;
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * FNV_PRIME;
+            }
+            return h;
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return mix(Double.doubleToLongBits(((Number) value).doubleValue()));
+        }
+        if (value instanceof Number) {
+            return mix(((Number) value).longValue());
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 0x5851F42D4C957F2DL : 0x14057B7EF767814FL;
+        }
+        if (value instanceof List) {
+            long h = FNV_OFFSET;
+            for (Object element : (List<?>) value) {
+                h = mix(h * 31 + hashOf(element));
+            }
+            return h;
+        }
+        if (value instanceof Map) {
+            // Order-independent, like Map.hashCode
+            long h = 0;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                h += mix(hashOf(e.getKey()) * 31 + hashOf(e.getValue()));
+            }
+            return mix(h);
+        }
+        return mix(value.hashCode());
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The entities of a chunk that still need writing, plus what was learned about the others.
+     */
+    public static final class Filtered {
+        private final List<Object> writes;
+        private final long[] hashes;
+        private final long[] masks;
+        private PartitionState partition;
+        private int epoch;
+        private int lookups;
+        private int hits;
+        private int unchanged;
+        private int superseded;
+
+        private Filtered(int capacity) {
+            this.writes = new ArrayList<>(capacity);
+            this.hashes = new long[capacity];
+            this.masks = new long[capacity];
+        }
+
+        private void add(Object entity, long hash, long mask) {
+            hashes[writes.size()] = hash;
+            masks[writes.size()] = mask;
+            writes.add(entity);
+        }
+
+        public List<Object> getWrites() {
+            return writes;
+        }
+
+        public int getLookups() {
+            return lookups;
+        }
+
+        public int getHits() {
+            return hits;
+        }
+
+        /** Writes skipped because the content did not change */
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        /** Entities dropped because a newer version of the row was already written */
+        public int getSuperseded() {
+            return superseded;
+        }
+    }
+
+    private static final class PartitionState {
+        private long nextOffset = -1;
+        private int epoch;
+    }
+
+    private static final class Entry {
+        private final long hash;
+        private final long mask;
+        private long version;
+        private final PartitionState partition;
+        private final int epoch;
+
+        private Entry(long hash, long mask, long version, PartitionState partition, int epoch) {
+            this.hash = hash;
+            this.mask = mask;
+            this.version = version;
+            this.partition = partition;
+            this.epoch = epoch;
+        }
+    }
+}
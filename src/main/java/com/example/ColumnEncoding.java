@@ -0,0 +1,42 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Binary encodings of an {@link com.example.annotations.Encoded} column. Smile and CBOR are binary JSON:
+ * field names are shared back-references (Smile) or length-prefixed (CBOR) and numbers are not text.
+ * The _LZ4 variants additionally compress the encoded bytes, which pays off for large, repetitive values.
+ */
+public enum ColumnEncoding {
+    /** UTF-8 JSON, the baseline the binary encodings are compared with */
+    JSON(Mappers.JSON, false),
+    SMILE(Mappers.SMILE, false),
+    CBOR(Mappers.CBOR, false),
+    SMILE_LZ4(Mappers.SMILE, true),
+    CBOR_LZ4(Mappers.CBOR, true);
+
+    private final ObjectMapper mapper;
+    private final boolean compressed;
+
+    ColumnEncoding(ObjectMapper mapper, boolean compressed) {
+        this.mapper = mapper;
+        this.compressed = compressed;
+    }
+
+    ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    // Shared by the plain and compressed variants of a format
+    private static final class Mappers {
+        static final ObjectMapper JSON = new ObjectMapper();
+        static final ObjectMapper SMILE = new ObjectMapper(new SmileFactory());
+        static final ObjectMapper CBOR = new ObjectMapper(new CBORFactory());
+    }
+}
@@ -0,0 +1,130 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * A per-thread byte[] that base64 record values are decoded into, so parsing a record does not allocate its
+ * decoded bytes. The buffer grows to the largest value seen on the thread and is reused for every following
+ * record; values larger than MAX_RETAINED_CAPACITY are decoded into a one-off array instead, so a single huge
+ * record does not pin its size on every pipeline thread for the life of the container.
+ *
+ * The decoded bytes are only valid until the next {@link #decode(String)} on the same thread: callers parse
+ * them in place and must not keep the array.
+ */
+final class DecodeBuffer {
+
+    static final int INITIAL_CAPACITY = 4 * 1024;
+    static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    private static final ThreadLocal<DecodeBuffer> BUFFERS = ThreadLocal.withInitial(DecodeBuffer::new);
+
+    // Basic base64 alphabet (RFC 4648 table 1), as java.util.Base64.getDecoder(); -1 for any other char
+    private static final int[] ALPHABET = new int[128];
+
+    static {
+        Arrays.fill(ALPHABET, -1);
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < chars.length(); i++) {
+            ALPHABET[chars.charAt(i)] = i;
+        }
+    }
+
+    private byte[] retained = new byte[INITIAL_CAPACITY];
+    private byte[] bytes = retained;
+    private int length;
+
+    private DecodeBuffer() {
+    }
+
+    /**
+     * Decodes {@code base64} into this thread's buffer.
+     *
+     * @throws IllegalArgumentException if {@code base64} is not valid base64, as Base64.Decoder.decode
+     */
+    static DecodeBuffer decode(String base64) {
+        DecodeBuffer buffer = BUFFERS.get();
+        buffer.fill(base64);
+        return buffer;
+    }
+
+    /**
+     * The decoded bytes, from index 0 to {@link #length()}; the array may be longer.
+     */
+    byte[] array() {
+        return bytes;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * The capacity kept for the next record, for tests.
+     */
+    int retainedCapacity() {
+        return retained.length;
+    }
+
+    private void fill(String base64) {
+        int end = base64.length();
+        int padding = 0;
+        while (padding < 2 && end > 0 && base64.charAt(end - 1) == '=') {
+            padding++;
+            end--;
+        }
+        int tail = end & 3;
+        if (tail == 1) {
+            throw new IllegalArgumentException("Last unit does not have enough valid bits");
+        }
+        // Padding is optional, but when present it must complete the last 4-char unit
+        if (padding > 0 && tail + padding != 4) {
+            throw new IllegalArgumentException("Input byte array has wrong 4-byte ending unit");
+        }
+        int decodedLength = (end >>> 2) * 3 + (tail == 0 ? 0 : tail - 1);
+        bytes = ensureCapacity(decodedLength);
+
+        byte[] out = bytes;
+        int in = 0;
+        int written = 0;
+        int quads = end - tail;
+        while (in < quads) {
+            int bits = sextet(base64, in) << 18 | sextet(base64, in + 1) << 12
+                    | sextet(base64, in + 2) << 6 | sextet(base64, in + 3);
+            out[written++] = (byte) (bits >> 16);
+            out[written++] = (byte) (bits >> 8);
+            out[written++] = (byte) bits;
+            in += 4;
+        }
+        if (tail >= 2) {
+            int bits = sextet(base64, in) << 18 | sextet(base64, in + 1) << 12;
+            if (tail == 3) {
+                bits |= sextet(base64, in + 2) << 6;
+            }
+            out[written++] = (byte) (bits >> 16);
+            if (tail == 3) {
+                out[written++] = (byte) (bits >> 8);
+            }
+        }
+        length = written;
+    }
+
+    private byte[] ensureCapacity(int required) {
+        if (required <= retained.length) {
+            return retained;
+        }
+        if (required > MAX_RETAINED_CAPACITY) {
+            return new byte[required];
+        }
+        retained = new byte[Math.min(MAX_RETAINED_CAPACITY, Math.max(required, retained.length * 2))];
+        return retained;
+    }
+
+    private static int sextet(String base64, int index) {
+        char c = base64.charAt(index);
+        int value = c < ALPHABET.length ? ALPHABET[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Illegal base64 character " + Integer.toHexString(c) + " at " + index);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.CodecRegistry;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.mapping.MappingManager;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * CassandraSession backed by a DataStax driver 3.x Session. Statements are built by the WriteEngine
+ * selected with WRITE_ENGINE and executed asynchronously.
+ */
+@Slf4j
+public class DriverCassandraSession implements CassandraSession {
+
+    private final Session session;
+    private final CassandraConnectionProfile profile;
+    private MappingManager manager;
+
+    public DriverCassandraSession(Session session) {
+        this(session, CassandraConnectionProfile.builder().build());
+    }
+
+    /**
+     * @param profile the profile the session was opened with; supplies the keyspace and per-statement settings
+     */
+    public DriverCassandraSession(Session session, CassandraConnectionProfile profile) {
+        this.session = session;
+        this.profile = profile;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public synchronized MappingManager getMappingManager() {
+        if (manager == null) {
+            manager = new MappingManager(session);
+        }
+        return manager;
+    }
+
+    @Override
+    public RowWriter rowWriter(Class<?> modelClass, EnvironmentConfig config) {
+        registerCodecs(modelClass);
+        WriteEngine engine = config.getWriteEngine() == WriteEngine.Kind.PREPARED
+                ? new PreparedWriteEngine(session, profile.getKeyspace(),
+                        config.getCassandraTableName(), modelClass)
+                : new MapperWriteEngine(getMappingManager(), modelClass);
+        return rowWriter(session, engine, profile);
+    }
+
+    /**
+     * Registers the codecs of the model's @Encoded columns with the cluster, so the Mapper (and reads) map
+     * their blob columns. The registry resolves codecs by Java type: fields sharing a generic type should share
+     * an encoding, whereas PreparedWriteEngine always uses each column's own codec.
+     */
+    private void registerCodecs(Class<?> modelClass) {
+        Cluster cluster = session.getCluster();
+        if (cluster == null) {
+            return;
+        }
+        CodecRegistry registry = cluster.getConfiguration().getCodecRegistry();
+        for (BlobColumnCodec<?> codec : ModelMetadata.of(modelClass).getCodecs()) {
+            registry.register(codec);
+            log.info("Registered {} codec for {} columns of {}", codec.getEncoding(), codec.getJavaType(),
+                    modelClass.getSimpleName());
+        }
+    }
+
+    public static RowWriter rowWriter(Session session, WriteEngine engine) {
+        return rowWriter(session, engine, CassandraConnectionProfile.builder().build());
+    }
+
+    /**
+     * Executes the statements built by {@code engine} on {@code session}. A request of several entities
+     * becomes an UNLOGGED batch, which takes its routing key from the first statement so it goes to a
+     * replica of the partition.
+     *
+     * The engine marks each statement idempotent when re-applying it leaves the same cells, which lets the
+     * driver retry it and speculatively send it to another replica; a batch is idempotent when all of its
+     * statements are. Each statement's client-side timeout is bounded by the time left before the deadline
+     * passed to {@link RowWriter#writeAsync(List, long[], InvocationDeadline)}.
+     */
+    public static RowWriter rowWriter(Session session, WriteEngine engine, CassandraConnectionProfile profile) {
+        return new RowWriter() {
+            @Override
+            public CompletableFuture<Void> writeAsync(List<Object> entities, long[] timestamps) {
+                return writeAsync(entities, timestamps, InvocationDeadline.none());
+            }
+
+            @Override
+            public CompletableFuture<Void> writeAsync(List<Object> entities, long[] timestamps,
+                                                      InvocationDeadline deadline) {
+                return execute(session, statementFor(engine, entities, timestamps), profile, deadline);
+            }
+        };
+    }
+
+    private static Statement statementFor(WriteEngine engine, List<Object> entities, long[] timestamps) {
+        if (entities.size() == 1) {
+            return engine.statementFor(entities.get(0), timestamps[0]);
+        }
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        boolean idempotent = true;
+        for (int i = 0; i < entities.size(); i++) {
+            Statement member = engine.statementFor(entities.get(i), timestamps[i]);
+            idempotent &= Boolean.TRUE.equals(member.isIdempotent());
+            batch.add(member);
+        }
+        return batch.setIdempotent(idempotent);
+    }
+
+    private static CompletableFuture<Void> execute(Session session, Statement statement,
+                                                   CassandraConnectionProfile profile, InvocationDeadline deadline) {
+        profile.applyTo(statement, deadline);
+
+        // Convert the driver's ListenableFuture to a Java CompletableFuture
+        CompletableFuture<Void> cf = new CompletableFuture<>();
+        ResultSetFuture future = session.executeAsync(statement);
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+                cf.complete(null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                cf.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        // Cancelling the returned future (at the invocation deadline) releases the request's stream id
+        cf.whenComplete((v, t) -> {
+            if (cf.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return cf;
+    }
+
+    /**
+     * A session is healthy while neither it nor its cluster is closed and at least one host is connected.
+     */
+    @Override
+    public boolean isHealthy() {
+        if (session.isClosed()) {
+            return false;
+        }
+        Cluster cluster = session.getCluster();
+        if (cluster != null && cluster.isClosed()) {
+            return false;
+        }
+        return !session.getState().getConnectedHosts().isEmpty();
+    }
+
+    @Override
+    public void close() {
+        Cluster cluster = session.getCluster();
+        try {
+            session.close();
+            if (cluster != null) {
+                cluster.close();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Error while closing Cassandra session: {}", e.getMessage(), e);
+        }
+    }
+}
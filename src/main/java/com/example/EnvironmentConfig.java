@@ -2,13 +2,19 @@ package com.example;
 
 import lombok.*;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class EnvironmentConfig {
-    private String cassandraClusterName;
-    private String cassandraKeyspaceName;
+    // Connection settings, CASSANDRA_CLUSTER and CASSANDRA_KEYSPACE included, are in CassandraConnectionProfile
     private String cassandraTableName;
     private String parserName;
     private String vaultDbRoles;
@@ -17,10 +23,70 @@ public class EnvironmentConfig {
     private String stageName;
     private String vdcName;
     private boolean dryRun;
+    @Builder.Default
+    private WriteEngine.Kind writeEngine = WriteEngine.Kind.MAPPER;
+    @Builder.Default
+    private int writeMinInFlight = 8;
+    @Builder.Default
+    private int writeMaxInFlight = 256;
+    @Builder.Default
+    private long writeLatencyThresholdMs = 200;
+    // 1 = one statement per entity; > 1 = UNLOGGED batches per partition key of at most this many statements
+    @Builder.Default
+    private int writeBatchMaxStatements = 1;
+    @Builder.Default
+    private int writeMaxAttempts = 3;
+    @Builder.Default
+    private long writeRetryBaseDelayMs = 50;
+    @Builder.Default
+    private long writeRetryMaxDelayMs = 1000;
+    @Builder.Default
+    private String spoolDir = "/tmp/cassandra-write-spool";
+    @Builder.Default
+    private long spoolMaxBytes = 256L * 1024 * 1024;
+    // Invocations a write may fail in before it is dead-lettered instead of being spilled again
+    @Builder.Default
+    private int spoolMaxAttempts = 5;
+    // A record that fails to parse is neither written nor spooled, so by default it fails the invocation rather
+    // than being lost; FATAL_FAILURES=SPOOL_ERROR skips such records instead
+    @Builder.Default
+    private Set<FailureKind> fatalFailures = EnumSet.of(FailureKind.PARSE_ERROR, FailureKind.SPOOL_ERROR);
+    @Builder.Default
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    @Builder.Default
+    private int writeChunkSize = 64;
+    // Emit one CloudWatch EMF line of stage latencies and counts per invocation
+    @Builder.Default
+    private boolean metricsEnabled = true;
+    @Builder.Default
+    private String metricsNamespace = "KafkaCassandraLambda";
+    @Builder.Default
+    private EventLogger.Mode eventLogMode = EventLogger.Mode.SUMMARY;
+    @Builder.Default
+    private int eventLogSampleEvery = 1000;
+    @Builder.Default
+    private int eventLogMaxBytes = 2048;
+    // Memory budget of the ChangeDetectionCache of each model; 0 disables it
+    @Builder.Default
+    private long changeCacheMaxBytes = 0;
+    // Number of keys the StaleVersionGuard of each model remembers; 0 disables it
+    @Builder.Default
+    private int versionGuardMaxKeys = 0;
+    // Stripes of the WriteLanes ordering writes of the same key, rounded up to a power of two. Off (0) by
+    // default; set WRITE_LANE_STRIPES, e.g. to 4096, to run each key's writes one at a time in submission order
+    @Builder.Default
+    private int writeLaneStripes = 0;
+    // Time kept before the Lambda timeout to spill failed writes and report; no new work starts within it
+    @Builder.Default
+    private long deadlineSafetyMarginMs = 5000;
+    // Kafka topic -> parser (and table) of its records; topics not listed use parserName
+    @Builder.Default
+    private Map<String, TopicRoute> topicRoutes = Collections.emptyMap();
+    // Confluent schema ids the producers frame values with; each must resolve in AvroSchemaCache at startup
+    @Builder.Default
+    private Set<Integer> avroSchemaIds = Collections.emptySet();
 
     public static EnvironmentConfig loadFromSystemEnv() {
-        String cluster = System.getenv("CASSANDRA_CLUSTER");
-        String keyspace = System.getenv("CASSANDRA_KEYSPACE");
         String table = System.getenv("CASSANDRA_TABLE");
         String parser = System.getenv("PARSER");
         String dbRoles = System.getenv("VAULT_DB_ROLES");
@@ -29,10 +95,44 @@ public class EnvironmentConfig {
         String stage = System.getenv("STAGE");
         String vdc = System.getenv("VDC");
         boolean dry = Boolean.parseBoolean(System.getenv("DRY_RUN"));
+        String engine = System.getenv("WRITE_ENGINE");
+        WriteEngine.Kind writeEngine = engine == null || engine.isEmpty()
+                ? WriteEngine.Kind.MAPPER
+                : WriteEngine.Kind.valueOf(engine.trim().toUpperCase());
+        int minInFlight = intEnv("WRITE_MIN_IN_FLIGHT", 8);
+        int maxInFlight = intEnv("WRITE_MAX_IN_FLIGHT", 256);
+        checkPositive("WRITE_MIN_IN_FLIGHT", minInFlight);
+        checkPositive("WRITE_MAX_IN_FLIGHT", maxInFlight);
+        long latencyThresholdMs = longEnv("WRITE_LATENCY_THRESHOLD_MS", 200);
+        int batchMaxStatements = intEnv("WRITE_BATCH_MAX_STATEMENTS", 1);
+        int maxAttempts = intEnv("WRITE_MAX_ATTEMPTS", 3);
+        long retryBaseDelayMs = longEnv("WRITE_RETRY_BASE_DELAY_MS", 50);
+        long retryMaxDelayMs = longEnv("WRITE_RETRY_MAX_DELAY_MS", 1000);
+        String spoolDir = System.getenv("SPOOL_DIR");
+        long spoolMaxBytes = longEnv("SPOOL_MAX_BYTES", 256L * 1024 * 1024);
+        int spoolMaxAttempts = intEnv("SPOOL_MAX_ATTEMPTS", 5);
+        Set<FailureKind> fatalFailures = failureKindsEnv("FATAL_FAILURES",
+                EnumSet.of(FailureKind.PARSE_ERROR, FailureKind.SPOOL_ERROR));
+        int parseThreads = intEnv("PARSE_THREADS", Runtime.getRuntime().availableProcessors());
+        checkPositive("PARSE_THREADS", parseThreads);
+        int writeChunkSize = intEnv("WRITE_CHUNK_SIZE", 64);
+        checkPositive("WRITE_CHUNK_SIZE", writeChunkSize);
+        String metricsEnabled = System.getenv("METRICS_ENABLED");
+        String metricsNamespace = System.getenv("METRICS_NAMESPACE");
+        String eventLogMode = System.getenv("EVENT_LOG_MODE");
+        int eventLogSampleEvery = intEnv("EVENT_LOG_SAMPLE_EVERY", 1000);
+        checkPositive("EVENT_LOG_SAMPLE_EVERY", eventLogSampleEvery);
+        int eventLogMaxBytes = intEnv("EVENT_LOG_MAX_BYTES", 2048);
+        checkPositive("EVENT_LOG_MAX_BYTES", eventLogMaxBytes);
+        long changeCacheMaxBytes = longEnv("CHANGE_CACHE_MAX_BYTES", 0);
+        int versionGuardMaxKeys = intEnv("VERSION_GUARD_MAX_KEYS", 0);
+        int writeLaneStripes = intEnv("WRITE_LANE_STRIPES", 0);
+        long deadlineSafetyMarginMs = longEnv("DEADLINE_SAFETY_MARGIN_MS", 5000);
+        Map<String, TopicRoute> topicRoutes = topicRoutesEnv("TOPIC_ROUTES");
+        checkRouteTables(topicRoutes, writeEngine);
+        Set<Integer> avroSchemaIds = schemaIdsEnv("AVRO_SCHEMA_IDS");
 
         return EnvironmentConfig.builder()
-                .cassandraClusterName(cluster)
-                .cassandraKeyspaceName(keyspace)
                 .cassandraTableName(table)
                 .parserName(parser)
                 .vaultDbRoles(dbRoles)
@@ -41,6 +141,176 @@ public class EnvironmentConfig {
                 .stageName(stage)
                 .vdcName(vdc)
                 .dryRun(dry)
+                .writeEngine(writeEngine)
+                .writeMinInFlight(minInFlight)
+                .writeMaxInFlight(maxInFlight)
+                .writeLatencyThresholdMs(latencyThresholdMs)
+                .writeBatchMaxStatements(batchMaxStatements)
+                .writeMaxAttempts(maxAttempts)
+                .writeRetryBaseDelayMs(retryBaseDelayMs)
+                .writeRetryMaxDelayMs(retryMaxDelayMs)
+                .spoolDir(spoolDir == null || spoolDir.isEmpty() ? "/tmp/cassandra-write-spool" : spoolDir)
+                .spoolMaxBytes(spoolMaxBytes)
+                .spoolMaxAttempts(spoolMaxAttempts)
+                .fatalFailures(fatalFailures)
+                .parseThreads(parseThreads)
+                .writeChunkSize(writeChunkSize)
+                .metricsEnabled(metricsEnabled == null || metricsEnabled.isEmpty() || Boolean.parseBoolean(metricsEnabled))
+                .metricsNamespace(metricsNamespace == null || metricsNamespace.isEmpty() ? "KafkaCassandraLambda" : metricsNamespace)
+                .eventLogMode(eventLogMode == null || eventLogMode.isEmpty()
+                        ? EventLogger.Mode.SUMMARY
+                        : EventLogger.Mode.valueOf(eventLogMode.trim().toUpperCase()))
+                .eventLogSampleEvery(eventLogSampleEvery)
+                .eventLogMaxBytes(eventLogMaxBytes)
+                .changeCacheMaxBytes(changeCacheMaxBytes)
+                .versionGuardMaxKeys(versionGuardMaxKeys)
+                .writeLaneStripes(writeLaneStripes)
+                .deadlineSafetyMarginMs(deadlineSafetyMarginMs)
+                .topicRoutes(topicRoutes)
+                .avroSchemaIds(avroSchemaIds)
+                .build();
+    }
+
+    /**
+     * Returns the configuration of a routed topic: this one with the route's parser and table.
+     */
+    public EnvironmentConfig forRoute(TopicRoute route) {
+        return toBuilder()
+                .parserName(route.getParserName())
+                .cassandraTableName(route.getCassandraTableName() == null ? cassandraTableName : route.getCassandraTableName())
+                .topicRoutes(Collections.emptyMap())
                 .build();
     }
+
+    /**
+     * Parser and, optionally, table of the records of one Kafka topic.
+     */
+    @Value
+    public static class TopicRoute {
+        String parserName;
+        /** Null to use CASSANDRA_TABLE */
+        String cassandraTableName;
+    }
+
+    /**
+     * Parses comma-separated "topic=parser" or "topic=parser:table" entries.
+     */
+    static Map<String, TopicRoute> parseTopicRoutes(String value) {
+        Map<String, TopicRoute> routes = new LinkedHashMap<>();
+        for (String entry : value.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int eq = trimmed.indexOf('=');
+            if (eq <= 0 || eq == trimmed.length() - 1) {
+                throw new IllegalArgumentException("Invalid topic route, expected topic=parser[:table]: " + trimmed);
+            }
+            String topic = trimmed.substring(0, eq).trim();
+            String target = trimmed.substring(eq + 1).trim();
+            int colon = target.indexOf(':');
+            routes.put(topic, colon < 0
+                    ? new TopicRoute(target, null)
+                    : new TopicRoute(target.substring(0, colon).trim(), target.substring(colon + 1).trim()));
+        }
+        return routes;
+    }
+
+    /**
+     * Rejects topic routes naming a table unless WRITE_ENGINE=PREPARED: the Mapper always writes to the model's
+     * {@code @Table}, so the route's table would silently be ignored.
+     */
+    static void checkRouteTables(Map<String, TopicRoute> routes, WriteEngine.Kind writeEngine) {
+        if (writeEngine == WriteEngine.Kind.PREPARED) {
+            return;
+        }
+        routes.forEach((topic, route) -> {
+            if (route.getCassandraTableName() != null) {
+                throw new IllegalArgumentException("Topic route " + topic + "=" + route.getParserName() + ":"
+                        + route.getCassandraTableName() + " names a table, which requires WRITE_ENGINE=PREPARED; the "
+                        + writeEngine + " engine writes to the model's @Table");
+            }
+        });
+    }
+
+    /**
+     * Rejects a count setting below 1, which would otherwise only fail where it is used, e.g. when the
+     * RecordPipeline builds its worker pool.
+     */
+    static void checkPositive(String name, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+    }
+
+    private static Map<String, TopicRoute> topicRoutesEnv(String name) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? Collections.emptyMap() : parseTopicRoutes(value);
+    }
+
+    private static Set<Integer> schemaIdsEnv(String name) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? Collections.emptySet() : parseSchemaIds(name, value);
+    }
+
+    /**
+     * Parses a comma-separated list of schema ids, e.g. "7,12".
+     */
+    static Set<Integer> parseSchemaIds(String name, String value) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (String id : value.split(",")) {
+            if (!id.trim().isEmpty()) {
+                ids.add(intValue(name, id, 0));
+            }
+        }
+        return Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Parses a comma-separated list of FailureKind names; "NONE" means no kind is fatal.
+     */
+    private static Set<FailureKind> failureKindsEnv(String name, Set<FailureKind> defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        Set<FailureKind> kinds = EnumSet.noneOf(FailureKind.class);
+        for (String kind : value.split(",")) {
+            String trimmed = kind.trim().toUpperCase();
+            if (!trimmed.isEmpty() && !trimmed.equals("NONE")) {
+                kinds.add(FailureKind.valueOf(trimmed));
+            }
+        }
+        return kinds;
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        return intValue(name, System.getenv(name), defaultValue);
+    }
+
+    private static long longEnv(String name, long defaultValue) {
+        return longValue(name, System.getenv(name), defaultValue);
+    }
+
+    /**
+     * Parses the value of an int setting; values outside the int range are rejected rather than wrapped.
+     */
+    static int intValue(String name, String value, int defaultValue) {
+        long parsed = longValue(name, value, defaultValue);
+        if (parsed < Integer.MIN_VALUE || parsed > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid numeric value for " + name + ": " + value);
+        }
+        return (int) parsed;
+    }
+
+    static long longValue(String name, String value, long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid numeric value for " + name + ": " + value, e);
+        }
+    }
 }
@@ -0,0 +1,173 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs the incoming KafkaEvent according to EVENT_LOG_MODE. Serializing a full 6 MB event doubles the
+ * peak heap of the invocation and its CloudWatch ingestion, so the default only summarizes it.
+ */
+@Slf4j
+public class EventLogger {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public enum Mode {
+        /** Nothing is logged. */
+        OFF,
+        /** One line per topic-partition: record count, offset range and payload size. */
+        SUMMARY,
+        /** The summary, plus one record out of every EVENT_LOG_SAMPLE_EVERY, its value cut to EVENT_LOG_MAX_BYTES decoded bytes. */
+        SAMPLED,
+        /** The whole event as JSON. For debugging only. */
+        FULL
+    }
+
+    private final Mode mode;
+    private final int sampleEvery;
+    private final int maxBytes;
+    // Counts records across invocations, so small batches are sampled too
+    private final AtomicLong recordsSeen = new AtomicLong();
+
+    public EventLogger(Mode mode, int sampleEvery, int maxBytes) {
+        this.mode = mode;
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.maxBytes = maxBytes;
+    }
+
+    public static EventLogger fromConfig(EnvironmentConfig config) {
+        return new EventLogger(config.getEventLogMode(), config.getEventLogSampleEvery(), config.getEventLogMaxBytes());
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Whether this logger was built with the configuration's EVENT_LOG_* settings, so it can keep serving it.
+     */
+    public boolean matches(EnvironmentConfig config) {
+        return mode == config.getEventLogMode()
+                && sampleEvery == Math.max(1, config.getEventLogSampleEvery())
+                && maxBytes == config.getEventLogMaxBytes();
+    }
+
+    public void log(KafkaEvent event) {
+        if (mode == Mode.OFF || !log.isInfoEnabled() || event.getRecords() == null) {
+            return;
+        }
+        if (mode == Mode.FULL) {
+            try {
+                log.info("Received Lambda Event:\n{}", MAPPER.writeValueAsString(event));
+            } catch (JsonProcessingException e) {
+                log.warn("Failed to serialize event to JSON: {}", e.getMessage());
+            }
+            return;
+        }
+
+        int total = 0;
+        for (Map.Entry<String, List<KafkaEvent.KafkaEventRecord>> entry : event.getRecords().entrySet()) {
+            PartitionSummary summary = new PartitionSummary();
+            for (KafkaEvent.KafkaEventRecord r : entry.getValue()) {
+                summary.add(r);
+            }
+            summary.logLine(entry.getKey());
+            total += summary.records;
+        }
+        log.info("Received event from {} with {} record(s) in {} topic-partition(s).",
+                event.getEventSource(), total, event.getRecords().size());
+    }
+
+    /**
+     * Starts the summary of an event that is read record by record rather than materialized
+     * (StreamingLambdaHandler). FULL then logs like SUMMARY, since there is no event to serialize.
+     */
+    public StreamSummary streamSummary() {
+        return new StreamSummary();
+    }
+
+    /**
+     * Accumulates per topic-partition summaries of a streamed event; {@link #add} is called by one thread.
+     */
+    public final class StreamSummary {
+
+        private final Map<String, PartitionSummary> partitions = new LinkedHashMap<>();
+
+        private StreamSummary() {
+        }
+
+        public void add(KafkaEvent.KafkaEventRecord r) {
+            if (mode != Mode.OFF) {
+                partitions.computeIfAbsent(r.getTopic() + "-" + r.getPartition(), tp -> new PartitionSummary()).add(r);
+            }
+        }
+
+        public void logSummary() {
+            if (mode == Mode.OFF || !log.isInfoEnabled()) {
+                return;
+            }
+            int total = 0;
+            for (Map.Entry<String, PartitionSummary> entry : partitions.entrySet()) {
+                entry.getValue().logLine(entry.getKey());
+                total += entry.getValue().records;
+            }
+            log.info("Received streamed event with {} record(s) in {} topic-partition(s).", total, partitions.size());
+        }
+    }
+
+    private final class PartitionSummary {
+        private int records;
+        private long minOffset = Long.MAX_VALUE;
+        private long maxOffset = Long.MIN_VALUE;
+        private long valueChars;
+
+        private void add(KafkaEvent.KafkaEventRecord r) {
+            records++;
+            minOffset = Math.min(minOffset, r.getOffset());
+            maxOffset = Math.max(maxOffset, r.getOffset());
+            valueChars += r.getValue() == null ? 0 : r.getValue().length();
+            if (mode == Mode.SAMPLED && recordsSeen.incrementAndGet() % sampleEvery == 0) {
+                logSample(r);
+            }
+        }
+
+        private void logLine(String topicPartition) {
+            if (records == 0) {
+                log.info("Received topicPartition='{}': 0 records.", topicPartition);
+            } else {
+                log.info("Received topicPartition='{}': {} record(s), offsets {}..{}, {} base64 value chars.",
+                        topicPartition, records, minOffset, maxOffset, valueChars);
+            }
+        }
+    }
+
+    /**
+     * Logs a record with its value cut to its first maxBytes bytes, still base64. Only the base64 prefix that
+     * covers them is decoded.
+     */
+    private void logSample(KafkaEvent.KafkaEventRecord r) {
+        String value = r.getValue() == null ? "" : r.getValue();
+        int padding = value.endsWith("==") ? 2 : value.endsWith("=") ? 1 : 0;
+        int bytes = value.length() / 4 * 3 - padding;
+        String shown = value;
+        if (bytes > maxBytes) {
+            try {
+                byte[] head = Base64.getDecoder().decode(value.substring(0, (maxBytes + 2) / 3 * 4));
+                shown = Base64.getEncoder().encodeToString(Arrays.copyOf(head, maxBytes)) + "...";
+            } catch (IllegalArgumentException e) {
+                shown = value.substring(0, Math.min(value.length(), maxBytes)) + "... (not base64)";
+            }
+        }
+        log.info("Sampled record topic={} partition={} offset={} key={} value({} bytes)={}",
+                r.getTopic(), r.getPartition(), r.getOffset(), r.getKey(), bytes, shown);
+    }
+}
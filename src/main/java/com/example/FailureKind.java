@@ -0,0 +1,17 @@
+package com.example;
+
+/**
+ * Kinds of per-record failure. Only the kinds listed in FATAL_FAILURES fail the whole invocation
+ * (and make the event source redeliver the batch); the others are logged, counted and, for writes, spooled.
+ */
+public enum FailureKind {
+    /**
+     * A record could not be decoded or deserialized. Fatal by default, as the record is not kept anywhere;
+     * redelivery replays the same bad bytes, so a poison record blocks its partition until it is skipped.
+     */
+    PARSE_ERROR,
+    /** A write still failed after its in-invocation retries; its entity is spooled for replay. */
+    WRITE_FAILED,
+    /** Failed writes could not be spooled to local disk, so they would otherwise be lost. */
+    SPOOL_ERROR
+}
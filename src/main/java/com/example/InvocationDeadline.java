@@ -0,0 +1,102 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.Context;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point of an invocation after which no new work starts: the Lambda timeout
+ * ({@link Context#getRemainingTimeInMillis()}) minus a safety margin kept for spilling failed writes,
+ * emitting metrics and returning a report. Parsing stops taking records, the writer stops submitting and
+ * cancels the writes still in flight, so the invocation ends on its own instead of being killed mid-batch.
+ */
+public final class InvocationDeadline {
+
+    private static final InvocationDeadline NONE = new InvocationDeadline(false, 0);
+
+    // Cancels in-flight writes at the deadline; timers of writes that completed first are removed
+    private static final ScheduledThreadPoolExecutor TIMERS = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "invocation-deadline");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        TIMERS.setRemoveOnCancelPolicy(true);
+    }
+
+    private final boolean bounded;
+    private final long cutoffNanos;
+
+    private InvocationDeadline(boolean bounded, long cutoffNanos) {
+        this.bounded = bounded;
+        this.cutoffNanos = cutoffNanos;
+    }
+
+    /**
+     * A deadline that never expires, for callers without a Lambda Context (tests, benchmarks, replays).
+     */
+    public static InvocationDeadline none() {
+        return NONE;
+    }
+
+    /**
+     * A deadline {@code millis} from now; zero or less is already expired.
+     */
+    public static InvocationDeadline after(long millis) {
+        return new InvocationDeadline(true, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis)));
+    }
+
+    /**
+     * @param context         the invocation's Context, or null for no deadline
+     * @param safetyMarginMs time kept between the deadline and the Lambda timeout
+     */
+    public static InvocationDeadline fromContext(Context context, long safetyMarginMs) {
+        return context == null ? NONE : after(context.getRemainingTimeInMillis() - safetyMarginMs);
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    public boolean isExpired() {
+        return bounded && System.nanoTime() - cutoffNanos >= 0;
+    }
+
+    /**
+     * Milliseconds left until the deadline, 0 once expired, Long.MAX_VALUE when unbounded.
+     */
+    public long remainingMillis() {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(cutoffNanos - System.nanoTime()));
+    }
+
+    /**
+     * Cancels {@code future} at the deadline if it has not completed by then.
+     *
+     * @return {@code future}
+     */
+    public <T> CompletableFuture<T> cancelOnExpiry(CompletableFuture<T> future) {
+        if (!bounded || future.isDone()) {
+            return future;
+        }
+        long delay = cutoffNanos - System.nanoTime();
+        if (delay <= 0) {
+            future.cancel(true);
+            return future;
+        }
+        ScheduledFuture<?> timer = TIMERS.schedule(() -> future.cancel(true), delay, TimeUnit.NANOSECONDS);
+        future.whenComplete((v, t) -> timer.cancel(false));
+        return future;
+    }
+
+    @Override
+    public String toString() {
+        return bounded ? "InvocationDeadline(remainingMs=" + remainingMillis() + ")" : "InvocationDeadline(none)";
+    }
+}
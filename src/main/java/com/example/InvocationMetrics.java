@@ -0,0 +1,164 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-invocation stage latencies and counts, emitted at the end of the invocation as one CloudWatch
+ * Embedded Metric Format (EMF) line, so CloudWatch extracts the metrics from the log without an agent.
+ *
+ * Metrics are dimensioned by Model. An EMF line can hold only one value per dimension, so the per
+ * topic-partition breakdown is carried in the same line as a plain "TopicPartitions" property,
+ * queryable with Logs Insights.
+ */
+public class InvocationMetrics {
+
+    // Plain "%msg%n" logger (see logback.xml): CloudWatch only parses the line if it is bare JSON
+    private static final Logger emfLog = LoggerFactory.getLogger("emf");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Key used for stages measured once for the whole invocation rather than per topic-partition. */
+    public static final String ALL_PARTITIONS = "*";
+
+    public enum Stage {
+        /** KafkaEventFlattener.flatten, once per invocation */
+        FLATTEN,
+        /** Dropping records superseded by a newer one of the same key (RecordCoalescer), once per invocation */
+        COALESCE,
+        /** Decoding a record value from its wire format (base64, plus Avro's binary read), per record */
+        DECODE,
+        /** The whole parse of a record value into its model, DECODE included, per record */
+        PARSE,
+        /** Time spent handing a chunk to the writer, including waits for the write window */
+        WRITE_SUBMIT,
+        /** Submit-to-ack latency of each write request */
+        WRITE_ACK
+    }
+
+    public enum Counter {
+        RECORDS, PARSED, PARSE_FAILURES, SUPERSEDED, WRITTEN, WRITE_FAILURES, REPLAYED, SPILLED,
+        /** Failed writes moved to a dead-letter file instead of the spool, after SPOOL_MAX_ATTEMPTS invocations */
+        DEAD_LETTERED,
+        /** Writes skipped by the ChangeDetectionCache because the row content did not change */
+        UNCHANGED,
+        /** ChangeDetectionCache lookups, and how many of them found the row */
+        CHANGE_CACHE_LOOKUPS, CHANGE_CACHE_HITS,
+        /** Records dropped by the StaleVersionGuard because a newer version was already acknowledged */
+        STALE,
+        /** Records left unparsed because the invocation deadline was reached */
+        DEFERRED
+    }
+
+    private final String model;
+    private final long startNanos = System.nanoTime();
+    private final ConcurrentMap<String, Map<Stage, LatencyHistogram>> stagesByPartition = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<Counter, LongAdder>> countersByPartition = new ConcurrentHashMap<>();
+
+    public InvocationMetrics(String model) {
+        this.model = model;
+    }
+
+    /**
+     * Returns the histogram of a stage for a topic-partition. Hot loops should fetch it once and record into it
+     * directly rather than calling {@link #record} per item.
+     */
+    public LatencyHistogram histogram(Stage stage, String topicPartition) {
+        Map<Stage, LatencyHistogram> stages = stagesByPartition.computeIfAbsent(topicPartition,
+                tp -> new ConcurrentHashMap<>());
+        return stages.computeIfAbsent(stage, s -> new LatencyHistogram());
+    }
+
+    public void record(Stage stage, String topicPartition, long nanos) {
+        histogram(stage, topicPartition).recordNanos(nanos);
+    }
+
+    public void add(Counter counter, String topicPartition, long delta) {
+        if (delta != 0) {
+            countersByPartition.computeIfAbsent(topicPartition, tp -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(counter, c -> new LongAdder())
+                    .add(delta);
+        }
+    }
+
+    /**
+     * Writes the EMF line for this invocation.
+     */
+    public void emit(String namespace) {
+        emfLog.info(toEmf(namespace, System.currentTimeMillis()));
+    }
+
+    String toEmf(String namespace, long timestampMillis) {
+        Map<Stage, LatencyHistogram> totals = new EnumMap<>(Stage.class);
+        Map<Counter, Long> counterTotals = new EnumMap<>(Counter.class);
+        ObjectNode partitions = MAPPER.createObjectNode();
+
+        for (Map.Entry<String, Map<Stage, LatencyHistogram>> entry : new TreeMap<>(stagesByPartition).entrySet()) {
+            ObjectNode partition = objectField(partitions, entry.getKey());
+            for (Map.Entry<Stage, LatencyHistogram> stage : entry.getValue().entrySet()) {
+                totals.computeIfAbsent(stage.getKey(), s -> new LatencyHistogram()).mergeFrom(stage.getValue());
+                writeHistogram(partition.putObject(stage.getKey().name()), stage.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<Counter, LongAdder>> entry : new TreeMap<>(countersByPartition).entrySet()) {
+            ObjectNode partition = objectField(partitions, entry.getKey());
+            for (Map.Entry<Counter, LongAdder> counter : entry.getValue().entrySet()) {
+                long value = counter.getValue().sum();
+                counterTotals.merge(counter.getKey(), value, Long::sum);
+                partition.put(counter.getKey().name(), value);
+            }
+        }
+
+        ObjectNode root = MAPPER.createObjectNode();
+        ObjectNode aws = root.putObject("_aws");
+        aws.put("Timestamp", timestampMillis);
+        ObjectNode directive = aws.putArray("CloudWatchMetrics").addObject();
+        directive.put("Namespace", namespace);
+        directive.putArray("Dimensions").addArray().add("Model");
+        ArrayNode metrics = directive.putArray("Metrics");
+
+        root.put("Model", model);
+        for (Map.Entry<Stage, LatencyHistogram> stage : totals.entrySet()) {
+            String name = stage.getKey().name();
+            LatencyHistogram histogram = stage.getValue();
+            addMetric(metrics, root, name + ".p50", histogram.percentileMicros(50) / 1000.0, "Milliseconds");
+            addMetric(metrics, root, name + ".p99", histogram.percentileMicros(99) / 1000.0, "Milliseconds");
+            addMetric(metrics, root, name + ".max", histogram.getMaxMicros() / 1000.0, "Milliseconds");
+            addMetric(metrics, root, name + ".count", histogram.getCount(), "Count");
+        }
+        for (Counter counter : Counter.values()) {
+            addMetric(metrics, root, counter.name(), counterTotals.getOrDefault(counter, 0L), "Count");
+        }
+        addMetric(metrics, root, "INVOCATION", (System.nanoTime() - startNanos) / 1_000_000.0, "Milliseconds");
+        root.set("TopicPartitions", partitions);
+        return root.toString();
+    }
+
+    private static void addMetric(ArrayNode metrics, ObjectNode root, String name, double value, String unit) {
+        metrics.addObject().put("Name", name).put("Unit", unit);
+        root.put(name, value);
+    }
+
+    private static ObjectNode objectField(ObjectNode parent, String name) {
+        JsonNode existing = parent.get(name);
+        return existing instanceof ObjectNode ? (ObjectNode) existing : parent.putObject(name);
+    }
+
+    private static void writeHistogram(ObjectNode node, LatencyHistogram histogram) {
+        node.put("count", histogram.getCount());
+        node.put("p50Ms", histogram.percentileMicros(50) / 1000.0);
+        node.put("p99Ms", histogram.percentileMicros(99) / 1000.0);
+        node.put("maxMs", histogram.getMaxMicros() / 1000.0);
+        node.put("sumMs", histogram.getSumMicros() / 1000.0);
+    }
+}
@@ -1,41 +1,41 @@
 package com.example;
 
-import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
-import com.example.ItemCatalog;
-import lombok.extern.slf4j.Slf4j;
-
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.util.Collections;
 
 /**
  * A parser that:
- * 1. Base64-decodes the Kafka record value.
- * 2. Deserializes Avro bytes -> ItemCatalogDTO (generated class).
+ * 1. Streams the base64 Kafka value into Avro (plain, or Confluent-framed with a schema id).
+ * 2. Deserializes Avro bytes -> ItemCatalogDTO (generated from src/main/avro/ItemCatalogDTO.avsc).
  * 3. Maps fields from ItemCatalogDTO -> ItemCatalog (plain model).
  */
-@Slf4j
-public class ItemCatalogParser implements ParserInterface<ItemCatalog> {
-
-    private final AvroSpecificRecordSerializer serializer;
+public class ItemCatalogParser extends AvroRecordParser<ItemCatalogDTO, ItemCatalog> {
 
     public ItemCatalogParser() {
-        this.serializer = new AvroSpecificRecordSerializer();
+        this(WireFormat.AUTO, AvroSchemaCache.shared());
     }
 
-    @Override
-    public ItemCatalog parseRecord(KafkaEvent.KafkaEventRecord record) throws Exception {
-        // 1) Base64 decode
-        String base64Value = record.getValue();
-        if (base64Value == null || base64Value.isEmpty()) {
-            log.warn("Empty record value. offset={}, partition={}", record.getOffset(), record.getPartition());
-            return null;
-        }
-        byte[] avroBytes = Base64.getDecoder().decode(base64Value.getBytes(StandardCharsets.UTF_8));
+    ItemCatalogParser(WireFormat wireFormat, AvroSchemaCache schemas) {
+        super(ItemCatalogDTO.class, ItemCatalog.class, wireFormat, schemas);
+    }
 
-        // 2) Deserialize Avro -> ItemCatalogDTO
-        ItemCatalogDTO dto = serializer.deserialize(avroBytes, ItemCatalogDTO.class);
+    @Override
+    protected ItemCatalogDTO primingDto() {
+        return ItemCatalogDTO.newBuilder()
+                .setItemId(1L)
+                .setSequence(1L)
+                .setProductId(1L)
+                .setDivisionType("FOOD")
+                .setName(Collections.singletonMap("ko_KR", "item"))
+                .setReconciledAttributes(Collections.singletonMap("attribute",
+                        Collections.singletonMap("ko_KR", Collections.singletonMap("value", "1"))))
+                .setValid(true)
+                .setCreatedAt(0L)
+                .setMainImage("")
+                .build();
+    }
 
-        // 3) Convert Avro DTO -> ItemCatalog
+    @Override
+    protected ItemCatalog toModel(ItemCatalogDTO dto) {
         ItemCatalog model = new ItemCatalog();
         model.setItemId(dto.getItemId());
         model.setVersion(dto.getSequence());
@@ -47,12 +47,6 @@ public class ItemCatalogParser implements ParserInterface<ItemCatalog> {
         model.setCreatedAt(dto.getCreatedAt());
         model.setSequence(dto.getSequence());
         model.setMainImage(dto.getMainImage());
-
         return model;
     }
-
-    @Override
-    public Class<ItemCatalog> getModelClass() {
-        return ItemCatalog.class;
-    }
 }
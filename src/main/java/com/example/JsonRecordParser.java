@@ -0,0 +1,138 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base class for parsers whose Kafka value is base64-encoded JSON.
+ *
+ * The value is decoded from the record's base64 String into the thread's DecodeBuffer and read in place by a
+ * cached ObjectReader for the model class, so no per-record byte[], JSON String or stream is allocated and
+ * Jackson parses from an array rather than through an InputStream. The Blackbird module replaces Jackson's
+ * reflective setter and constructor calls with generated lambdas.
+ *
+ * The constructor fails fast when the model class is not a valid model (see ModelMetadata), when Jackson
+ * cannot instantiate it, or when its @PartitionKey or @VersionKey field is not a JSON property.
+ */
+@Slf4j
+public abstract class JsonRecordParser<T> implements ParserInterface<T> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new BlackbirdModule());
+
+    private final Class<T> modelClass;
+    private final ObjectReader reader;
+
+    protected JsonRecordParser(Class<T> modelClass) {
+        this.modelClass = modelClass;
+        this.reader = MAPPER.readerFor(modelClass);
+        validate(modelClass, reader);
+    }
+
+    private static void validate(Class<?> modelClass, ObjectReader reader) {
+        ModelMetadata metadata = ModelMetadata.of(modelClass);
+        DeserializationConfig config = MAPPER.getDeserializationConfig();
+        BeanDescription bean = config.introspect(config.constructType(modelClass));
+        for (ModelMetadata.Column key : new ModelMetadata.Column[]{metadata.getPartitionKey(), metadata.getVersion()}) {
+            boolean mapped = false;
+            for (BeanPropertyDefinition property : bean.findProperties()) {
+                if (property.getInternalName().equals(key.getName()) && property.couldDeserialize()) {
+                    mapped = true;
+                    break;
+                }
+            }
+            if (!mapped) {
+                throw new IllegalArgumentException("Field " + key.getName() + " of " + modelClass.getName()
+                        + " is not a deserializable JSON property");
+            }
+        }
+        try {
+            // Builds the deserializer now rather than on the first record
+            reader.readValue("{}");
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Jackson cannot deserialize " + modelClass.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public T parseRecord(KafkaEvent.KafkaEventRecord record) throws Exception {
+        return parseRecord(record, null);
+    }
+
+    /**
+     * Records the base64 decoding of the value as its decode time; reading the JSON is parsing.
+     */
+    @Override
+    public T parseRecord(KafkaEvent.KafkaEventRecord record, LatencyHistogram decodeLatency) throws Exception {
+        // 1) Decode base64 key, only to log it
+        String keyB64 = record.getKey();
+        if (log.isDebugEnabled() && keyB64 != null && !keyB64.isEmpty()) {
+            log.debug("Decoded key: {}", new String(Base64.getDecoder().decode(keyB64), StandardCharsets.UTF_8));
+        }
+
+        // 2) Decode base64 value into the thread's buffer -> JSON -> model
+        String valueB64 = record.getValue();
+        if (valueB64 == null || valueB64.isEmpty()) {
+            log.warn("Empty record value. offset={}, partition={}", record.getOffset(), record.getPartition());
+            return null;
+        }
+        return decode(valueB64, decodeLatency);
+    }
+
+    /**
+     * Decodes a base64-encoded JSON document into the model class.
+     */
+    protected T decode(String base64Json) throws IOException {
+        return decode(base64Json, null);
+    }
+
+    private T decode(String base64Json, LatencyHistogram decodeLatency) throws IOException {
+        long start = decodeLatency == null ? 0 : System.nanoTime();
+        DecodeBuffer json = DecodeBuffer.decode(base64Json);
+        if (decodeLatency != null) {
+            decodeLatency.recordNanos(System.nanoTime() - start);
+        }
+        return reader.readValue(json.array(), 0, json.length());
+    }
+
+    @Override
+    public Class<T> getModelClass() {
+        return modelClass;
+    }
+
+    /**
+     * A document holding only the @PartitionKey and @VersionKey properties.
+     */
+    @Override
+    public List<KafkaEvent.KafkaEventRecord> primingRecords() {
+        ModelMetadata metadata = ModelMetadata.of(modelClass);
+        DeserializationConfig config = MAPPER.getDeserializationConfig();
+        BeanDescription bean = config.introspect(config.constructType(modelClass));
+        ObjectNode document = MAPPER.createObjectNode();
+        for (ModelMetadata.Column key : new ModelMetadata.Column[]{metadata.getPartitionKey(), metadata.getVersion()}) {
+            for (BeanPropertyDefinition property : bean.findProperties()) {
+                if (property.getInternalName().equals(key.getName())) {
+                    if (key.getType() == String.class) {
+                        document.put(property.getName(), "1");
+                    } else {
+                        document.put(property.getName(), 1);
+                    }
+                }
+            }
+        }
+        String value = Base64.getEncoder().encodeToString(document.toString().getBytes(StandardCharsets.UTF_8));
+        return Collections.singletonList(SnapStartPriming.syntheticRecord(value));
+    }
+}
@@ -0,0 +1,59 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Reads the JSON of a Lambda Kafka event with Jackson's streaming parser and hands over each record as soon as
+ * it has been read, so only one record is held at a time instead of the whole KafkaEvent.
+ */
+public final class KafkaEventStreamReader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader RECORD_READER = MAPPER.readerFor(KafkaEvent.KafkaEventRecord.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private KafkaEventStreamReader() {
+    }
+
+    /**
+     * Reads {"records": {"topic-partition": [record, ...], ...}, ...}; every other top-level field is skipped.
+     *
+     * @return the number of records read
+     */
+    public static int read(InputStream in, Consumer<KafkaEvent.KafkaEventRecord> consumer) throws IOException {
+        int count = 0;
+        try (JsonParser parser = MAPPER.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Kafka event is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (!"records".equals(field) || value != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    if (parser.nextToken() != JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        consumer.accept(RECORD_READER.readValue(parser));
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
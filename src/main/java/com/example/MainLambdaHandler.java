@@ -3,97 +3,358 @@ package com.example;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
-import com.datastax.driver.mapping.MappingManager;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 @Slf4j
 public class MainLambdaHandler implements RequestHandler<KafkaEvent, String> {
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // Bypasses the async appender, see logback.xml: the summary must survive the freeze after the handler returns
+    private static final Logger summaryLog = LoggerFactory.getLogger("summary");
 
     // ✅ Counters for tracking execution results
     private final AtomicInteger totalRecords = new AtomicInteger();
     private final AtomicInteger successfulWrites = new AtomicInteger();
-    private final AtomicInteger conditionalCheckFailedCount = new AtomicInteger();
     private final AtomicInteger otherFailedWrites = new AtomicInteger();
+    private final AtomicInteger supersededRecords = new AtomicInteger();
+    private final AtomicInteger replayedRecords = new AtomicInteger();
+    private final AtomicInteger spilledRecords = new AtomicInteger();
+    private final AtomicInteger deadLetteredRecords = new AtomicInteger();
+    private final AtomicInteger unchangedRecords = new AtomicInteger();
+    private final AtomicInteger staleRecords = new AtomicInteger();
+    private final AtomicInteger deferredRecords = new AtomicInteger();
+
+    // Container-scoped: the Lambda runtime reuses this handler instance across warm invocations
+    private final CassandraClientProvider cassandraClientProvider;
+    private final Supplier<EnvironmentConfig> configSource;
+    private RecordPipeline pipeline;
+    private EventLogger eventLogger;
+
+    public MainLambdaHandler() {
+        this(CassandraClientProvider.shared(), EnvironmentConfig::loadFromSystemEnv);
+        SnapStartPriming.register(cassandraClientProvider, configSource);
+    }
+
+    MainLambdaHandler(CassandraClientProvider cassandraClientProvider) {
+        this(cassandraClientProvider, EnvironmentConfig::loadFromSystemEnv);
+    }
+
+    /**
+     * @param configSource loads the configuration at the start of every invocation
+     */
+    MainLambdaHandler(CassandraClientProvider cassandraClientProvider, Supplier<EnvironmentConfig> configSource) {
+        this.cassandraClientProvider = cassandraClientProvider;
+        this.configSource = configSource;
+    }
 
     @Override
     public String handleRequest(KafkaEvent event, Context context) {
-        // ✅ Reset counters for the new invocation
-        totalRecords.set(0);
-        successfulWrites.set(0);
-        conditionalCheckFailedCount.set(0);
-        otherFailedWrites.set(0);
-
         if (event == null) {
             String message = "No event data";
             log.warn(message);
             return message;
         }
 
-        try {
-            String jsonEvent = objectMapper.writeValueAsString(event);
-            log.info("Received Lambda Event:\n" + jsonEvent + "\n");
-        } catch (Exception e) {
-            String message = "Failed to serialize event to JSON: " + e.getMessage();
-            log.error(message);
-            throw new RuntimeException(message);
-        }
-
         // 1) Load config from environment
-        EnvironmentConfig config = EnvironmentConfig.loadFromSystemEnv();
+        EnvironmentConfig config = configSource.get();
         log.info("Loaded environment: {}", config);
+        eventLogger(config).log(event);
+        InvocationDeadline deadline = InvocationDeadline.fromContext(context, config.getDeadlineSafetyMarginMs());
 
-        // 2) Flatten the Kafka event
-        List<KafkaEvent.KafkaEventRecord> records = KafkaEventFlattener.flatten(event);
-        log.info("Flattened {} record(s).", records.size());
+        return process(config, deadline, (pipeline, routes, metrics) -> {
+            // 3) Flatten the Kafka event
+            long start = System.nanoTime();
+            List<KafkaEvent.KafkaEventRecord> records = KafkaEventFlattener.flatten(event);
+            metrics.record(InvocationMetrics.Stage.FLATTEN, InvocationMetrics.ALL_PARTITIONS, System.nanoTime() - start);
+            log.info("Flattened {} record(s).", records.size());
 
-        // 3) Create the parser via factory
-        ParserInterface<?> parser = ParserFactory.createParser(config.getParserName());
-        log.info("Using parser: {}", config.getParserName());
-
-        // 4) Create the DynamoDB async client + writer
-        CassandraClientProvider cassandraClientProvider = new CassandraClientProvider();
-        MappingManager manager = cassandraClientProvider.getMapperManager();
-        AsyncCassandraWriter writer = new AsyncCassandraWriter(manager, parser.getModelClass());
-        List<Object> models = new ArrayList<>();
-        // 5) For each record, parse + prepare writes
-        for (KafkaEvent.KafkaEventRecord r : records) {
-            try {
-                // parse
-                Object modelObj = parser.parseRecord(r);
-                if (modelObj != null) {
-                    log.debug("Parsed model: {}", modelObj);
-                    totalRecords.incrementAndGet();
-                    models.add(modelObj);
+            // 3a) Drop records superseded by a newer record with the same key before decoding them
+            start = System.nanoTime();
+            RecordCoalescer.CoalescedBatch coalesced = RecordCoalescer.coalesce(records,
+                    config.getWriteEngine() == WriteEngine.Kind.MAPPER);
+            metrics.record(InvocationMetrics.Stage.COALESCE, InvocationMetrics.ALL_PARTITIONS, System.nanoTime() - start);
+            log.info("Coalesced {} record(s) into {}.", records.size(), coalesced.getRecords().size());
+            for (TopicRoutes.Route route : routes.all()) {
+                if (route.getWriter() != null && route.getWriter().getChangeCache() != null) {
+                    route.getWriter().getChangeCache().observeOffsets(records);
                 }
-            } catch (Exception e) {
-                log.error("Error parsing record offset={} partition={}: {}",
-                        r.getOffset(), r.getPartition(), e.getMessage(), e);
-                otherFailedWrites.incrementAndGet();
             }
+
+            RecordPipeline.Result result = pipeline.run(coalesced, RecordPipeline.Invocation.builder()
+                    .routes(routes)
+                    .metrics(metrics)
+                    .deadline(deadline)
+                    .build());
+            // Held and contested records are only dropped while parsing
+            supersededRecords.set(coalesced.getDroppedCount());
+            return result;
+        });
+    }
+
+    /**
+     * Feeds the invocation's records into the pipeline; lets handlers differ only in how they read their input.
+     */
+    @FunctionalInterface
+    interface RecordSource {
+        /**
+         * @param routes the parser and writer of every topic; writers are null on a dry run
+         */
+        RecordPipeline.Result run(RecordPipeline pipeline, TopicRoutes routes, InvocationMetrics metrics)
+                throws IOException;
+    }
+
+    EventLogger eventLogger(EnvironmentConfig config) {
+        if (eventLogger == null || !eventLogger.matches(config)) {
+            eventLogger = EventLogger.fromConfig(config);
+        }
+        return eventLogger;
+    }
+
+    /**
+     * Runs one invocation around {@code source}: spool replay, parsing and writing, spilling, the summary
+     * and metrics, and the FATAL_FAILURES checks.
+     *
+     * @param deadline bounds the replay and the writes; {@code source} must bound its parsing with it too.
+     *                 Writes cut off by it are spilled like failed ones; records it left unparsed fail the
+     *                 invocation after the report, so that the batch is redelivered.
+     */
+    String process(EnvironmentConfig config, InvocationDeadline deadline, RecordSource source) {
+        // ✅ Reset counters for the new invocation
+        totalRecords.set(0);
+        successfulWrites.set(0);
+        otherFailedWrites.set(0);
+        supersededRecords.set(0);
+        replayedRecords.set(0);
+        spilledRecords.set(0);
+        deadLetteredRecords.set(0);
+        unchangedRecords.set(0);
+        staleRecords.set(0);
+        deferredRecords.set(0);
+
+        // 2) Create the parser of every topic via factory, and 4) reuse the warm Cassandra session + writer
+        //    of every model
+        AvroSchemaCache.shared().requireAll(config.getAvroSchemaIds());
+        TopicRoutes routes = routes(config);
+        log.info("Using topic routes: {}", routes);
+        InvocationMetrics metrics = new InvocationMetrics(routes.modelName());
+
+        // 1a) Replay writes spooled by a previous invocation in this container
+        WriteSpool spool = WriteSpool.fromConfig(config);
+        Map<RouteKey, List<Object>> failedWrites = new LinkedHashMap<>();
+        WriteSpool.Pending replayed = config.isDryRun() ? null
+                : replaySpool(spool, config, routes, failedWrites, deadline);
+
+        if (pipeline == null) {
+            pipeline = RecordPipeline.fromConfig(config);
         }
 
-        // 6) If not DRY_RUN, do asynchronous writes with concurrency checks
-        if (!config.isDryRun()) {
-            writer.executeAsyncWrites(models);
-        } else {
+        // 5) Parse each topic-partition in parallel, writing entities as soon as they are decoded (unless DRY_RUN)
+        if (config.isDryRun()) {
             log.info("DRY_RUN=true, skipping Cassandra writes.");
         }
+        RecordPipeline.Result result;
+        try {
+            result = source.run(pipeline, config.isDryRun() ? routes.withoutWriters() : routes, metrics);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the Kafka event", e);
+        }
+        totalRecords.set(result.getParsed());
+        successfulWrites.addAndGet(result.getWritten());
+        otherFailedWrites.set(result.getParseFailures() + result.getWriteFailures());
+        // Coalescing drops are counted for the whole invocation, the cache's per topic-partition by the pipeline
+        int coalescedAway = supersededRecords.getAndAdd(result.getSuperseded());
+        unchangedRecords.set(result.getUnchanged());
+        staleRecords.set(result.getStale());
+        deferredRecords.set(result.getDeferred());
+        result.getFailedWrites().forEach((key, entities) ->
+                failedWrites.computeIfAbsent(key, k -> new ArrayList<>()).addAll(entities));
+        int failedCount = 0;
+        for (List<Object> entities : failedWrites.values()) {
+            failedCount += entities.size();
+        }
 
-        log.info("\nLambda Execution Summary:\n");
-        log.info("  - Total Records Processed: " + totalRecords.get() + "\n");
-        log.info("  - Successfully Written Records: " + successfulWrites.get() + "\n");
-        log.info("  - ConditionalCheckFailedException Records: " + conditionalCheckFailedCount.get() + "\n");
-        log.info("  - Other Failed Records: " + otherFailedWrites.get() + "\n");
-        if (otherFailedWrites.get() > 0) {
-            throw new RuntimeException("Failed to process some records");
+        // 6) Spill writes that failed after retries instead of failing the whole batch
+        boolean spoolFailed = false;
+        try {
+            int deadLettered = spool.spill(failedWrites, replayed, unreplayable(failedWrites, routes, config));
+            spilledRecords.set(failedCount - deadLettered);
+            deadLetteredRecords.set(deadLettered);
+        } catch (IOException e) {
+            log.error("Failed to spool {} failed write(s): {}", failedCount, e.getMessage(), e);
+            spoolFailed = true;
+        }
+        // Replayed files go only once whatever failed again is safely in a new file
+        if (replayed != null && !spoolFailed) {
+            try {
+                replayed.delete();
+            } catch (IOException e) {
+                log.warn("Failed to delete replayed spool files: {}", e.getMessage(), e);
+            }
+        }
+        if (failedCount == 0 && !spoolFailed) {
+            for (TopicRoutes.Route route : routes.all()) {
+                ChangeDetectionCache changeCache = route.getWriter().getChangeCache();
+                if (changeCache != null && changeCache.isSkipsSuspended()) {
+                    resumeSkipsIfSpoolDrained(spool, changeCache);
+                }
+            }
+        }
+
+        summaryLog.info("Lambda Execution Summary: processed={}, superseded={}, stale={}, unchanged={}, replayed={}, written={}, failed={}, spilled={}, deadLettered={}, deferred={}, window={}, lanes={}",
+                totalRecords.get(), supersededRecords.get(), staleRecords.get(), unchangedRecords.get(), replayedRecords.get(),
+                successfulWrites.get(), otherFailedWrites.get(), spilledRecords.get(), deadLetteredRecords.get(), deferredRecords.get(),
+                windowStats(routes), laneStats(routes));
+        if (deadline.isExpired()) {
+            log.warn("Invocation deadline reached: {} record(s) parsed, {} written, {} spilled for replay, {} deferred to redelivery.",
+                    totalRecords.get(), successfulWrites.get(), spilledRecords.get(), deferredRecords.get());
+        }
+
+        metrics.add(InvocationMetrics.Counter.SUPERSEDED, InvocationMetrics.ALL_PARTITIONS, coalescedAway);
+        metrics.add(InvocationMetrics.Counter.REPLAYED, InvocationMetrics.ALL_PARTITIONS, replayedRecords.get());
+        metrics.add(InvocationMetrics.Counter.SPILLED, InvocationMetrics.ALL_PARTITIONS, spilledRecords.get());
+        metrics.add(InvocationMetrics.Counter.DEAD_LETTERED, InvocationMetrics.ALL_PARTITIONS, deadLetteredRecords.get());
+        if (config.isMetricsEnabled()) {
+            metrics.emit(config.getMetricsNamespace());
+        }
+
+        // Unparsed records exist nowhere but in this batch: only a redelivery can process them
+        if (deferredRecords.get() > 0) {
+            throw new RuntimeException("Deadline reached with " + deferredRecords.get()
+                    + " record(s) not processed, failing the invocation so the batch is redelivered");
+        }
+        Set<FailureKind> fatal = config.getFatalFailures();
+        if (fatal.contains(FailureKind.PARSE_ERROR) && result.getParseFailures() > 0) {
+            throw new RuntimeException("Failed to parse " + result.getParseFailures() + " record(s)");
+        }
+        if (fatal.contains(FailureKind.WRITE_FAILED) && failedCount > 0) {
+            throw new RuntimeException("Failed to write " + failedCount + " record(s)");
+        }
+        if (fatal.contains(FailureKind.SPOOL_ERROR) && spoolFailed) {
+            throw new RuntimeException("Failed to spool " + failedCount + " failed write(s)");
         }
         return "completed";
     }
+
+    /**
+     * Builds the route of every TOPIC_ROUTES topic, plus the default PARSER route when PARSER is set.
+     */
+    private TopicRoutes routes(EnvironmentConfig config) {
+        Map<String, TopicRoutes.Route> byTopic = new LinkedHashMap<>();
+        config.getTopicRoutes().forEach((topic, route) -> byTopic.put(topic, route(config.forRoute(route))));
+        boolean hasDefault = config.getParserName() != null && !config.getParserName().isEmpty();
+        // Without any route, let ParserFactory report the missing PARSER
+        return new TopicRoutes(byTopic, hasDefault || byTopic.isEmpty() ? route(config) : null);
+    }
+
+    private TopicRoutes.Route route(EnvironmentConfig config) {
+        ParserInterface<?> parser = ParserFactory.createParser(config.getParserName());
+        return new TopicRoutes.Route(parser, cassandraClientProvider.writerFor(parser.getModelClass(), config),
+                config.getCassandraTableName());
+    }
+
+    private static Object windowStats(TopicRoutes routes) {
+        List<TopicRoutes.Route> all = routes.all();
+        if (all.size() == 1) {
+            return all.get(0).getWriter().getWindowStats();
+        }
+        Map<String, AdaptiveWriteWindow.Stats> stats = new LinkedHashMap<>();
+        for (TopicRoutes.Route route : all) {
+            stats.put(route.getKey().toString(), route.getWriter().getWindowStats());
+        }
+        return stats;
+    }
+
+    private static Object laneStats(TopicRoutes routes) {
+        List<TopicRoutes.Route> all = routes.all();
+        if (all.size() == 1) {
+            return all.get(0).getWriter().getLaneStats();
+        }
+        Map<String, WriteLanes.Stats> stats = new LinkedHashMap<>();
+        for (TopicRoutes.Route route : all) {
+            stats.put(route.getKey().toString(), route.getWriter().getLaneStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Lets the change detection cache skip again once no failed write is left that a replay could apply
+     * over a skipped version.
+     */
+    private static void resumeSkipsIfSpoolDrained(WriteSpool spool, ChangeDetectionCache changeCache) {
+        try {
+            if (spool.pending().isEmpty()) {
+                changeCache.resumeSkips();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read write spool, change detection skips stay suspended: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the entities spooled by earlier invocations, each with the writer of the model and table it was
+     * spooled from. Entities that fail again are added to {@code failedWrites} to be spilled with this
+     * invocation's failures.
+     *
+     * @return the replayed spool files, to delete once the new spill succeeded; null if there were none
+     */
+    private WriteSpool.Pending replaySpool(WriteSpool spool, EnvironmentConfig config, TopicRoutes routes,
+                                           Map<RouteKey, List<Object>> failedWrites, InvocationDeadline deadline) {
+        WriteSpool.Pending pending;
+        try {
+            pending = spool.pending();
+        } catch (IOException e) {
+            log.error("Failed to read write spool: {}", e.getMessage(), e);
+            return null;
+        }
+        if (pending.isEmpty()) {
+            return null;
+        }
+        log.info("Replaying {} spooled write(s).", pending.size());
+        for (Map.Entry<RouteKey, List<Object>> entry : pending.getEntitiesByRoute().entrySet()) {
+            RouteKey key = entry.getKey();
+            AsyncCassandraWriter writer = writerFor(key, routes, config);
+            List<Object> failed = writer.writeAsync(entry.getValue(), null, deadline).join();
+            replayedRecords.addAndGet(entry.getValue().size());
+            successfulWrites.addAndGet(entry.getValue().size() - failed.size());
+            if (!failed.isEmpty()) {
+                failedWrites.computeIfAbsent(key, k -> new ArrayList<>()).addAll(failed);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * The writer of the route writing to the key's table. A key no longer routed is still written to the table
+     * it was spooled from.
+     */
+    private AsyncCassandraWriter writerFor(RouteKey key, TopicRoutes routes, EnvironmentConfig config) {
+        AsyncCassandraWriter writer = routes.writerFor(key);
+        return writer != null ? writer : cassandraClientProvider.writerFor(key.getModelClass(),
+                config.toBuilder().cassandraTableName(key.getTable()).build());
+    }
+
+    /**
+     * The failed writes, by identity, that may have been applied and must be dead-lettered rather than replayed.
+     */
+    private Set<Object> unreplayable(Map<RouteKey, List<Object>> failedWrites, TopicRoutes routes,
+                                     EnvironmentConfig config) {
+        Set<Object> unreplayable = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (RouteKey key : failedWrites.keySet()) {
+            unreplayable.addAll(writerFor(key, routes, config).takeUnreplayable());
+        }
+        return unreplayable;
+    }
 }
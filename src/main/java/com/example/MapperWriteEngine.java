@@ -0,0 +1,28 @@
+package com.example;
+
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.mapping.Mapper;
+import com.datastax.driver.mapping.Mapper.Option;
+import com.datastax.driver.mapping.MappingManager;
+
+/**
+ * Builds save statements with the driver's object Mapper. Every mapped column is written, nulls included, so
+ * statements are idempotent only for models without a non-frozen list column (ModelMetadata#isIdempotent).
+ */
+public class MapperWriteEngine implements WriteEngine {
+
+    private final Mapper<Object> mapper;
+    private final boolean idempotent;
+
+    @SuppressWarnings("unchecked")
+    public MapperWriteEngine(MappingManager manager, Class<?> modelClass) {
+        // Cast modelClass to Class<Object> to avoid "raw type" warnings:
+        this.mapper = manager.mapper((Class<Object>) modelClass);
+        this.idempotent = ModelMetadata.of(modelClass).isIdempotent();
+    }
+
+    @Override
+    public Statement statementFor(Object entity, long timestamp) {
+        return mapper.saveQuery(entity, Option.timestamp(timestamp)).setIdempotent(idempotent);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example;
+
+/**
+ * Parses base64-encoded JSON Kafka values into any model class, so a JSON topic needs only its model:
+ * set PARSER to the model's class name and ParserFactory builds one of these.
+ */
+public final class ModelJsonParser<T> extends JsonRecordParser<T> {
+
+    public ModelJsonParser(Class<T> modelClass) {
+        super(modelClass);
+    }
+}
@@ -0,0 +1,337 @@
+package com.example;
+
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.mapping.DefaultNamingStrategy;
+import com.datastax.driver.mapping.NamingConventions;
+import com.datastax.driver.mapping.NamingStrategy;
+import com.datastax.driver.mapping.annotations.Frozen;
+import com.datastax.driver.mapping.annotations.Transient;
+import com.example.annotations.Encoded;
+import com.example.annotations.PartitionKey;
+import com.example.annotations.VersionKey;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Validated, cached description of a model class: its @PartitionKey, its @VersionKey and its column fields.
+ *
+ * Each model class is inspected once per container. Columns are read through accessors generated with
+ * LambdaMetafactory from the model's getters (falling back to a field MethodHandle when there is no getter),
+ * so the per-entity path involves no reflection and no access checks. Column names follow the driver's Mapper,
+ * so both write engines write a field to the same Cassandra column.
+ */
+@Slf4j
+public final class ModelMetadata {
+
+    private static final ConcurrentMap<Class<?>, ModelMetadata> REGISTRY = new ConcurrentHashMap<>();
+    // The Mapper's default: MappingManager without a custom PropertyMapper
+    private static final NamingStrategy NAMING =
+            new DefaultNamingStrategy(NamingConventions.LOWER_CAMEL_CASE, NamingConventions.LOWER_CASE);
+
+    private final Class<?> modelClass;
+    private final Column partitionKey;
+    private final Column version;
+    private final List<Column> columns;
+    private final boolean idempotent;
+
+    private ModelMetadata(Class<?> modelClass, Column partitionKey, Column version, List<Column> columns) {
+        this.modelClass = modelClass;
+        this.partitionKey = partitionKey;
+        this.version = version;
+        this.columns = columns;
+        this.idempotent = columns.stream().noneMatch(Column::isNonFrozenList);
+    }
+
+    /**
+     * Returns the metadata of the model class, validating and building it on first use.
+     *
+     * @throws IllegalArgumentException if the class is not a valid model
+     */
+    public static ModelMetadata of(Class<?> modelClass) {
+        ModelMetadata metadata = REGISTRY.get(modelClass);
+        if (metadata == null) {
+            metadata = REGISTRY.computeIfAbsent(modelClass, ModelMetadata::inspect);
+        }
+        return metadata;
+    }
+
+    public Class<?> getModelClass() {
+        return modelClass;
+    }
+
+    public Column getPartitionKey() {
+        return partitionKey;
+    }
+
+    public Column getVersion() {
+        return version;
+    }
+
+    /**
+     * All column fields in declaration order, including the partition key and the version.
+     */
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Whether writing an entity of this model twice leaves the same cells, so the driver may retry or
+     * speculatively resend the write. Not the case with a non-frozen list column: its elements are stored
+     * under cell names the coordinator generates, so a resent INSERT appends them again.
+     */
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
+    public Object partitionKeyOf(Object entity) {
+        return partitionKey.get(entity);
+    }
+
+    /**
+     * Reads the @VersionKey value of an entity of this model class.
+     */
+    public long versionOf(Object entity) {
+        Object value = version.get(entity);
+        if (value == null) {
+            throw new IllegalArgumentException("@VersionKey field " + version.getName() + " is null on entity " + entity);
+        }
+        return (Long) value;
+    }
+
+    /**
+     * Whether writing {@code newer} sets every cell writing {@code older} would, i.e. no column non-null in
+     * {@code older} is null in {@code newer}. Only then may older be dropped when the write engine skips nulls.
+     */
+    public boolean covers(Object newer, Object older) {
+        for (Column column : columns) {
+            if (column.get(older) != null && column.get(newer) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ModelMetadata inspect(Class<?> modelClass) {
+        MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(modelClass, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Model class is not accessible: " + modelClass.getName(), e);
+        }
+        try {
+            modelClass.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Model class has no no-arg constructor: " + modelClass.getName(), e);
+        }
+
+        Column partitionKey = null;
+        Column version = null;
+        List<Column> columns = new ArrayList<>();
+        for (Field field : modelClass.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                    || field.isAnnotationPresent(Transient.class)) {
+                continue;
+            }
+            Encoded encoded = field.getAnnotation(Encoded.class);
+            Column column = new Column(field.getName(), cqlName(field), field.getType(), columns.size(),
+                    accessor(lookup, modelClass, field),
+                    encoded == null ? null : new BlobColumnCodec<>(field.getGenericType(), encoded.value()),
+                    encoded == null && List.class.isAssignableFrom(field.getType())
+                            && !field.isAnnotationPresent(Frozen.class));
+            columns.add(column);
+            if (field.isAnnotationPresent(PartitionKey.class)) {
+                if (partitionKey != null) {
+                    throw new IllegalArgumentException("Multiple @PartitionKey fields in " + modelClass.getName());
+                }
+                partitionKey = column;
+            }
+            if (field.isAnnotationPresent(VersionKey.class)) {
+                if (version != null) {
+                    throw new IllegalArgumentException("Multiple @VersionKey fields in " + modelClass.getName());
+                }
+                if (field.getType() != Long.class && field.getType() != long.class) {
+                    throw new IllegalArgumentException("@VersionKey field " + field.getName() + " in "
+                            + modelClass.getName() + " must be a long, was " + field.getType().getName());
+                }
+                version = column;
+            }
+        }
+        if (partitionKey == null) {
+            throw new IllegalArgumentException("No @PartitionKey field found in " + modelClass.getName());
+        }
+        if (version == null) {
+            throw new IllegalArgumentException("No @VersionKey field found in " + modelClass.getName());
+        }
+
+        log.info("ModelMetadata registered for model={}, partitionKey={}, version={}, columns={}",
+                modelClass.getSimpleName(), partitionKey.getName(), version.getName(), columns.size());
+        return new ModelMetadata(modelClass, partitionKey, version, Collections.unmodifiableList(columns));
+    }
+
+    /**
+     * The column the Mapper writes the field to, as a CQL identifier: the name of its @Column, lower-cased unless
+     * caseSensitive, or else the field name through the Mapper's default naming strategy (storeId -> storeid).
+     * Quoted when it is case-sensitive or a reserved word.
+     */
+    private static String cqlName(Field field) {
+        com.datastax.driver.mapping.annotations.Column column =
+                field.getAnnotation(com.datastax.driver.mapping.annotations.Column.class);
+        if (column != null && !column.name().isEmpty()) {
+            return column.caseSensitive()
+                    ? Metadata.quote(column.name())
+                    : Metadata.quoteIfNecessary(column.name().toLowerCase());
+        }
+        return Metadata.quoteIfNecessary(NAMING.toCassandraName(field.getName()));
+    }
+
+    /**
+     * Builds a Function bound to the field's getter via LambdaMetafactory, or a MethodHandle-backed
+     * Function when the model has no getter for the field.
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> accessor(MethodHandles.Lookup lookup, Class<?> modelClass, Field field) {
+        try {
+            Method getter = findGetter(modelClass, field);
+            if (getter != null) {
+                MethodHandle handle = lookup.unreflect(getter);
+                CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                        MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class),
+                        handle,
+                        handle.type().wrap());
+                return (Function<Object, Object>) site.getTarget().invokeExact();
+            }
+            MethodHandle handle = lookup.unreflectGetter(field)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            return entity -> {
+                try {
+                    return handle.invokeExact(entity);
+                } catch (Throwable t) {
+                    throw new IllegalStateException("Failed to read field " + field.getName() + " on entity " + entity, t);
+                }
+            };
+        } catch (Throwable t) {
+            throw new IllegalArgumentException("Cannot build accessor for " + modelClass.getName() + "." + field.getName(), t);
+        }
+    }
+
+    private static Method findGetter(Class<?> modelClass, Field field) {
+        String suffix = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+        for (String name : new String[]{"get" + suffix, "is" + suffix}) {
+            try {
+                Method method = modelClass.getDeclaredMethod(name);
+                if (method.getReturnType() == field.getType()) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignored) {
+                // try the next naming convention
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Driver codecs of the model's @Encoded columns.
+     */
+    public List<BlobColumnCodec<?>> getCodecs() {
+        List<BlobColumnCodec<?>> codecs = new ArrayList<>();
+        for (Column column : columns) {
+            if (column.getCodec() != null) {
+                codecs.add(column.getCodec());
+            }
+        }
+        return codecs;
+    }
+
+    /**
+     * A column field of a model class with its generated accessor.
+     */
+    public static final class Column {
+
+        private final String name;
+        private final String cqlName;
+        private final Class<?> type;
+        private final int index;
+        private final Function<Object, Object> accessor;
+        private final BlobColumnCodec<?> codec;
+        private final boolean nonFrozenList;
+
+        Column(String name, String cqlName, Class<?> type, int index, Function<Object, Object> accessor,
+               BlobColumnCodec<?> codec, boolean nonFrozenList) {
+            this.name = name;
+            this.cqlName = cqlName;
+            this.type = type;
+            this.index = index;
+            this.accessor = accessor;
+            this.codec = codec;
+            this.nonFrozenList = nonFrozenList;
+        }
+
+        /**
+         * The Java field name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The Cassandra column, quoted where CQL needs it: {@code storeid} for an unannotated storeId, as the
+         * Mapper writes it.
+         */
+        public String getCqlName() {
+            return cqlName;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        /**
+         * Position of this column in {@link ModelMetadata#getColumns()}.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public Object get(Object entity) {
+            return accessor.apply(entity);
+        }
+
+        /**
+         * The codec of an @Encoded column, or null if the column is stored as its CQL type.
+         */
+        public BlobColumnCodec<?> getCodec() {
+            return codec;
+        }
+
+        /**
+         * Whether the column is a CQL list that is neither frozen nor @Encoded, see {@link ModelMetadata#isIdempotent()}.
+         */
+        public boolean isNonFrozenList() {
+            return nonFrozenList;
+        }
+
+        /**
+         * Returns the value as bound to a statement: the encoded blob for an @Encoded column.
+         */
+        public Object getForWrite(Object entity) {
+            Object value = accessor.apply(entity);
+            return value == null || codec == null ? value : codec.encode(value);
+        }
+    }
+}
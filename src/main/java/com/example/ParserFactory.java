@@ -1,23 +1,47 @@
 package com.example;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 public class ParserFactory {
 
+    // Parsers are stateless or thread-confined, so one instance per name serves every invocation and thread
+    private static final ConcurrentMap<String, ParserInterface<?>> PARSERS = new ConcurrentHashMap<>();
+
     /**
-     * Given the fully qualified class name of a parser (that implements ParserInterface<?>),
-     * use reflection to instantiate it.
+     * Returns the parser for the given fully qualified class name, built on first use and cached for the
+     * life of the container. The name is either:
+     *  - a parser class implementing ParserInterface<?> (e.g. com.example.ItemCatalogParser), instantiated once, or
+     *  - a JSON model class (e.g. com.example.Dish), for which a ModelJsonParser is built and validated.
+     *
+     * @throws IllegalArgumentException if the class does not exist or is not a valid model
      */
-    public static ParserInterface<?> createParser(String parserClassName) {
-        try {
-            Class<?> parserClass = Class.forName(parserClassName);
-            Object parserInstance = parserClass.getDeclaredConstructor().newInstance();
-
-            // Cast to ParserInterface<?> so we can return it
-            return (ParserInterface<?>) parserInstance;
+    public static ParserInterface<?> createParser(String className) {
+        if (className == null || className.isEmpty()) {
+            throw new IllegalArgumentException("No parser or model class configured (PARSER)");
+        }
+        ParserInterface<?> parser = PARSERS.get(className);
+        if (parser == null) {
+            parser = PARSERS.computeIfAbsent(className, ParserFactory::build);
+        }
+        return parser;
+    }
 
+    private static ParserInterface<?> build(String className) {
+        Class<?> type;
+        try {
+            type = Class.forName(className);
         } catch (ClassNotFoundException e) {
-            throw new IllegalArgumentException("Parser class not found: " + parserClassName, e);
+            throw new IllegalArgumentException("Parser class not found: " + className, e);
+        }
+        if (!ParserInterface.class.isAssignableFrom(type)) {
+            return new ModelJsonParser<>(type);
+        }
+        try {
+            // Cast to ParserInterface<?> so we can return it
+            return (ParserInterface<?>) type.getDeclaredConstructor().newInstance();
         } catch (Exception e) {
-            throw new RuntimeException("Failed to instantiate parser: " + parserClassName, e);
+            throw new RuntimeException("Failed to instantiate parser: " + className, e);
         }
     }
 }
@@ -2,11 +2,30 @@ package com.example;
 
 import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
 
+import java.util.Collections;
+import java.util.List;
+
 public interface ParserInterface<T> {
     /**
      * Parse a single KafkaEventRecord into a typed model object T.
      */
     T parseRecord(KafkaEvent.KafkaEventRecord record) throws Exception;
 
+    /**
+     * Same as {@link #parseRecord(KafkaEvent.KafkaEventRecord)}, recording the time spent decoding the value
+     * from its wire format into {@code decodeLatency} (may be null). Records nothing by default.
+     */
+    default T parseRecord(KafkaEvent.KafkaEventRecord record, LatencyHistogram decodeLatency) throws Exception {
+        return parseRecord(record);
+    }
+
     Class<T> getModelClass();
+
+    /**
+     * Synthetic records in this parser's wire format, parsed before a checkpoint (see SnapStartPriming) so the
+     * snapshot holds a warmed-up decode path. None by default.
+     */
+    default List<KafkaEvent.KafkaEventRecord> primingRecords() {
+        return Collections.emptyList();
+    }
 }
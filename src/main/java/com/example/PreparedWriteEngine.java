@@ -0,0 +1,118 @@
+package com.example;
+
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Writes entities without the object Mapper, as
+ * {@code INSERT INTO table (non-null columns) VALUES (...) USING TIMESTAMP ?}.
+ *
+ * Null columns are left out of the statement instead of being written as nulls, so a partial update does
+ * not create a tombstone per missing column and the mutation only carries the values that were sent.
+ * One PreparedStatement is prepared per distinct set of non-null columns (identified by a bitmask over
+ * ModelMetadata's columns) and cached for the lifetime of the engine. Preparing blocks on a round trip, so
+ * it happens outside the cache's locks: concurrent first uses of one column set may both prepare it, which
+ * the driver tolerates, but never stall writes of other column sets.
+ * Columns are named as the Mapper names them (ModelMetadata.Column#getCqlName), so switching engines keeps
+ * writing the same columns. Columns annotated with @Encoded are bound as blobs encoded by their own codec.
+ * A statement is idempotent unless it writes a non-frozen list column (see ModelMetadata#isIdempotent).
+ */
+@Slf4j
+public class PreparedWriteEngine implements WriteEngine {
+
+    private static final int MAX_COLUMNS = Long.SIZE;
+
+    private final Session session;
+    private final String qualifiedTable;
+    private final ModelMetadata metadata;
+    private final ConcurrentMap<Long, PreparedStatement> statementsByColumns = new ConcurrentHashMap<>();
+
+    /**
+     * @param keyspace the keyspace of the table, or null to use the session's logged keyspace
+     * @param table    the table the model class is written to
+     */
+    public PreparedWriteEngine(Session session, String keyspace, String table, Class<?> modelClass) {
+        if (table == null || table.isEmpty()) {
+            throw new IllegalArgumentException("A table name is required for the PREPARED write engine");
+        }
+        this.session = session;
+        this.qualifiedTable = keyspace == null || keyspace.isEmpty()
+                ? identifier(table)
+                : identifier(keyspace) + "." + identifier(table);
+        this.metadata = ModelMetadata.of(modelClass);
+        if (metadata.getColumns().size() > MAX_COLUMNS) {
+            throw new IllegalArgumentException("PREPARED write engine supports at most " + MAX_COLUMNS
+                    + " columns, " + modelClass.getName() + " has " + metadata.getColumns().size());
+        }
+        log.info("PreparedWriteEngine initialized for model={}, table={}", modelClass.getSimpleName(), qualifiedTable);
+    }
+
+    @Override
+    public Statement statementFor(Object entity, long timestamp) {
+        if (metadata.partitionKeyOf(entity) == null) {
+            throw new IllegalArgumentException("@PartitionKey field " + metadata.getPartitionKey().getName()
+                    + " is null on entity " + entity);
+        }
+        List<ModelMetadata.Column> columns = metadata.getColumns();
+        Object[] values = new Object[columns.size() + 1];
+        int count = 0;
+        long mask = 0;
+        for (ModelMetadata.Column column : columns) {
+            Object value = column.getForWrite(entity);
+            if (value != null) {
+                mask |= 1L << column.getIndex();
+                values[count++] = value;
+            }
+        }
+        values[count++] = timestamp;
+
+        PreparedStatement prepared = statementsByColumns.get(mask);
+        if (prepared == null) {
+            PreparedStatement fresh = prepare(mask);
+            prepared = statementsByColumns.putIfAbsent(mask, fresh);
+            if (prepared == null) {
+                prepared = fresh;
+            }
+        }
+        return prepared.bind(count == values.length ? values : Arrays.copyOf(values, count));
+    }
+
+    private PreparedStatement prepare(long mask) {
+        StringBuilder names = new StringBuilder();
+        StringBuilder markers = new StringBuilder();
+        boolean idempotent = true;
+        for (ModelMetadata.Column column : metadata.getColumns()) {
+            if ((mask & (1L << column.getIndex())) != 0) {
+                idempotent &= !column.isNonFrozenList();
+                if (names.length() > 0) {
+                    names.append(", ");
+                    markers.append(", ");
+                }
+                names.append(column.getCqlName());
+                markers.append('?');
+            }
+        }
+        String cql = "INSERT INTO " + qualifiedTable + " (" + names + ") VALUES (" + markers + ") USING TIMESTAMP ?";
+        log.info("Preparing write statement #{}: {}", statementsByColumns.size() + 1, cql);
+        PreparedStatement prepared = session.prepare(cql);
+        // Re-running an INSERT with an explicit timestamp yields the same cells, except for list elements
+        prepared.setIdempotent(idempotent);
+        return prepared;
+    }
+
+    /**
+     * A configured keyspace or table name as a CQL identifier. Like an unquoted name in CQL, and the Mapper's
+     * default @Table, it is case-insensitive unless the setting itself is quoted.
+     */
+    private static String identifier(String name) {
+        return name.startsWith("\"") ? name : Metadata.quoteIfNecessary(name.toLowerCase());
+    }
+}
@@ -0,0 +1,250 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pre-parse stage that drops records superseded by a newer record for the same Kafka key,
+ * so only the surviving values are decoded, deserialized and written.
+ *
+ * Within a topic-partition the record with the highest offset wins. The same key showing up in several
+ * partitions of a topic (e.g. after a repartition) cannot be ordered by offset; those "contested" records
+ * are all parsed and the one with the highest @VersionKey value wins.
+ *
+ * Keys are compared in their base64 form: base64 is canonical, so equal strings mean equal key bytes and
+ * no record has to be decoded just to be grouped.
+ *
+ * A record may only be dropped for a newer one that writes every column it would. That always holds when the
+ * write engine writes nulls (the Mapper); otherwise superseded records are parsed too, held until the newest
+ * record of their key is, and dropped only if it covers them, see {@link CoalescedBatch#hold}.
+ */
+@Slf4j
+public class RecordCoalescer {
+
+    private RecordCoalescer() {
+    }
+
+    /**
+     * @param nullsWritten whether the write engine writes null columns, i.e. every record covers every column
+     */
+    public static CoalescedBatch coalesce(List<KafkaEvent.KafkaEventRecord> records, boolean nullsWritten) {
+        // topic-partition -> (key -> newest record in that partition)
+        Map<String, Map<String, KafkaEvent.KafkaEventRecord>> newestByPartition = new HashMap<>();
+        // topic/key -> topic-partition where it was first seen; marks keys that span partitions
+        Map<String, String> partitionByKey = new HashMap<>();
+        Set<String> contestedKeys = new HashSet<>();
+
+        for (KafkaEvent.KafkaEventRecord r : records) {
+            String key = keyOf(r);
+            if (key == null) {
+                continue;
+            }
+            String topicPartition = r.getTopic() + "-" + r.getPartition();
+            Map<String, KafkaEvent.KafkaEventRecord> newest =
+                    newestByPartition.computeIfAbsent(topicPartition, tp -> new HashMap<>());
+            KafkaEvent.KafkaEventRecord current = newest.get(key);
+            if (current == null || r.getOffset() > current.getOffset()) {
+                newest.put(key, r);
+            }
+            String firstPartition = partitionByKey.putIfAbsent(key, topicPartition);
+            if (firstPartition != null && !firstPartition.equals(topicPartition)) {
+                contestedKeys.add(key);
+            }
+        }
+
+        List<KafkaEvent.KafkaEventRecord> survivors = new ArrayList<>(records.size());
+        Set<KafkaEvent.KafkaEventRecord> superseded = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (KafkaEvent.KafkaEventRecord r : records) {
+            String key = keyOf(r);
+            if (key == null || newestByPartition.get(r.getTopic() + "-" + r.getPartition()).get(key) == r) {
+                survivors.add(r);
+            } else if (!nullsWritten) {
+                survivors.add(r);
+                // Contested records are all offered by version anyway
+                if (!contestedKeys.contains(key)) {
+                    superseded.add(r);
+                }
+            }
+        }
+
+        int dropped = records.size() - survivors.size();
+        log.debug("Coalesced {} record(s) into {} ({} superseded, {} held for a coverage check, {} key(s) span partitions).",
+                records.size(), survivors.size(), dropped, superseded.size(), contestedKeys.size());
+        return new CoalescedBatch(survivors, contestedKeys, superseded, nullsWritten, dropped);
+    }
+
+    /**
+     * Identity of a record for coalescing: keys are scoped per topic. Records without a key are never coalesced.
+     */
+    private static String keyOf(KafkaEvent.KafkaEventRecord r) {
+        String key = r.getKey();
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        return r.getTopic() + '\u0000' + key;
+    }
+
+    /**
+     * The surviving records plus the cross-partition @VersionKey guard for contested keys, and the superseded
+     * records held until they are known to be covered.
+     */
+    public static class CoalescedBatch {
+
+        private final List<KafkaEvent.KafkaEventRecord> records;
+        private final Set<String> contestedKeys;
+        private final Set<KafkaEvent.KafkaEventRecord> superseded;
+        private final boolean nullsWritten;
+        // key -> models kept for it; several only when none covers the others
+        private final Map<String, List<Object>> contestedWinners = new LinkedHashMap<>();
+        // topic-partition -> (key -> parsed models of its superseded records)
+        private final Map<String, Map<String, List<Object>>> held = new HashMap<>();
+        private int droppedCount;
+
+        CoalescedBatch(List<KafkaEvent.KafkaEventRecord> records, Set<String> contestedKeys,
+                       Set<KafkaEvent.KafkaEventRecord> superseded, boolean nullsWritten, int droppedCount) {
+            this.records = records;
+            this.contestedKeys = contestedKeys;
+            this.superseded = superseded;
+            this.nullsWritten = nullsWritten;
+            this.droppedCount = droppedCount;
+        }
+
+        /**
+         * Records left after per-partition coalescing, in their original order.
+         */
+        public List<KafkaEvent.KafkaEventRecord> getRecords() {
+            return records;
+        }
+
+        /**
+         * Whether the record's key also survived in another partition, so it must go through {@link #offerContested}.
+         */
+        public boolean isContested(KafkaEvent.KafkaEventRecord r) {
+            String key = keyOf(r);
+            return key != null && contestedKeys.contains(key);
+        }
+
+        /**
+         * Whether a newer record of the same key follows this one in its partition, so its parsed model must go
+         * through {@link #hold}. Never the case when the write engine writes nulls: such records are dropped.
+         */
+        public boolean isSuperseded(KafkaEvent.KafkaEventRecord r) {
+            return superseded.contains(r);
+        }
+
+        /**
+         * Keeps the parsed model of a superseded record until the newest record of its key is parsed.
+         */
+        public synchronized void hold(KafkaEvent.KafkaEventRecord r, Object model) {
+            held.computeIfAbsent(r.getTopic() + "-" + r.getPartition(), tp -> new HashMap<>())
+                    .computeIfAbsent(keyOf(r), k -> new ArrayList<>())
+                    .add(model);
+        }
+
+        /**
+         * Called with the parsed model of every record that is neither superseded nor contested: drops the held
+         * models of its key that it covers and returns the others, which must still be written.
+         */
+        public List<Object> release(KafkaEvent.KafkaEventRecord r, Object model, ModelMetadata metadata) {
+            if (superseded.isEmpty() || keyOf(r) == null) {
+                return Collections.emptyList();
+            }
+            synchronized (this) {
+                Map<String, List<Object>> byKey = held.get(r.getTopic() + "-" + r.getPartition());
+                List<Object> older = byKey == null ? null : byKey.remove(keyOf(r));
+                if (older == null) {
+                    return Collections.emptyList();
+                }
+                List<Object> uncovered = new ArrayList<>(older.size());
+                for (Object o : older) {
+                    if (metadata.covers(model, o)) {
+                        droppedCount++;
+                    } else {
+                        uncovered.add(o);
+                    }
+                }
+                return uncovered;
+            }
+        }
+
+        /**
+         * Returns the models still held for a topic-partition once all its records were processed, e.g. because
+         * the newest record of their key failed to parse or was deferred; they are written as they are.
+         */
+        public synchronized List<Object> releaseAll(String topicPartition) {
+            Map<String, List<Object>> byKey = held.remove(topicPartition);
+            List<Object> remaining = new ArrayList<>();
+            if (byKey != null) {
+                byKey.values().forEach(remaining::addAll);
+            }
+            return remaining;
+        }
+
+        /**
+         * Keeps the parsed model of a contested record unless a kept model of its key with at least its version
+         * covers it, and drops the kept models of lower versions it covers.
+         */
+        public synchronized void offerContested(KafkaEvent.KafkaEventRecord r, Object model, ModelMetadata metadata) {
+            String key = keyOf(r);
+            long version = metadata.versionOf(model);
+            List<Object> kept = contestedWinners.computeIfAbsent(key, k -> new ArrayList<>(1));
+            for (Object other : kept) {
+                if (metadata.versionOf(other) >= version && covers(metadata, other, model)) {
+                    droppedCount++;
+                    log.debug("Dropping cross-partition record offset={} partition={}: version {} <= {}",
+                            r.getOffset(), r.getPartition(), version, metadata.versionOf(other));
+                    return;
+                }
+            }
+            int before = kept.size();
+            kept.removeIf(other -> metadata.versionOf(other) <= version && covers(metadata, model, other));
+            droppedCount += before - kept.size();
+            kept.add(model);
+        }
+
+        private boolean covers(ModelMetadata metadata, Object newer, Object older) {
+            return nullsWritten || metadata.covers(newer, older);
+        }
+
+        /**
+         * The models kept for every contested key; call once all contested records were offered.
+         */
+        public synchronized Collection<Object> getContestedWinners() {
+            List<Object> winners = new ArrayList<>();
+            contestedWinners.values().forEach(winners::addAll);
+            return winners;
+        }
+
+        /**
+         * {@link #getContestedWinners()} grouped by the topic of their records, which selects the route they are
+         * written with.
+         */
+        public synchronized Map<String, List<Object>> getContestedWinnersByTopic() {
+            Map<String, List<Object>> byTopic = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Object>> winners : contestedWinners.entrySet()) {
+                String topic = winners.getKey().substring(0, winners.getKey().indexOf('\u0000'));
+                byTopic.computeIfAbsent(topic, t -> new ArrayList<>()).addAll(winners.getValue());
+            }
+            return byTopic;
+        }
+
+        /**
+         * Records dropped for a newer one of their key: before parsing, and by {@link #release} and
+         * {@link #offerContested} once all records were processed.
+         */
+        public synchronized int getDroppedCount() {
+            return droppedCount;
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses and writes records with parsing and I/O overlapped:
+ *  - every topic-partition group is parsed on its own worker thread, so CPU-bound decoding uses all cores,
+ *  - parsed entities are handed to the writer in small chunks as soon as they are decoded, so writes start
+ *    while later records are still being parsed,
+ *  - within a topic-partition records are parsed and submitted in offset order by a single thread.
+ * The worker pool is container-scoped and reused by every invocation.
+ */
+@Slf4j
+public class RecordPipeline {
+
+    private final ExecutorService workers;
+    private final int threads;
+    private final int chunkSize;
+
+    /**
+     * @param threads   number of parse workers, typically the number of available cores
+     * @param chunkSize number of parsed entities handed to the writer at once
+     */
+    public RecordPipeline(int threads, int chunkSize) {
+        AtomicInteger threadIds = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "record-pipeline-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        log.info("RecordPipeline initialized with {} worker(s), chunkSize={}", threads, chunkSize);
+    }
+
+    public static RecordPipeline fromConfig(EnvironmentConfig config) {
+        return new RecordPipeline(config.getParseThreads(), config.getWriteChunkSize());
+    }
+
+    /**
+     * Parses all coalesced records with the parser their topic is routed to and, unless the route's writer is
+     * null (dry run), writes them. Records of an unrouted topic count as parse failures. Parse, write-submit
+     * and write-ack latencies and record counts per topic-partition go into the invocation's metrics.
+     *
+     * Stops at the invocation's deadline: records not parsed by then are reported as deferred, and entities
+     * whose write was not submitted or was cancelled by then as failed writes. Returns once every submitted
+     * write was acknowledged or failed.
+     */
+    public Result run(RecordCoalescer.CoalescedBatch batch, Invocation invocation) {
+        TopicRoutes routes = invocation.getRoutes();
+        InvocationMetrics metrics = invocation.getMetrics();
+        InvocationDeadline deadline = invocation.getDeadline();
+        Map<String, List<KafkaEvent.KafkaEventRecord>> byPartition = groupByPartition(batch.getRecords());
+        List<Future<PartitionResult>> tasks = new ArrayList<>(byPartition.size());
+        List<PartitionResult> results = new ArrayList<>(tasks.size());
+        for (Map.Entry<String, List<KafkaEvent.KafkaEventRecord>> group : byPartition.entrySet()) {
+            TopicRoutes.Route route = routes.forTopic(group.getValue().get(0).getTopic());
+            if (route == null) {
+                results.add(unrouted(group.getKey(), group.getValue(), metrics));
+                continue;
+            }
+            tasks.add(workers.submit(() -> processPartition(group.getKey(), group.getValue(), batch, route, metrics,
+                    deadline)));
+        }
+
+        for (Future<PartitionResult> task : tasks) {
+            results.add(await(task));
+        }
+
+        // Keys that span partitions are only written once every partition offered its version, by their topic's route
+        for (Map.Entry<String, List<Object>> winners : batch.getContestedWinnersByTopic().entrySet()) {
+            TopicRoutes.Route route = routes.forTopic(winners.getKey());
+            if (route != null && route.getWriter() != null) {
+                PartitionResult contested = new PartitionResult(InvocationMetrics.ALL_PARTITIONS, route.getKey());
+                flush(winners.getValue(), route.getWriter(), contested, metrics, deadline);
+                results.add(contested);
+            }
+        }
+        return collect(results, metrics);
+    }
+
+    /**
+     * Starts a streamed run: records are fed one at a time as they are read, see {@link StreamRun}. Records
+     * submitted after the invocation's deadline are reported as deferred instead of being parsed.
+     */
+    public StreamRun stream(Invocation invocation) {
+        return new StreamRun(invocation.getRoutes(), invocation.getMetrics(), invocation.getDeadline(),
+                invocation.isNullsWritten());
+    }
+
+    /**
+     * Where the records of one invocation go, what they are recorded into and when they must stop.
+     */
+    @Value
+    @Builder
+    public static class Invocation {
+        /** The parser and writer of every topic; writers are null on a dry run */
+        TopicRoutes routes;
+        InvocationMetrics metrics;
+        /** Unbounded unless set */
+        @Builder.Default
+        InvocationDeadline deadline = InvocationDeadline.none();
+        /** Whether the write engine writes null columns, which lets a streamed run coalesce records unparsed */
+        boolean nullsWritten;
+    }
+
+    private static PartitionResult unrouted(String topicPartition, List<KafkaEvent.KafkaEventRecord> records,
+                                            InvocationMetrics metrics) {
+        log.error("No parser is routed for topicPartition='{}', skipping {} record(s).", topicPartition, records.size());
+        metrics.add(InvocationMetrics.Counter.RECORDS, topicPartition, records.size());
+        PartitionResult result = new PartitionResult(topicPartition, null);
+        result.parseFailures = records.size();
+        return result;
+    }
+
+    /**
+     * Waits for every write of the partition results and folds them into a Result.
+     */
+    private static Result collect(List<PartitionResult> results, InvocationMetrics metrics) {
+        int parsed = 0;
+        int parseFailures = 0;
+        int written = 0;
+        int unchanged = 0;
+        int superseded = 0;
+        int stale = 0;
+        int deferred = 0;
+        Map<RouteKey, List<Object>> failedWrites = new LinkedHashMap<>();
+        for (PartitionResult result : results) {
+            int failed = 0;
+            for (CompletableFuture<List<Object>> write : result.writes) {
+                List<Object> failures = write.join();
+                if (!failures.isEmpty()) {
+                    failed += failures.size();
+                    failedWrites.computeIfAbsent(result.route, k -> new ArrayList<>()).addAll(failures);
+                }
+            }
+            parsed += result.parsed;
+            parseFailures += result.parseFailures;
+            written += result.submitted - failed;
+            unchanged += result.unchanged;
+            superseded += result.superseded;
+            stale += result.stale;
+            deferred += result.deferred;
+            metrics.add(InvocationMetrics.Counter.PARSED, result.topicPartition, result.parsed);
+            metrics.add(InvocationMetrics.Counter.PARSE_FAILURES, result.topicPartition, result.parseFailures);
+            metrics.add(InvocationMetrics.Counter.WRITTEN, result.topicPartition, result.submitted - failed);
+            metrics.add(InvocationMetrics.Counter.WRITE_FAILURES, result.topicPartition, failed);
+            metrics.add(InvocationMetrics.Counter.UNCHANGED, result.topicPartition, result.unchanged);
+            metrics.add(InvocationMetrics.Counter.SUPERSEDED, result.topicPartition, result.superseded);
+            metrics.add(InvocationMetrics.Counter.CHANGE_CACHE_LOOKUPS, result.topicPartition, result.cacheLookups);
+            metrics.add(InvocationMetrics.Counter.CHANGE_CACHE_HITS, result.topicPartition, result.cacheHits);
+            metrics.add(InvocationMetrics.Counter.STALE, result.topicPartition, result.stale);
+            metrics.add(InvocationMetrics.Counter.DEFERRED, result.topicPartition, result.deferred);
+        }
+        return new Result(parsed, parseFailures, written, unchanged, superseded, stale, deferred, failedWrites);
+    }
+
+    private PartitionResult processPartition(String topicPartition, List<KafkaEvent.KafkaEventRecord> records,
+                                             RecordCoalescer.CoalescedBatch batch, TopicRoutes.Route route,
+                                             InvocationMetrics metrics, InvocationDeadline deadline) {
+        log.debug("Processing topicPartition='{}' with {} record(s).", topicPartition, records.size());
+        ParserInterface<?> parser = route.getParser();
+        AsyncCassandraWriter writer = route.getWriter();
+        ModelMetadata metadata = ModelMetadata.of(parser.getModelClass());
+        LatencyHistogram parseLatency = metrics.histogram(InvocationMetrics.Stage.PARSE, topicPartition);
+        LatencyHistogram decodeLatency = metrics.histogram(InvocationMetrics.Stage.DECODE, topicPartition);
+        metrics.add(InvocationMetrics.Counter.RECORDS, topicPartition, records.size());
+        PartitionResult result = new PartitionResult(topicPartition, route.getKey());
+        List<Object> chunk = new ArrayList<>(chunkSize);
+        for (int i = 0; i < records.size(); i++) {
+            if (deadline.isExpired()) {
+                result.deferred = records.size() - i;
+                log.warn("Deadline reached on topicPartition='{}', deferring {} of {} record(s).",
+                        topicPartition, result.deferred, records.size());
+                break;
+            }
+            KafkaEvent.KafkaEventRecord r = records.get(i);
+            long start = System.nanoTime();
+            try {
+                Object modelObj = parser.parseRecord(r, decodeLatency);
+                parseLatency.recordNanos(System.nanoTime() - start);
+                if (modelObj == null) {
+                    continue;
+                }
+                log.debug("Parsed model: {}", modelObj);
+                result.parsed++;
+                if (batch.isContested(r)) {
+                    batch.offerContested(r, modelObj, metadata);
+                    continue;
+                }
+                if (batch.isSuperseded(r)) {
+                    batch.hold(r, modelObj);
+                    continue;
+                }
+                chunk.addAll(batch.release(r, modelObj, metadata));
+                chunk.add(modelObj);
+            } catch (Exception e) {
+                log.error("Error parsing record offset={} partition={}: {}",
+                        r.getOffset(), r.getPartition(), e.getMessage(), e);
+                result.parseFailures++;
+            }
+            if (chunk.size() >= chunkSize) {
+                flush(chunk, writer, result, metrics, deadline);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        chunk.addAll(batch.releaseAll(topicPartition));
+        flush(chunk, writer, result, metrics, deadline);
+        return result;
+    }
+
+    /**
+     * Hands a chunk to the writer. Entities older than an acknowledged version (StaleVersionGuard), then
+     * unchanged and superseded ones (ChangeDetectionCache) are dropped first; both learn from the acknowledged
+     * writes.
+     */
+    private static void flush(List<Object> chunk, AsyncCassandraWriter writer, PartitionResult result,
+                              InvocationMetrics metrics, InvocationDeadline deadline) {
+        if (writer == null || chunk.isEmpty()) {
+            return;
+        }
+        List<Object> writes = chunk;
+        StaleVersionGuard guard = writer.getVersionGuard();
+        if (guard != null) {
+            writes = guard.dropStale(writes);
+            result.stale += chunk.size() - writes.size();
+        }
+        ChangeDetectionCache cache = writer.getChangeCache();
+        ChangeDetectionCache.Filtered filtered = null;
+        if (cache != null && !writes.isEmpty()) {
+            filtered = cache.filter(result.topicPartition, writes);
+            result.unchanged += filtered.getUnchanged();
+            result.superseded += filtered.getSuperseded();
+            result.cacheLookups += filtered.getLookups();
+            result.cacheHits += filtered.getHits();
+            writes = filtered.getWrites();
+        }
+        if (writes.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<List<Object>> write = writer.writeAsync(writes,
+                metrics.histogram(InvocationMetrics.Stage.WRITE_ACK, result.topicPartition), deadline);
+        if (guard != null || filtered != null) {
+            List<Object> submitted = writes;
+            ChangeDetectionCache.Filtered written = filtered;
+            write = write.thenApply(failed -> {
+                if (guard != null) {
+                    guard.onWritten(submitted, failed);
+                }
+                if (written != null) {
+                    cache.onWritten(written, failed);
+                }
+                return failed;
+            });
+        }
+        result.writes.add(write);
+        metrics.record(InvocationMetrics.Stage.WRITE_SUBMIT, result.topicPartition, System.nanoTime() - start);
+        result.submitted += writes.size();
+    }
+
+    private static Map<String, List<KafkaEvent.KafkaEventRecord>> groupByPartition(List<KafkaEvent.KafkaEventRecord> records) {
+        Map<String, List<KafkaEvent.KafkaEventRecord>> byPartition = new LinkedHashMap<>();
+        for (KafkaEvent.KafkaEventRecord r : records) {
+            byPartition.computeIfAbsent(r.getTopic() + "-" + r.getPartition(), tp -> new ArrayList<>()).add(r);
+        }
+        return byPartition;
+    }
+
+    private static <T> T await(Future<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for partition workers", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Partition worker failed", e.getCause());
+        }
+    }
+
+    /**
+     * A run fed record by record, for input that is never materialized as a whole (StreamingLambdaHandler).
+     *
+     * Records are buffered per topic-partition into chunks of chunkSize and each full chunk is coalesced,
+     * parsed and written on the worker pool. The chunks of a topic-partition run one after the other, in offset
+     * order, while different topic-partitions run in parallel. At most two chunks per worker are queued or being
+     * parsed; {@link #submit} blocks the reading thread beyond that, so memory stays bounded however large the
+     * input is. Coalescing only sees one chunk at a time: a key repeated across chunks is written once per chunk.
+     */
+    public final class StreamRun {
+
+        private final TopicRoutes routes;
+        private final InvocationMetrics metrics;
+        private final InvocationDeadline deadline;
+        private final boolean nullsWritten;
+        private final Semaphore chunkPermits = new Semaphore(threads * 2);
+        private final Map<String, List<KafkaEvent.KafkaEventRecord>> openChunks = new LinkedHashMap<>();
+        private final Map<String, TopicRoutes.Route> partitionRoutes = new LinkedHashMap<>();
+        private final Map<String, Long> lastOffsets = new LinkedHashMap<>();
+        private final Map<String, PartitionResult> unrouted = new LinkedHashMap<>();
+        private final Map<String, PartitionResult> deferred = new LinkedHashMap<>();
+        // topic-partition -> its last dispatched chunk, which the next one runs after
+        private final Map<String, CompletableFuture<PartitionResult>> lastChunks = new LinkedHashMap<>();
+        private final List<Future<PartitionResult>> tasks = new ArrayList<>();
+
+        private StreamRun(TopicRoutes routes, InvocationMetrics metrics, InvocationDeadline deadline,
+                          boolean nullsWritten) {
+            this.routes = routes;
+            this.metrics = metrics;
+            this.deadline = deadline;
+            this.nullsWritten = nullsWritten;
+        }
+
+        /**
+         * Adds one record; called by a single reading thread, in the order records are read.
+         */
+        public void submit(KafkaEvent.KafkaEventRecord record) {
+            String topicPartition = record.getTopic() + "-" + record.getPartition();
+            if (deadline.isExpired()) {
+                // Read on so the report covers the whole input, but start no more work
+                metrics.add(InvocationMetrics.Counter.RECORDS, topicPartition, 1);
+                deferred.computeIfAbsent(topicPartition, tp -> new PartitionResult(tp, routeKeyOf(record))).deferred++;
+                return;
+            }
+            if (lastOffsets.put(topicPartition, record.getOffset()) == null) {
+                TopicRoutes.Route route = routes.forTopic(record.getTopic());
+                partitionRoutes.put(topicPartition, route);
+                ChangeDetectionCache cache = changeCacheOf(route);
+                if (cache != null) {
+                    cache.beginPartition(topicPartition, record.getOffset());
+                }
+            }
+            List<KafkaEvent.KafkaEventRecord> chunk =
+                    openChunks.computeIfAbsent(topicPartition, tp -> new ArrayList<>(chunkSize));
+            chunk.add(record);
+            if (chunk.size() >= chunkSize) {
+                openChunks.remove(topicPartition);
+                dispatch(topicPartition, chunk);
+            }
+        }
+
+        /**
+         * Dispatches the remaining partial chunks and returns once every write was acknowledged or failed.
+         */
+        public Result finish() {
+            for (Map.Entry<String, List<KafkaEvent.KafkaEventRecord>> chunk : openChunks.entrySet()) {
+                dispatch(chunk.getKey(), chunk.getValue());
+            }
+            openChunks.clear();
+            if (!deferred.isEmpty()) {
+                log.warn("Deadline reached while streaming, deferred {} record(s) of {} topic-partition(s).",
+                        deferred.values().stream().mapToInt(r -> r.deferred).sum(), deferred.size());
+            }
+            List<PartitionResult> results = new ArrayList<>(unrouted.values());
+            results.addAll(deferred.values());
+            for (Future<PartitionResult> task : tasks) {
+                results.add(await(task));
+            }
+            lastOffsets.forEach((topicPartition, lastOffset) -> {
+                ChangeDetectionCache cache = changeCacheOf(partitionRoutes.get(topicPartition));
+                if (cache != null) {
+                    cache.endPartition(topicPartition, lastOffset);
+                }
+            });
+            return collect(results, metrics);
+        }
+
+        private void dispatch(String topicPartition, List<KafkaEvent.KafkaEventRecord> chunk) {
+            TopicRoutes.Route route = partitionRoutes.get(topicPartition);
+            if (route == null) {
+                PartitionResult skipped = unrouted(topicPartition, chunk, metrics);
+                unrouted.merge(topicPartition, skipped, (a, b) -> {
+                    a.parseFailures += b.parseFailures;
+                    return a;
+                });
+                return;
+            }
+            try {
+                chunkPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a parse worker", e);
+            }
+            CompletableFuture<PartitionResult> previous = lastChunks.get(topicPartition);
+            CompletableFuture<PartitionResult> task = (previous == null ? CompletableFuture.completedFuture(null) : previous)
+                    .handleAsync((ignored, failure) -> {
+                        try {
+                            return processChunk(topicPartition, chunk, route);
+                        } finally {
+                            chunkPermits.release();
+                        }
+                    }, workers);
+            lastChunks.put(topicPartition, task);
+            tasks.add(task);
+        }
+
+        private PartitionResult processChunk(String topicPartition, List<KafkaEvent.KafkaEventRecord> chunk,
+                                             TopicRoutes.Route route) {
+            RecordCoalescer.CoalescedBatch batch = RecordCoalescer.coalesce(chunk, nullsWritten);
+            PartitionResult result = processPartition(topicPartition, batch.getRecords(), batch, route, metrics, deadline);
+            result.superseded += batch.getDroppedCount();
+            return result;
+        }
+
+        private RouteKey routeKeyOf(KafkaEvent.KafkaEventRecord record) {
+            TopicRoutes.Route route = routes.forTopic(record.getTopic());
+            return route == null ? null : route.getKey();
+        }
+
+        private ChangeDetectionCache changeCacheOf(TopicRoutes.Route route) {
+            return route == null || route.getWriter() == null ? null : route.getWriter().getChangeCache();
+        }
+    }
+
+    private static final class PartitionResult {
+        private final String topicPartition;
+        /** Where the writes of this result go; null for unrouted records, which have none */
+        private final RouteKey route;
+        private int parsed;
+        private int parseFailures;
+        private int submitted;
+        private int unchanged;
+        private int superseded;
+        private int cacheLookups;
+        private int cacheHits;
+        private int stale;
+        private int deferred;
+        private final List<CompletableFuture<List<Object>>> writes = new ArrayList<>();
+
+        private PartitionResult(String topicPartition, RouteKey route) {
+            this.topicPartition = topicPartition;
+            this.route = route;
+        }
+    }
+
+    @Value
+    public static class Result {
+        int parsed;
+        int parseFailures;
+        int written;
+        /** Entities not written because the ChangeDetectionCache found their content unchanged */
+        int unchanged;
+        /** Entities not written because the ChangeDetectionCache knew a newer version of their row */
+        int superseded;
+        /** Entities not written because the StaleVersionGuard had a newer acknowledged version */
+        int stale;
+        /** Records not parsed because the invocation deadline was reached; only redelivery processes them */
+        int deferred;
+        /** Entities whose write still failed after retries, by the route they were written with */
+        Map<RouteKey, List<Object>> failedWrites;
+
+        public int getWriteFailures() {
+            int failures = 0;
+            for (List<Object> entities : failedWrites.values()) {
+                failures += entities.size();
+            }
+            return failures;
+        }
+    }
+}
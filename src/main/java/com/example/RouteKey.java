@@ -0,0 +1,25 @@
+package com.example;
+
+import lombok.Value;
+
+/**
+ * Where rows are written: a model class and its table. One AsyncCassandraWriter exists per RouteKey, since
+ * topic routes may write one model to several tables; failed writes keep their RouteKey through the
+ * WriteSpool, so a replay goes back to the table the row came from.
+ */
+@Value
+public class RouteKey {
+
+    Class<?> modelClass;
+    /** CASSANDRA_TABLE or the topic route's table; null when neither is set */
+    String table;
+
+    public static RouteKey of(Class<?> modelClass, EnvironmentConfig config) {
+        return new RouteKey(modelClass, config.getCassandraTableName());
+    }
+
+    @Override
+    public String toString() {
+        return modelClass.getSimpleName() + "/" + table;
+    }
+}
@@ -0,0 +1,184 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * CRaC Resource that primes the container before a checkpoint (Lambda SnapStart) and reconnects after restore.
+ *
+ * Before the checkpoint, the synthetic records of every configured parser (ParserInterface.primingRecords)
+ * go through the invocation path without touching Cassandra: flattening, coalescing, parsing, the @Encoded
+ * codecs and the writer's submission path against a no-op RowWriter, so class loading, reader construction,
+ * model metadata, the AVRO_SCHEMA_IDS schemas and JIT compilation are already in the snapshot. The driver's
+ * configuration classes are loaded from the connection profile, and an open session is closed since its sockets
+ * do not survive a restore.
+ *
+ * After the restore, the session and the writers of the configured routes are rebuilt, so the first invocation
+ * finds them ready. If that fails, the provider reconnects on first use as it does without SnapStart.
+ * org.crac is a no-op on JVMs without checkpoint support, so registering is always safe.
+ */
+@Slf4j
+public class SnapStartPriming implements Resource {
+
+    // Passes over the synthetic records; enough for the hot parse and submit methods to get compiled
+    static final int PRIMING_ROUNDS = 500;
+
+    // org.crac only keeps weak references to registered resources
+    private static final List<Resource> REGISTERED = new CopyOnWriteArrayList<>();
+
+    private final CassandraClientProvider provider;
+    private final Supplier<EnvironmentConfig> configSource;
+
+    SnapStartPriming(CassandraClientProvider provider, Supplier<EnvironmentConfig> configSource) {
+        this.provider = provider;
+        this.configSource = configSource;
+    }
+
+    /**
+     * Registers priming for a handler's provider and configuration with the global CRaC context.
+     */
+    public static void register(CassandraClientProvider provider, Supplier<EnvironmentConfig> configSource) {
+        SnapStartPriming priming = new SnapStartPriming(provider, configSource);
+        REGISTERED.add(priming);
+        Core.getGlobalContext().register(priming);
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        long start = System.nanoTime();
+        int primed = 0;
+        try {
+            primed = prime(configSource.get());
+        } catch (RuntimeException e) {
+            // A snapshot without priming is still valid, only slower on its first invocation
+            log.warn("Priming before checkpoint failed: {}", e.getMessage(), e);
+        }
+        provider.close();
+        log.info("Primed {} synthetic record(s) in {} ms before checkpoint.", primed,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        long start = System.nanoTime();
+        try {
+            provider.getSession();
+            for (EnvironmentConfig route : routeConfigs(configSource.get())) {
+                provider.writerFor(ParserFactory.createParser(route.getParserName()).getModelClass(), route);
+            }
+            log.info("Cassandra session and writers re-established in {} ms after restore.",
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.warn("Reconnecting after restore failed, the first invocation reconnects: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs the priming records of every configured parser through the invocation path.
+     *
+     * @return the number of entities parsed
+     */
+    int prime(EnvironmentConfig config) {
+        CassandraConnectionProfile profile = provider.getProfile();
+        if (profile != null) {
+            profile.clusterBuilder().getConfiguration();
+        }
+        AvroSchemaCache.shared().requireAll(config.getAvroSchemaIds());
+        int primed = 0;
+        for (EnvironmentConfig route : routeConfigs(config)) {
+            ParserInterface<?> parser = ParserFactory.createParser(route.getParserName());
+            List<KafkaEvent.KafkaEventRecord> records = parser.primingRecords();
+            if (records.isEmpty()) {
+                log.info("Parser {} has no priming records, priming its construction only.", route.getParserName());
+                continue;
+            }
+            primed += prime(parser, records, route);
+        }
+        return primed;
+    }
+
+    private static int prime(ParserInterface<?> parser, List<KafkaEvent.KafkaEventRecord> records,
+                             EnvironmentConfig config) {
+        ModelMetadata metadata = ModelMetadata.of(parser.getModelClass());
+        AsyncCassandraWriter writer = new AsyncCassandraWriter(AsyncCassandraWriter.Settings.builder()
+                .rows((entities, timestamps) -> CompletableFuture.completedFuture(null))
+                .modelClass(parser.getModelClass())
+                .config(config)
+                .lanes(WriteLanes.fromConfig(parser.getModelClass(), config))
+                .build());
+        InvocationMetrics metrics = new InvocationMetrics(parser.getModelClass().getSimpleName());
+        KafkaEvent event = new KafkaEvent();
+        event.setRecords(Collections.singletonMap("priming-0", records));
+
+        int primed = 0;
+        for (int round = 0; round < PRIMING_ROUNDS; round++) {
+            RecordCoalescer.CoalescedBatch batch = RecordCoalescer.coalesce(KafkaEventFlattener.flatten(event),
+                    config.getWriteEngine() == WriteEngine.Kind.MAPPER);
+            List<Object> entities = new ArrayList<>(records.size());
+            for (KafkaEvent.KafkaEventRecord record : batch.getRecords()) {
+                Object entity;
+                try {
+                    entity = parser.parseRecord(record);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Parser " + parser.getClass().getName()
+                            + " rejected its own priming record", e);
+                }
+                if (entity != null) {
+                    entities.add(entity);
+                    for (ModelMetadata.Column column : metadata.getColumns()) {
+                        if (column.getCodec() != null) {
+                            column.getCodec().decode(column.getCodec().encode(column.get(entity)));
+                        }
+                    }
+                }
+            }
+            writer.writeAsync(entities,
+                    metrics.histogram(InvocationMetrics.Stage.WRITE_ACK, InvocationMetrics.ALL_PARTITIONS)).join();
+            primed += entities.size();
+        }
+        metrics.toEmf(config.getMetricsNamespace(), System.currentTimeMillis());
+        return primed;
+    }
+
+    /**
+     * The configuration of every route an invocation builds: PARSER's and each TOPIC_ROUTES entry's.
+     */
+    private static List<EnvironmentConfig> routeConfigs(EnvironmentConfig config) {
+        List<EnvironmentConfig> routes = new ArrayList<>();
+        if (config.getParserName() != null && !config.getParserName().isEmpty()) {
+            routes.add(config);
+        }
+        for (EnvironmentConfig.TopicRoute route : config.getTopicRoutes().values()) {
+            routes.add(config.forRoute(route));
+        }
+        return routes;
+    }
+
+    /**
+     * A record of the synthetic "priming" topic carrying {@code base64Value}.
+     */
+    static KafkaEvent.KafkaEventRecord syntheticRecord(String base64Value) {
+        KafkaEvent.KafkaEventRecord record = new KafkaEvent.KafkaEventRecord();
+        record.setTopic("priming");
+        record.setPartition(0);
+        record.setOffset(0);
+        record.setTimestamp(0);
+        record.setTimestampType("CREATE_TIME");
+        record.setKey(Base64.getEncoder().encodeToString("1".getBytes(StandardCharsets.UTF_8)));
+        record.setValue(base64Value);
+        record.setHeaders(Collections.emptyList());
+        return record;
+    }
+}
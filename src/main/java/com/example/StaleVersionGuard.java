@@ -0,0 +1,245 @@
+package com.example;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Warm-container map from @PartitionKey value to the highest @VersionKey value Cassandra acknowledged for it,
+ * used to drop stale records (replays, rebalances, reprocessing) before they are sent: their cells would lose
+ * to the acknowledged ones under USING TIMESTAMP anyway.
+ *
+ * Long keys live in a 4-way set-associative table of primitive arrays, so lookups neither box nor allocate;
+ * other key types fall back to an LRU map. Both are bounded by maxKeys and evict without losing correctness:
+ * a forgotten key is simply written. Only acknowledged writes populate the guard, and no version is ever
+ * lowered, so the guard never holds a version Cassandra does not have.
+ *
+ * A record is dropped when its version is not newer than the acknowledged one and every column it would write
+ * was written by that acknowledged version (always the case with the Mapper, which writes nulls too).
+ * Equal versions are dropped as well: they are replays of the same record.
+ */
+@Slf4j
+public class StaleVersionGuard {
+
+    private static final int WAYS = 4;
+
+    private final ModelMetadata metadata;
+    private final boolean nullsWritten;
+    private final long allColumnsMask;
+    private final boolean longKeys;
+    private final int setMask;
+
+    // Long keys: slot i of set s is s * WAYS + i; a slot is empty while its version is Long.MIN_VALUE
+    private final long[] keys;
+    private final long[] versions;
+    private final long[] masks;
+    private final byte[] nextVictim;
+
+    private final Map<Object, long[]> objectKeys;
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param maxKeys      approximate number of keys remembered
+     * @param nullsWritten whether the write engine writes null columns, i.e. every write covers every column
+     */
+    public StaleVersionGuard(Class<?> modelClass, int maxKeys, boolean nullsWritten) {
+        this.metadata = ModelMetadata.of(modelClass);
+        if (metadata.getColumns().size() > Long.SIZE) {
+            throw new IllegalArgumentException("Stale version guard supports at most " + Long.SIZE + " columns, "
+                    + modelClass.getName() + " has " + metadata.getColumns().size());
+        }
+        this.nullsWritten = nullsWritten;
+        this.allColumnsMask = metadata.getColumns().size() == Long.SIZE ? -1L : (1L << metadata.getColumns().size()) - 1;
+        Class<?> keyType = metadata.getPartitionKey().getType();
+        this.longKeys = keyType == Long.class || keyType == long.class;
+
+        int sets = Integer.highestOneBit(Math.max(1, maxKeys / WAYS));
+        this.setMask = sets - 1;
+        if (longKeys) {
+            this.keys = new long[sets * WAYS];
+            this.versions = new long[sets * WAYS];
+            this.masks = new long[sets * WAYS];
+            this.nextVictim = new byte[sets];
+            Arrays.fill(versions, Long.MIN_VALUE);
+            this.objectKeys = null;
+        } else {
+            this.keys = null;
+            this.versions = null;
+            this.masks = null;
+            this.nextVictim = null;
+            this.objectKeys = new LinkedHashMap<Object, long[]>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, long[]> eldest) {
+                    return size() > maxKeys;
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns the guard configured by VERSION_GUARD_MAX_KEYS, or null when it is disabled (0) or the model
+     * has too many columns.
+     */
+    public static StaleVersionGuard fromConfig(Class<?> modelClass, EnvironmentConfig config) {
+        if (config.getVersionGuardMaxKeys() <= 0) {
+            return null;
+        }
+        try {
+            StaleVersionGuard guard = new StaleVersionGuard(modelClass, config.getVersionGuardMaxKeys(),
+                    config.getWriteEngine() == WriteEngine.Kind.MAPPER);
+            log.info("StaleVersionGuard enabled for model={}, maxKeys={}, primitiveKeys={}",
+                    modelClass.getSimpleName(), config.getVersionGuardMaxKeys(), guard.longKeys);
+            return guard;
+        } catch (IllegalArgumentException e) {
+            log.warn("StaleVersionGuard disabled: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the entities of the chunk that are newer than what Cassandra acknowledged, or the chunk itself
+     * when none is stale.
+     */
+    public List<Object> dropStale(List<Object> chunk) {
+        List<Object> fresh = null;
+        synchronized (this) {
+            for (int i = 0; i < chunk.size(); i++) {
+                Object entity = chunk.get(i);
+                boolean stale = isStale(entity);
+                if (stale && fresh == null) {
+                    fresh = new ArrayList<>(chunk.subList(0, i));
+                } else if (!stale && fresh != null) {
+                    fresh.add(entity);
+                }
+            }
+        }
+        if (fresh == null) {
+            return chunk;
+        }
+        dropped.add(chunk.size() - fresh.size());
+        return fresh;
+    }
+
+    /**
+     * Raises the acknowledged version of every entity that was written successfully.
+     */
+    public synchronized void onWritten(List<Object> written, Collection<Object> failed) {
+        Set<Object> failedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        failedSet.addAll(failed);
+        for (Object entity : written) {
+            Object key = metadata.partitionKeyOf(entity);
+            if (key == null || failedSet.contains(entity)) {
+                continue;
+            }
+            long version = metadata.versionOf(entity);
+            long mask = maskOf(entity);
+            if (longKeys) {
+                putLong((Long) key, version, mask);
+            } else {
+                long[] acked = objectKeys.get(key);
+                if (acked == null || version > acked[0]) {
+                    objectKeys.put(key, new long[]{version, mask});
+                }
+            }
+        }
+    }
+
+    /**
+     * Stale records dropped since the container started.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private boolean isStale(Object entity) {
+        Object key = metadata.partitionKeyOf(entity);
+        Object value = metadata.getVersion().get(entity);
+        if (key == null || value == null) {
+            return false;
+        }
+        long version = (Long) value;
+        long acked;
+        long ackedMask;
+        if (longKeys) {
+            int slot = findLong((Long) key);
+            if (slot < 0) {
+                return false;
+            }
+            acked = versions[slot];
+            ackedMask = masks[slot];
+        } else {
+            long[] entry = objectKeys.get(key);
+            if (entry == null) {
+                return false;
+            }
+            acked = entry[0];
+            ackedMask = entry[1];
+        }
+        return version <= acked && (maskOf(entity) & ~ackedMask) == 0;
+    }
+
+    private long maskOf(Object entity) {
+        if (nullsWritten) {
+            return allColumnsMask;
+        }
+        long mask = 0;
+        for (ModelMetadata.Column column : metadata.getColumns()) {
+            if (column.get(entity) != null) {
+                mask |= 1L << column.getIndex();
+            }
+        }
+        return mask;
+    }
+
+    private int findLong(long key) {
+        int base = setOf(key) * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            if (versions[i] != Long.MIN_VALUE && keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void putLong(long key, long version, long mask) {
+        int slot = findLong(key);
+        if (slot >= 0) {
+            if (version > versions[slot]) {
+                versions[slot] = version;
+                masks[slot] = mask;
+            }
+            return;
+        }
+        int set = setOf(key);
+        int base = set * WAYS;
+        slot = -1;
+        for (int i = base; i < base + WAYS; i++) {
+            if (versions[i] == Long.MIN_VALUE) {
+                slot = i;
+                break;
+            }
+        }
+        if (slot < 0) {
+            // Round-robin replacement within the set
+            slot = base + nextVictim[set];
+            nextVictim[set] = (byte) ((nextVictim[set] + 1) % WAYS);
+        }
+        keys[slot] = key;
+        versions[slot] = version;
+        masks[slot] = mask;
+    }
+
+    private int setOf(long key) {
+        long z = key * 0x9E3779B97F4A7C15L;
+        return (int) (z ^ (z >>> 32)) & setMask;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * Alternative entry point that reads the Kafka event straight from the invocation payload instead of letting
+ * the runtime deserialize it into a KafkaEvent. Records are parsed and written while the rest of the payload
+ * is still being read, so a 6 MB batch is never held in memory as a whole.
+ *
+ * Spool replay, spilling, metrics and failure handling are those of MainLambdaHandler. Records are coalesced
+ * per chunk rather than per batch, see {@link RecordPipeline.StreamRun}.
+ */
+@Slf4j
+public class StreamingLambdaHandler implements RequestStreamHandler {
+
+    private final MainLambdaHandler delegate;
+    private final Supplier<EnvironmentConfig> configSource;
+
+    public StreamingLambdaHandler() {
+        this(CassandraClientProvider.shared(), EnvironmentConfig::loadFromSystemEnv);
+        SnapStartPriming.register(CassandraClientProvider.shared(), configSource);
+    }
+
+    StreamingLambdaHandler(CassandraClientProvider cassandraClientProvider, Supplier<EnvironmentConfig> configSource) {
+        this.delegate = new MainLambdaHandler(cassandraClientProvider, configSource);
+        this.configSource = configSource;
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        EnvironmentConfig config = configSource.get();
+        log.info("Loaded environment: {}", config);
+        EventLogger.StreamSummary summary = delegate.eventLogger(config).streamSummary();
+        InvocationDeadline deadline = InvocationDeadline.fromContext(context, config.getDeadlineSafetyMarginMs());
+
+        String status = delegate.process(config, deadline, (pipeline, routes, metrics) -> {
+            RecordPipeline.StreamRun run = pipeline.stream(RecordPipeline.Invocation.builder()
+                    .routes(routes)
+                    .metrics(metrics)
+                    .deadline(deadline)
+                    .nullsWritten(config.getWriteEngine() == WriteEngine.Kind.MAPPER)
+                    .build());
+            int records = KafkaEventStreamReader.read(new BufferedInputStream(input), record -> {
+                summary.add(record);
+                run.submit(record);
+            });
+            log.info("Streamed {} record(s).", records);
+            summary.logSummary();
+            return run.finish();
+        });
+
+        // Same response as MainLambdaHandler: the status as a JSON string
+        output.write(('"' + status + '"').getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Routes the records of an invocation to the parser and writer of their Kafka topic, so one event source
+ * mapping can carry several topics and models. Every writer shares the provider's session.
+ * Topics without a route of their own go to the default route (PARSER), if any.
+ */
+public final class TopicRoutes {
+
+    private final Map<String, Route> byTopic;
+    private final Route defaultRoute;
+
+    /**
+     * @param defaultRoute route of the topics not in {@code byTopic}; null if they cannot be processed
+     */
+    public TopicRoutes(Map<String, Route> byTopic, Route defaultRoute) {
+        this.byTopic = Collections.unmodifiableMap(new LinkedHashMap<>(byTopic));
+        this.defaultRoute = defaultRoute;
+    }
+
+    /**
+     * Routes every topic to one parser and writer.
+     */
+    public static TopicRoutes single(ParserInterface<?> parser, AsyncCassandraWriter writer) {
+        return new TopicRoutes(Collections.emptyMap(), new Route(parser, writer));
+    }
+
+    /**
+     * Returns the route of the topic, or null when it has none and there is no default route.
+     */
+    public Route forTopic(String topic) {
+        return byTopic.getOrDefault(topic, defaultRoute);
+    }
+
+    /**
+     * The distinct routes, the default one first.
+     */
+    public List<Route> all() {
+        Set<Route> routes = new LinkedHashSet<>();
+        if (defaultRoute != null) {
+            routes.add(defaultRoute);
+        }
+        routes.addAll(byTopic.values());
+        return new ArrayList<>(routes);
+    }
+
+    /**
+     * Returns the writer of the route writing the model class to the key's table, or null if no route does.
+     */
+    public AsyncCassandraWriter writerFor(RouteKey key) {
+        for (Route route : all()) {
+            if (route.getKey().equals(key)) {
+                return route.getWriter();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The same routes without writers, for dry runs.
+     */
+    public TopicRoutes withoutWriters() {
+        Map<Route, Route> dry = new LinkedHashMap<>();
+        for (Route route : all()) {
+            dry.put(route, new Route(route.getParser(), null, route.getTable()));
+        }
+        Map<String, Route> topics = new LinkedHashMap<>();
+        byTopic.forEach((topic, route) -> topics.put(topic, dry.get(route)));
+        return new TopicRoutes(topics, defaultRoute == null ? null : dry.get(defaultRoute));
+    }
+
+    /**
+     * Simple names of the routed models, joined with '+': the Model dimension of the invocation's metrics.
+     */
+    public String modelName() {
+        Set<String> names = new LinkedHashSet<>();
+        for (Route route : all()) {
+            names.add(route.getParser().getModelClass().getSimpleName());
+        }
+        return String.join("+", names);
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        byTopic.forEach((topic, route) -> joiner.add(topic + "=" + route));
+        if (defaultRoute != null) {
+            joiner.add("*=" + defaultRoute);
+        }
+        return joiner.toString();
+    }
+
+    @Value
+    @AllArgsConstructor
+    public static class Route {
+        ParserInterface<?> parser;
+        /** Null on a dry run */
+        AsyncCassandraWriter writer;
+        /** The table the writer writes to, see RouteKey */
+        String table;
+
+        public Route(ParserInterface<?> parser, AsyncCassandraWriter writer) {
+            this(parser, writer, null);
+        }
+
+        public RouteKey getKey() {
+            return new RouteKey(parser.getModelClass(), table);
+        }
+
+        @Override
+        public String toString() {
+            return parser.getClass().getSimpleName() + "->" + parser.getModelClass().getSimpleName();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example;
+
+import com.datastax.driver.core.Statement;
+
+/**
+ * Builds the statement that writes one entity with the given USING TIMESTAMP.
+ * AsyncCassandraWriter executes these statements, alone or grouped into UNLOGGED batches.
+ */
+@FunctionalInterface
+public interface WriteEngine {
+
+    Statement statementFor(Object entity, long timestamp);
+
+    /**
+     * Engines selectable through the WRITE_ENGINE environment variable.
+     */
+    enum Kind {
+        /** Mapper.saveQuery: writes every mapped column, including nulls. */
+        MAPPER,
+        /** PreparedWriteEngine: INSERTs only the non-null columns. */
+        PREPARED
+    }
+}
@@ -0,0 +1,275 @@
+package com.example;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Orders the writes of each @PartitionKey value: requests are dispatched to one of a fixed number of stripes
+ * by the hash of their partition key, and a stripe runs one request at a time, in submission order, across
+ * writeAsync calls and retries. Two versions of a row therefore never race to the coordinator, while requests
+ * of different stripes run in parallel, bounded only by the AdaptiveWriteWindow. Unrelated keys sharing a
+ * stripe are ordered too, which costs latency but not correctness; enough stripes keep that rare.
+ *
+ * A single-entity request still waiting in its stripe is collapsed with a newer one for the same key: only the
+ * entity with the higher version is written, and the other one shares its outcome. Collapsing requires the
+ * surviving entity to write every column the other one would (always the case with the Mapper, which writes
+ * nulls too); otherwise the cells of the older version could be lost, and both are written in order.
+ *
+ * Per-stripe queue depths ({@link #depths()}, {@link #stats()}) show hot keys under load.
+ *
+ * Lanes are opt-in: WRITE_LANE_STRIPES defaults to 0, which leaves the write path unordered as before.
+ */
+@Slf4j
+public class WriteLanes {
+
+    /** What {@link #offer} did with a request. */
+    public enum Admission {
+        /** The stripe was idle: the caller runs the request now and calls {@link #next} when it completed. */
+        RUN,
+        /** The request waits for the ones ahead of it in its stripe. */
+        QUEUED,
+        /** The request was merged into a waiting request of the same key and completes with it. */
+        COLLAPSED
+    }
+
+    /**
+     * A request waiting in a stripe, with the context of the writeAsync call it came from.
+     */
+    public static final class Pending {
+        private final Object key;
+        private volatile List<Object> request;
+        private final CompletableFuture<Void> result;
+        private final LatencyHistogram ackLatency;
+        private final InvocationDeadline deadline;
+
+        public Pending(Object key, List<Object> request, CompletableFuture<Void> result,
+                       LatencyHistogram ackLatency, InvocationDeadline deadline) {
+            this.key = key;
+            this.request = request;
+            this.result = result;
+            this.ackLatency = ackLatency;
+            this.deadline = deadline;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        /** The entities to write; replaced by a newer entity when a request is collapsed into this one. */
+        public List<Object> getRequest() {
+            return request;
+        }
+
+        public CompletableFuture<Void> getResult() {
+            return result;
+        }
+
+        public LatencyHistogram getAckLatency() {
+            return ackLatency;
+        }
+
+        public InvocationDeadline getDeadline() {
+            return deadline;
+        }
+    }
+
+    private static final class Lane {
+        boolean running;
+        // Created on first contention; most stripes never queue anything
+        ArrayDeque<Pending> waiting;
+
+        int depth() {
+            return waiting == null ? 0 : waiting.size();
+        }
+    }
+
+    private final ModelMetadata metadata;
+    private final boolean nullsWritten;
+    private final Lane[] lanes;
+    private final int stripeMask;
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    private int peakDepth;
+    private int peakStripe;
+
+    /**
+     * @param stripes      number of stripes, rounded up to a power of two
+     * @param nullsWritten whether the write engine writes null columns, i.e. every write covers every column
+     */
+    public WriteLanes(Class<?> modelClass, int stripes, boolean nullsWritten) {
+        if (stripes < 1 || stripes > 1 << 20) {
+            throw new IllegalArgumentException("WriteLanes stripes must be in [1, 2^20]: " + stripes);
+        }
+        this.metadata = ModelMetadata.of(modelClass);
+        this.nullsWritten = nullsWritten;
+        int size = Integer.highestOneBit(stripes) == stripes ? stripes : Integer.highestOneBit(stripes) << 1;
+        this.lanes = new Lane[size];
+        for (int i = 0; i < size; i++) {
+            lanes[i] = new Lane();
+        }
+        this.stripeMask = size - 1;
+    }
+
+    /**
+     * The lanes of a model per the configuration, or null when WRITE_LANE_STRIPES is 0.
+     */
+    public static WriteLanes fromConfig(Class<?> modelClass, EnvironmentConfig config) {
+        if (config.getWriteLaneStripes() <= 0) {
+            return null;
+        }
+        WriteLanes lanes = new WriteLanes(modelClass, config.getWriteLaneStripes(),
+                config.getWriteEngine() == WriteEngine.Kind.MAPPER);
+        log.info("WriteLanes enabled for model={}, stripes={}", modelClass.getSimpleName(), lanes.lanes.length);
+        return lanes;
+    }
+
+    public int stripeOf(Object partitionKey) {
+        int h = partitionKey.hashCode();
+        return (h ^ (h >>> 16)) & stripeMask;
+    }
+
+    /**
+     * Admits a request whose entities all share {@code pending.getKey()}.
+     */
+    public Admission offer(Pending pending) {
+        int stripe = stripeOf(pending.key);
+        Lane lane = lanes[stripe];
+        int depth;
+        synchronized (lane) {
+            if (!lane.running) {
+                lane.running = true;
+                return Admission.RUN;
+            }
+            if (lane.waiting == null) {
+                lane.waiting = new ArrayDeque<>();
+            } else if (collapse(lane.waiting, pending)) {
+                collapsed.increment();
+                return Admission.COLLAPSED;
+            }
+            lane.waiting.addLast(pending);
+            depth = lane.waiting.size();
+        }
+        queued.increment();
+        recordDepth(stripe, depth);
+        return Admission.QUEUED;
+    }
+
+    /**
+     * Called once the running request of {@code key}'s stripe completed, retries included.
+     *
+     * @return the next request of the stripe, which the caller now runs, or null when the stripe is idle again
+     */
+    public Pending next(Object key) {
+        Lane lane = lanes[stripeOf(key)];
+        synchronized (lane) {
+            Pending next = lane.waiting == null ? null : lane.waiting.pollFirst();
+            if (next == null) {
+                lane.running = false;
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Merges {@code incoming} into the last waiting request of its key, if both write a single entity and the
+     * newer of the two covers the other's columns. The caller holds the lane's lock.
+     */
+    private boolean collapse(ArrayDeque<Pending> waiting, Pending incoming) {
+        if (incoming.request.size() != 1) {
+            return false;
+        }
+        for (Iterator<Pending> it = waiting.descendingIterator(); it.hasNext(); ) {
+            Pending queued = it.next();
+            if (!queued.key.equals(incoming.key)) {
+                continue;
+            }
+            if (queued.request.size() != 1) {
+                return false;
+            }
+            Object waitingEntity = queued.request.get(0);
+            Object incomingEntity = incoming.request.get(0);
+            boolean incomingWins = metadata.versionOf(incomingEntity) >= metadata.versionOf(waitingEntity);
+            Object winner = incomingWins ? incomingEntity : waitingEntity;
+            Object loser = incomingWins ? waitingEntity : incomingEntity;
+            if (!covers(winner, loser)) {
+                return false;
+            }
+            queued.request = Collections.singletonList(winner);
+            queued.result.whenComplete((v, t) -> {
+                if (t == null) {
+                    incoming.result.complete(null);
+                } else {
+                    incoming.result.completeExceptionally(t);
+                }
+            });
+            return true;
+        }
+        return false;
+    }
+
+    private boolean covers(Object winner, Object loser) {
+        return nullsWritten || metadata.covers(winner, loser);
+    }
+
+    private synchronized void recordDepth(int stripe, int depth) {
+        if (depth > peakDepth) {
+            peakDepth = depth;
+            peakStripe = stripe;
+        }
+    }
+
+    /**
+     * A snapshot of the number of requests waiting in each stripe.
+     */
+    public int[] depths() {
+        int[] depths = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            synchronized (lanes[i]) {
+                depths[i] = lanes[i].depth();
+            }
+        }
+        return depths;
+    }
+
+    public Stats stats() {
+        int waiting = 0;
+        int maxDepth = 0;
+        int hottestStripe = -1;
+        int[] depths = depths();
+        for (int i = 0; i < depths.length; i++) {
+            waiting += depths[i];
+            if (depths[i] > maxDepth) {
+                maxDepth = depths[i];
+                hottestStripe = i;
+            }
+        }
+        synchronized (this) {
+            return new Stats(lanes.length, waiting, maxDepth, hottestStripe, peakDepth, peakDepth == 0 ? -1 : peakStripe,
+                    queued.sum(), collapsed.sum());
+        }
+    }
+
+    @Value
+    public static class Stats {
+        int stripes;
+        /** Requests waiting in any stripe right now */
+        int waiting;
+        /** Depth of the deepest stripe right now, and that stripe (-1 when none waits) */
+        int maxDepth;
+        int hottestStripe;
+        /** Deepest any stripe has been since the container started, and that stripe (-1 when never) */
+        int peakDepth;
+        int peakStripe;
+        /** Requests that waited behind another one of their stripe since the container started */
+        long queued;
+        /** Requests collapsed into a newer one of the same key since the container started */
+        long collapsed;
+    }
+}
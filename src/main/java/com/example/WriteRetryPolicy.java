@@ -0,0 +1,85 @@
+package com.example;
+
+import com.datastax.driver.core.exceptions.BootstrappingException;
+import com.datastax.driver.core.exceptions.BusyConnectionException;
+import com.datastax.driver.core.exceptions.BusyPoolException;
+import com.datastax.driver.core.exceptions.ConnectionException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.QueryExecutionException;
+import com.datastax.driver.core.exceptions.UnavailableException;
+import lombok.Value;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often and how patiently AsyncCassandraWriter retries a failed write request inside one invocation.
+ * Delays grow exponentially from baseDelayMs up to maxDelayMs, with full jitter so retries of a burst of
+ * failures do not hit the cluster in lockstep.
+ */
+@Value
+public class WriteRetryPolicy {
+
+    /** Total attempts per request, including the first one. */
+    int maxAttempts;
+    long baseDelayMs;
+    long maxDelayMs;
+
+    public static WriteRetryPolicy fromConfig(EnvironmentConfig config) {
+        return new WriteRetryPolicy(config.getWriteMaxAttempts(), config.getWriteRetryBaseDelayMs(),
+                config.getWriteRetryMaxDelayMs());
+    }
+
+    /**
+     * @param attempt the attempt that just failed, starting at 1
+     */
+    public long delayMillis(int attempt) {
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Timeouts, unavailable replicas, overload and connection problems are transient; invalid queries,
+     * codec errors and anything else raised while building the statement are not.
+     *
+     * A write of a non-idempotent model (ModelMetadata#isIdempotent) is only resent after a transient failure
+     * that guarantees it was not applied: a write timeout or a lost connection may come after the replicas
+     * applied it, and resending would append its list elements again.
+     */
+    public static boolean isRetryable(Throwable t, boolean idempotent) {
+        t = unwrap(t);
+        if (!idempotent) {
+            return isNotApplied(t);
+        }
+        return t instanceof QueryExecutionException
+                || t instanceof NoHostAvailableException
+                || t instanceof ConnectionException
+                || AsyncCassandraWriter.isOverload(t);
+    }
+
+    /**
+     * Whether a failed write may nevertheless have been applied, so that writing it again is only safe for an
+     * idempotent model. Only failures known to happen before any replica applied the write say it was not.
+     */
+    public static boolean mayHaveBeenApplied(Throwable t) {
+        return !isNotApplied(unwrap(t));
+    }
+
+    /**
+     * Failures raised before the write reached a replica: no host could be tried, the coordinator refused it
+     * (not enough replicas alive, overloaded, bootstrapping), or the driver never sent it (busy pool or connection).
+     */
+    private static boolean isNotApplied(Throwable t) {
+        return t instanceof NoHostAvailableException
+                || t instanceof UnavailableException
+                || t instanceof OverloadedException
+                || t instanceof BootstrappingException
+                || t instanceof BusyPoolException
+                || t instanceof BusyConnectionException;
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+}
@@ -0,0 +1,298 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local disk spool for entities whose write still failed after in-invocation retries.
+ *
+ * Instead of failing the invocation (and having the event source rewrite the whole batch), failed entities are
+ * spilled to a gzip'd file under /tmp; a warm container replays the spool at the start of its next invocation.
+ * Each file is written under a temporary name and renamed when complete, so a crash never leaves a partial
+ * file to replay. Only writes that are safe to send again are spilled: every write carries its @VersionKey as
+ * USING TIMESTAMP, so replaying one that was already applied rewrites the same cells, except the elements of a
+ * non-frozen list column, which get new cell names and are appended again. A failed write of a model with such
+ * a column that may have been applied (AsyncCassandraWriter#takeUnreplayable) is dead-lettered instead.
+ *
+ * Entities keep their RouteKey, so a replay writes each one back to the table it failed to be written to.
+ *
+ * Each entity also keeps the number of invocations its write failed in. One that failed maxAttempts times is
+ * moved to a dead-letter file instead of being spilled again, so a poison write is not replayed forever.
+ * Dead-letter files have the spool layout, are never replayed and count towards maxBytes until removed.
+ *
+ * File layout: MAGIC, then per entity: model class name (UTF), whether a table follows (boolean), the table
+ * (UTF), attempts (int), JSON length (int), JSON bytes. Files starting with any other magic are rejected.
+ */
+@Slf4j
+public class WriteSpool {
+
+    private static final int MAGIC = 0x53504F33; // "SPO3"
+    private static final String SUFFIX = ".spool";
+    private static final String DEAD_LETTER_SUFFIX = ".dead";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final AtomicLong FILE_IDS = new AtomicLong();
+
+    private final Path dir;
+    private final long maxBytes;
+    private final int maxAttempts;
+
+    /**
+     * @param maxAttempts number of invocations an entity's write may fail in before it is dead-lettered
+     */
+    public WriteSpool(Path dir, long maxBytes, int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Spool max attempts must be at least 1: " + maxAttempts);
+        }
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public static WriteSpool fromConfig(EnvironmentConfig config) {
+        return new WriteSpool(Paths.get(config.getSpoolDir()), config.getSpoolMaxBytes(), config.getSpoolMaxAttempts());
+    }
+
+    /**
+     * Same as {@link #spill(Map, Pending, Set)} with every entity safe to replay.
+     */
+    public int spill(Map<RouteKey, List<Object>> entitiesByRoute, Pending replayed) throws IOException {
+        return spill(entitiesByRoute, replayed, Collections.emptySet());
+    }
+
+    /**
+     * Writes the entities to a new spool file, except those whose write now failed in maxAttempts invocations
+     * or must not be replayed: they go to a new dead-letter file.
+     *
+     * @param replayed the spool entries this invocation replayed, whose attempts the failed ones continue;
+     *                 null when nothing was replayed
+     * @param unreplayable entities, by identity, whose write may have been applied and cannot be sent again
+     * @return the number of entities dead-lettered
+     * @throws IOException if a file cannot be written or the spool would exceed its size limit; nothing is
+     *                     written then
+     */
+    public int spill(Map<RouteKey, List<Object>> entitiesByRoute, Pending replayed, Set<Object> unreplayable)
+            throws IOException {
+        List<Entry> spilled = new ArrayList<>();
+        List<Entry> deadLetters = new ArrayList<>();
+        for (Map.Entry<RouteKey, List<Object>> route : entitiesByRoute.entrySet()) {
+            for (Object entity : route.getValue()) {
+                int attempts = (replayed == null ? 0 : replayed.attemptsOf(entity)) + 1;
+                boolean dead = attempts >= maxAttempts || unreplayable.contains(entity);
+                (dead ? deadLetters : spilled).add(new Entry(route.getKey(), entity, attempts));
+            }
+        }
+        if (spilled.isEmpty() && deadLetters.isEmpty()) {
+            return 0;
+        }
+        Files.createDirectories(dir);
+        String name = "spool-" + System.currentTimeMillis() + "-" + FILE_IDS.incrementAndGet();
+        Path spillTmp = dir.resolve(name + SUFFIX + ".tmp");
+        Path deadTmp = dir.resolve(name + DEAD_LETTER_SUFFIX + ".tmp");
+        try {
+            write(spillTmp, spilled);
+            write(deadTmp, deadLetters);
+            long total = sizeOnDisk();
+            if (total > maxBytes) {
+                throw new IOException("Spool " + dir + " would exceed " + maxBytes + " bytes (" + total + ")");
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(spillTmp);
+            Files.deleteIfExists(deadTmp);
+            throw e;
+        }
+        if (!spilled.isEmpty()) {
+            Path target = dir.resolve(name + SUFFIX);
+            Files.move(spillTmp, target, StandardCopyOption.ATOMIC_MOVE);
+            log.warn("Spilled {} failed write(s) to {} ({} bytes).", spilled.size(), target, Files.size(target));
+        }
+        if (!deadLetters.isEmpty()) {
+            Path target = dir.resolve(name + DEAD_LETTER_SUFFIX);
+            Files.move(deadTmp, target, StandardCopyOption.ATOMIC_MOVE);
+            log.error("Dead-lettered {} write(s) that failed in {} invocation(s) or may have been applied to {};"
+                    + " they are not replayed.", deadLetters.size(), maxAttempts, target);
+        }
+        return deadLetters.size();
+    }
+
+    /**
+     * Writes the entries to {@code file}, unless there are none.
+     */
+    private static void write(Path file, List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            for (Entry entry : entries) {
+                String table = entry.route.getTable();
+                byte[] json = MAPPER.writeValueAsBytes(entry.entity);
+                out.writeUTF(entry.route.getModelClass().getName());
+                out.writeBoolean(table != null);
+                out.writeUTF(table == null ? "" : table);
+                out.writeInt(entry.attempts);
+                out.writeInt(json.length);
+                out.write(json);
+            }
+        }
+    }
+
+    /**
+     * Reads every complete spool file. The files stay on disk until {@link Pending#delete()} is called,
+     * which callers do only after the replayed entities were written or spilled again.
+     */
+    public Pending pending() throws IOException {
+        return read("*" + SUFFIX);
+    }
+
+    /**
+     * Reads every dead-letter file, for inspection; they are never replayed.
+     */
+    public Pending deadLetters() throws IOException {
+        return read("*" + DEAD_LETTER_SUFFIX);
+    }
+
+    private Pending read(String glob) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new Pending(Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap());
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        Map<RouteKey, List<Object>> byRoute = new LinkedHashMap<>();
+        Map<Object, Integer> attempts = new IdentityHashMap<>();
+        for (Path file : files) {
+            read(file, byRoute, attempts);
+        }
+        return new Pending(files, byRoute, attempts);
+    }
+
+    private static void read(Path file, Map<RouteKey, List<Object>> byRoute, Map<Object, Integer> attempts)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a spool file: " + file);
+            }
+            while (true) {
+                String className;
+                try {
+                    className = in.readUTF();
+                } catch (EOFException end) {
+                    return;
+                }
+                boolean hasTable = in.readBoolean();
+                String name = in.readUTF();
+                String table = hasTable ? name : null;
+                int failedAttempts = in.readInt();
+                byte[] json = new byte[in.readInt()];
+                in.readFully(json);
+                Class<?> modelClass;
+                try {
+                    modelClass = Class.forName(className);
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Unknown model class in spool file " + file + ": " + className, e);
+                }
+                Object entity = MAPPER.readValue(json, modelClass);
+                byRoute.computeIfAbsent(new RouteKey(modelClass, table), k -> new ArrayList<>()).add(entity);
+                attempts.put(entity, failedAttempts);
+            }
+        }
+    }
+
+    private long sizeOnDisk() throws IOException {
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                total += Files.size(file);
+            }
+        }
+        return total;
+    }
+
+    private static final class Entry {
+        private final RouteKey route;
+        private final Object entity;
+        private final int attempts;
+
+        private Entry(RouteKey route, Object entity, int attempts) {
+            this.route = route;
+            this.entity = entity;
+            this.attempts = attempts;
+        }
+    }
+
+    /**
+     * Entities read from the spool, grouped by the route they failed to be written with, and the files they
+     * came from.
+     */
+    public static class Pending {
+
+        private final List<Path> files;
+        private final Map<RouteKey, List<Object>> entitiesByRoute;
+        private final Map<Object, Integer> attempts;
+
+        Pending(List<Path> files, Map<RouteKey, List<Object>> entitiesByRoute, Map<Object, Integer> attempts) {
+            this.files = files;
+            this.entitiesByRoute = entitiesByRoute;
+            this.attempts = attempts;
+        }
+
+        public boolean isEmpty() {
+            return files.isEmpty();
+        }
+
+        public Map<RouteKey, List<Object>> getEntitiesByRoute() {
+            return entitiesByRoute;
+        }
+
+        public int size() {
+            int size = 0;
+            for (List<Object> entities : entitiesByRoute.values()) {
+                size += entities.size();
+            }
+            return size;
+        }
+
+        /**
+         * The number of invocations the write of one of these entities (by identity) failed in, or 0 for any
+         * other entity.
+         */
+        public int attemptsOf(Object entity) {
+            Integer failed = attempts.get(entity);
+            return failed == null ? 0 : failed;
+        }
+
+        public void delete() throws IOException {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
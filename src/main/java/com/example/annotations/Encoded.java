@@ -0,0 +1,19 @@
+package com.example.annotations;
+
+import com.example.ColumnEncoding;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Stores a nested field (e.g. a List of options or a Map of maps) as a compact binary blob column instead
+ * of a CQL collection, e.g. {@code @Encoded(ColumnEncoding.SMILE_LZ4) private List<DishOption> dishOptions;}.
+ * The table column must be of type blob.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Encoded {
+    ColumnEncoding value();
+}
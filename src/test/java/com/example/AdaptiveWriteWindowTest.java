@@ -0,0 +1,113 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveWriteWindowTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void growsOnFastAcksAndHalvesOnOverload() throws Exception {
+        AdaptiveWriteWindow window = new AdaptiveWriteWindow(2, 64, 100);
+        assertEquals(2, window.stats().getWindowSize());
+
+        // Slow start: each ack adds one permit
+        for (int i = 0; i < 30; i++) {
+            window.acquire();
+            window.release(FAST, true, false);
+        }
+        assertEquals(32, window.stats().getWindowSize());
+
+        window.acquire();
+        window.release(FAST, false, true);
+        AdaptiveWriteWindow.Stats afterTimeout = window.stats();
+        assertEquals(16, afterTimeout.getWindowSize());
+        assertEquals(30, afterTimeout.getCompleted());
+        assertEquals(1, afterTimeout.getFailed());
+
+        // A second failure inside the cooldown is the same congestion event
+        window.acquire();
+        window.release(FAST, false, true);
+        assertEquals(16, window.stats().getWindowSize());
+
+        // Congestion avoidance: about +1 per full window of acks
+        for (int i = 0; i < 17; i++) {
+            window.acquire();
+            window.release(FAST, true, false);
+        }
+        assertEquals(17, window.stats().getWindowSize());
+    }
+
+    @Test
+    void blocksSubmissionsBeyondTheWindow() throws Exception {
+        AdaptiveWriteWindow window = new AdaptiveWriteWindow(1, 1, 100);
+        window.acquire();
+        assertEquals(0, window.stats().getQueued());
+
+        Thread second = new Thread(() -> {
+            try {
+                window.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        second.start();
+        second.join(50);
+        assertTrue(second.isAlive());
+        assertEquals(1, window.stats().getQueued());
+
+        window.release(FAST, true, false);
+        second.join(1000);
+        assertFalse(second.isAlive());
+        assertEquals(1, window.stats().getInFlight());
+        assertEquals(0, window.stats().getQueued());
+    }
+
+    @Test
+    void waitThatTimesOutIsNoLongerQueued() throws Exception {
+        AdaptiveWriteWindow window = new AdaptiveWriteWindow(1, 1, 100);
+        window.acquire();
+
+        assertFalse(window.tryAcquire(10));
+        assertFalse(window.tryAcquire());
+        assertEquals(0, window.stats().getQueued());
+        assertEquals(1, window.stats().getInFlight());
+    }
+
+    @Test
+    void releasedPermitGoesToAsyncWaitersBeforeBlockedCallers() throws Exception {
+        AdaptiveWriteWindow window = new AdaptiveWriteWindow(1, 1, 100);
+        window.acquire();
+
+        CountDownLatch follower = new CountDownLatch(1);
+        window.acquireAsync(Runnable::run, follower::countDown);
+        Thread submitter = new Thread(() -> {
+            try {
+                window.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        submitter.join(50);
+        assertEquals(2, window.stats().getQueued());
+        // A free permit is not taken past a queued waiter either
+        assertFalse(window.tryAcquire());
+
+        window.release(FAST, true, false);
+        assertTrue(follower.await(1, TimeUnit.SECONDS));
+        submitter.join(50);
+        assertTrue(submitter.isAlive(), "the follower holds the only permit");
+        assertEquals(1, window.stats().getQueued());
+
+        window.release(FAST, true, false);
+        submitter.join(1000);
+        assertFalse(submitter.isAlive());
+        assertEquals(0, window.stats().getQueued());
+    }
+}
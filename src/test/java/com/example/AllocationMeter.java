@@ -0,0 +1,45 @@
+package com.example;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the bytes the current thread allocates per call of an action, from HotSpot's per-thread allocation
+ * counter (com.sun.management.ThreadMXBean). A quick in-test counterpart to the JMH gc profiler's
+ * gc.alloc.rate.norm: run enough warm-up calls for the action to be compiled, or interpreter and class-loading
+ * allocations are counted too.
+ */
+public final class AllocationMeter {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** An action whose allocations are measured; the argument is the call's index. */
+    @FunctionalInterface
+    public interface Action {
+        void run(int call) throws Exception;
+    }
+
+    private AllocationMeter() {
+    }
+
+    /**
+     * Runs {@code action} {@code warmup} times unmeasured, then {@code calls} times.
+     *
+     * @return the mean bytes allocated per measured call
+     */
+    public static double bytesPerCall(int warmup, int calls, Action action) throws Exception {
+        if (!THREADS.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("Thread allocation accounting is not supported by this JVM");
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        for (int i = 0; i < warmup; i++) {
+            action.run(i);
+        }
+        long before = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < calls; i++) {
+            action.run(i);
+        }
+        long after = THREADS.getCurrentThreadAllocatedBytes();
+        return (double) (after - before) / calls;
+    }
+}
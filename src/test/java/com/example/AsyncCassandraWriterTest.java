@@ -0,0 +1,115 @@
+package com.example;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.exceptions.UnavailableException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.TestUtils.dish;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncCassandraWriterTest {
+
+    @Test
+    void batchesAreCutAtBatchMaxStatementsAndNeverMixPartitions() {
+        List<List<Object>> requests = Collections.synchronizedList(new ArrayList<>());
+        CassandraSession.RowWriter rows = (entities, timestamps) -> {
+            requests.add(new ArrayList<>(entities));
+            return CompletableFuture.completedFuture(null);
+        };
+        AsyncCassandraWriter writer = new AsyncCassandraWriter(AsyncCassandraWriter.Settings.builder()
+                .rows(rows)
+                .modelClass(Dish.class)
+                .window(new AdaptiveWriteWindow(64, 64, 1000))
+                .batchMaxStatements(3)
+                .retryPolicy(WriteRetryPolicy.fromConfig(EnvironmentConfig.builder().writeMaxAttempts(1).build()))
+                .build());
+        List<Object> items = new ArrayList<>();
+        for (long version = 1; version <= 7; version++) {
+            items.add(dish(1L, version));
+            if (version <= 3) {
+                items.add(dish(3L, version));
+            }
+            if (version <= 2) {
+                items.add(dish(2L, version));
+            }
+        }
+        items.add(dish(null, 1L, null));
+
+        assertTrue(writer.writeAsync(items).join().isEmpty());
+
+        Map<Long, List<Integer>> sizesByPartition = new HashMap<>();
+        int written = 0;
+        for (List<Object> request : requests) {
+            assertTrue(request.size() <= 3, "request of " + request.size());
+            Long partition = ((Dish) request.get(0)).getId();
+            for (Object entity : request) {
+                assertEquals(partition, ((Dish) entity).getId(), "mixed partitions in " + request);
+            }
+            sizesByPartition.computeIfAbsent(partition, p -> new ArrayList<>()).add(request.size());
+            written += request.size();
+        }
+        assertEquals(items.size(), written);
+        assertEquals(List.of(3, 3, 1), sizesByPartition.get(1L));
+        assertEquals(List.of(2), sizesByPartition.get(2L));
+        assertEquals(List.of(3), sizesByPartition.get(3L));
+        // Entities without a partition key are sent alone
+        assertEquals(List.of(1), sizesByPartition.get(null));
+    }
+
+    @Test
+    void ambiguousFailuresAreOnlyRetriedForIdempotentModels() {
+        Throwable writeTimeout = new WriteTimeoutException(ConsistencyLevel.LOCAL_QUORUM, WriteType.SIMPLE, 1, 2);
+        Throwable unavailable = new UnavailableException(ConsistencyLevel.LOCAL_QUORUM, 2, 1);
+        ItemCatalog item = new ItemCatalog();
+        item.setItemId(1L);
+        item.setVersion(10L);
+        Dish timedOut = dish(1L, 10L);
+
+        // Dish has non-frozen list columns: a timed out write may have been applied, so it is neither resent
+        // nor replayable
+        AtomicInteger requests = new AtomicInteger();
+        AsyncCassandraWriter dishes = failingOnce(Dish.class, writeTimeout, requests);
+        assertEquals(List.of(timedOut), dishes.writeAsync(List.of(timedOut)).join());
+        assertEquals(1, requests.get());
+        Set<Object> unreplayable = dishes.takeUnreplayable();
+        assertEquals(1, unreplayable.size());
+        assertTrue(unreplayable.contains(timedOut));
+        assertTrue(dishes.takeUnreplayable().isEmpty());
+
+        // An unavailable coordinator applied nothing, so even a Dish is resent
+        requests.set(0);
+        AsyncCassandraWriter refused = failingOnce(Dish.class, unavailable, requests);
+        assertTrue(refused.writeAsync(List.of(dish(2L, 20L))).join().isEmpty());
+        assertEquals(2, requests.get());
+        assertTrue(refused.takeUnreplayable().isEmpty());
+
+        requests.set(0);
+        AsyncCassandraWriter items = failingOnce(ItemCatalog.class, writeTimeout, requests);
+        assertTrue(items.writeAsync(List.of(item)).join().isEmpty());
+        assertEquals(2, requests.get());
+    }
+
+    /**
+     * A writer whose first request fails with {@code failure}, retrying up to 3 times; requests are counted.
+     */
+    private static AsyncCassandraWriter failingOnce(Class<?> modelClass, Throwable failure, AtomicInteger requests) {
+        return new AsyncCassandraWriter(AsyncCassandraWriter.Settings.builder()
+                .rows((entities, timestamps) -> requests.incrementAndGet() == 1
+                        ? CompletableFuture.failedFuture(failure)
+                        : CompletableFuture.completedFuture(null))
+                .modelClass(modelClass)
+                .retryPolicy(new WriteRetryPolicy(3, 1, 1))
+                .build());
+    }
+}
@@ -0,0 +1,66 @@
+package com.example;
+
+import com.datastax.driver.core.ProtocolVersion;
+import com.example.annotations.Encoded;
+import com.example.annotations.PartitionKey;
+import com.example.annotations.VersionKey;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlobColumnCodecTest {
+
+    @Test
+    void everyEncodingRoundTripsNestedValues() throws Exception {
+        Dish dish = KafkaEventGenerator.builder().dishOptions(4).optionItemsPerOption(4).openHours(7).build()
+                .dish(1, 1, new Random(7));
+        Map<String, Map<String, Map<String, String>>> attributes =
+                ItemCatalogRecords.dto(1, 1, 4).getReconciledAttributes();
+
+        int jsonBytes = 0;
+        for (ColumnEncoding encoding : ColumnEncoding.values()) {
+            BlobColumnCodec<List<DishOption>> options =
+                    new BlobColumnCodec<>(Dish.class.getDeclaredField("dishOptions").getGenericType(), encoding);
+            BlobColumnCodec<Map<String, Map<String, Map<String, String>>>> reconciled =
+                    new BlobColumnCodec<>(ItemCatalog.class.getDeclaredField("reconciledAttributes").getGenericType(), encoding);
+
+            ByteBuffer encoded = options.serialize(dish.getDishOptions(), ProtocolVersion.V4);
+            assertEquals(dish.getDishOptions(), options.deserialize(encoded, ProtocolVersion.V4), encoding.name());
+            assertEquals(attributes, reconciled.parse(reconciled.format(attributes)), encoding.name());
+
+            if (encoding == ColumnEncoding.JSON) {
+                jsonBytes = encoded.remaining();
+            } else {
+                assertTrue(encoded.remaining() < jsonBytes, encoding + " is not smaller than JSON");
+            }
+        }
+    }
+
+    @Test
+    void encodedColumnsAreBoundAsBlobs() {
+        ModelMetadata metadata = ModelMetadata.of(Compact.class);
+        ModelMetadata.Column options = metadata.getColumns().get(2);
+        Compact entity = new Compact();
+        entity.options = List.of("a", "b");
+
+        assertEquals(1, metadata.getCodecs().size());
+        assertEquals(ColumnEncoding.CBOR_LZ4, options.getCodec().getEncoding());
+        assertInstanceOf(ByteBuffer.class, options.getForWrite(entity));
+        assertEquals(entity.options, options.getCodec().decode((ByteBuffer) options.getForWrite(entity)));
+        assertNull(metadata.getColumns().get(0).getCodec());
+    }
+
+    static class Compact {
+        @PartitionKey
+        private Long id;
+        @VersionKey
+        private Long version;
+        @Encoded(ColumnEncoding.CBOR_LZ4)
+        private List<String> options;
+    }
+}
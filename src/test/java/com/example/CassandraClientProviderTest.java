@@ -0,0 +1,129 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CassandraClientProviderTest {
+
+    private static final int INVOCATIONS = 5;
+
+    @Test
+    void warmInvocationsReuseTheSessionAndSkipSetup() {
+        AtomicInteger connects = new AtomicInteger();
+        Supplier<CassandraSession> connector = () -> {
+            connects.incrementAndGet();
+            return new DriverCassandraSession(TestUtils.stubSession(new AtomicBoolean()));
+        };
+
+        // Before: every invocation built its own provider and connected again
+        for (int i = 0; i < INVOCATIONS; i++) {
+            new CassandraClientProvider(connector).getSession();
+        }
+        assertEquals(INVOCATIONS, connects.get());
+
+        // After: one container-scoped provider, cold start paid once
+        CassandraClientProvider provider = new CassandraClientProvider(connector);
+        CassandraSession cold = provider.getSession();
+        for (int i = 0; i < INVOCATIONS; i++) {
+            assertSame(cold, provider.getSession());
+        }
+        assertEquals(INVOCATIONS + 1, connects.get());
+    }
+
+    @Test
+    void callersArrivingDuringTheColdStartWaitForItsSession() throws Exception {
+        AtomicInteger connects = new AtomicInteger();
+        CountDownLatch connecting = new CountDownLatch(1);
+        CountDownLatch connected = new CountDownLatch(1);
+        CassandraClientProvider provider = new CassandraClientProvider(() -> {
+            connects.incrementAndGet();
+            connecting.countDown();
+            try {
+                // Stands in for Cluster.build() + connect() against a real cluster
+                assertTrue(connected.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new DriverCassandraSession(TestUtils.stubSession(new AtomicBoolean()));
+        });
+        ExecutorService callers = Executors.newFixedThreadPool(INVOCATIONS);
+        try {
+            Future<CassandraSession> cold = callers.submit(provider::getSession);
+            assertTrue(connecting.await(5, TimeUnit.SECONDS));
+            List<Future<CassandraSession>> warm = new ArrayList<>();
+            for (int i = 1; i < INVOCATIONS; i++) {
+                warm.add(callers.submit(provider::getSession));
+            }
+            connected.countDown();
+
+            CassandraSession session = cold.get(5, TimeUnit.SECONDS);
+            for (Future<CassandraSession> caller : warm) {
+                assertSame(session, caller.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, connects.get());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void reconnectsWhenTheSessionWasClosed() {
+        AtomicBoolean closed = new AtomicBoolean();
+        AtomicInteger connects = new AtomicInteger();
+        CassandraClientProvider provider = new CassandraClientProvider(() -> {
+            connects.incrementAndGet();
+            closed.set(false);
+            return new DriverCassandraSession(TestUtils.stubSession(closed));
+        });
+
+        provider.getSession();
+        assertTrue(provider.isHealthy());
+
+        closed.set(true);
+        assertFalse(provider.isHealthy());
+        provider.getSession();
+
+        assertEquals(2, connects.get());
+        assertTrue(provider.isHealthy());
+    }
+
+    @Test
+    void reconnectsKeepTheChangeCacheAndVersionGuardOfEachRoute() {
+        CassandraClientProvider provider = new CassandraClientProvider(() -> InMemoryCassandraSession.builder().build());
+        EnvironmentConfig config = EnvironmentConfig.builder()
+                .cassandraTableName("dish")
+                .changeCacheMaxBytes(1 << 20)
+                .versionGuardMaxKeys(1024)
+                .build();
+
+        AsyncCassandraWriter before = provider.writerFor(Dish.class, config);
+        assertNotNull(before.getChangeCache());
+        assertNotNull(before.getVersionGuard());
+        // An unhealthy session and an explicit close (SnapStart's afterRestore) both rebuild the writer
+        provider.getSession().close();
+        AsyncCassandraWriter reconnected = provider.writerFor(Dish.class, config);
+        provider.close();
+        AsyncCassandraWriter restored = provider.writerFor(Dish.class, config);
+
+        assertNotSame(before, reconnected);
+        assertNotSame(reconnected, restored);
+        for (AsyncCassandraWriter writer : List.of(reconnected, restored)) {
+            assertSame(before.getChangeCache(), writer.getChangeCache());
+            assertSame(before.getVersionGuard(), writer.getVersionGuard());
+        }
+        AsyncCassandraWriter archive = provider.writerFor(Dish.class, config.toBuilder().cassandraTableName("dish_archive").build());
+        assertNotSame(before.getVersionGuard(), archive.getVersionGuard());
+    }
+}
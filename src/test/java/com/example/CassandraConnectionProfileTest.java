@@ -0,0 +1,223 @@
+package com.example;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.ProtocolOptions;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.NoSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CassandraConnectionProfileTest {
+
+    @Test
+    void loadsEverySettingFromTheEnvironment() {
+        Map<String, String> env = new HashMap<>();
+        env.put("CASSANDRA_CONTACT_POINTS", "10.0.0.1, 10.0.0.2");
+        env.put("CASSANDRA_PORT", "9142");
+        env.put("CASSANDRA_LOCAL_DC", "dc2");
+        env.put("CASSANDRA_CLUSTER", "catalog");
+        env.put("CASSANDRA_KEYSPACE", "store");
+        env.put("CASSANDRA_COMPRESSION", "snappy");
+        env.put("CASSANDRA_CORE_CONNECTIONS_PER_HOST", "2");
+        env.put("CASSANDRA_MAX_CONNECTIONS_PER_HOST", "4");
+        env.put("CASSANDRA_MAX_REQUESTS_PER_CONNECTION", "2048");
+        env.put("CASSANDRA_POOL_TIMEOUT_MS", "100");
+        env.put("CASSANDRA_MAX_QUEUE_SIZE", "64");
+        env.put("CASSANDRA_TOKEN_AWARE", "false");
+        env.put("CASSANDRA_CONNECT_TIMEOUT_MS", "1000");
+        env.put("CASSANDRA_READ_TIMEOUT_MS", "3000");
+        env.put("CASSANDRA_STATEMENT_TIMEOUT_MS", "800");
+        env.put("CASSANDRA_SPECULATIVE_DELAY_MS", "40");
+        env.put("CASSANDRA_SPECULATIVE_MAX_EXECUTIONS", "2");
+
+        CassandraConnectionProfile profile = CassandraConnectionProfile.fromEnv(env::get);
+
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), profile.getContactPoints());
+        assertEquals(9142, profile.getPort());
+        assertEquals("dc2", profile.getLocalDc());
+        assertEquals("catalog", profile.getClusterName());
+        assertEquals("store", profile.getKeyspace());
+        assertEquals(ProtocolOptions.Compression.SNAPPY, profile.getCompression());
+        assertEquals(2, profile.getCoreConnectionsPerHost());
+        assertEquals(4, profile.getMaxConnectionsPerHost());
+        assertEquals(2048, profile.getMaxRequestsPerConnection());
+        assertEquals(100, profile.getPoolTimeoutMs());
+        assertEquals(64, profile.getMaxQueueSize());
+        assertFalse(profile.isTokenAware());
+        assertEquals(1000, profile.getConnectTimeoutMs());
+        assertEquals(3000, profile.getReadTimeoutMs());
+        assertEquals(800, profile.getStatementTimeoutMs());
+        assertEquals(40, profile.getSpeculativeDelayMs());
+        assertEquals(2, profile.getSpeculativeMaxExecutions());
+    }
+
+    @Test
+    void defaultsToCompressedTokenAwareConnections() {
+        CassandraConnectionProfile profile = CassandraConnectionProfile.fromEnv(name -> null);
+
+        assertEquals(Collections.singletonList("localhost"), profile.getContactPoints());
+        assertEquals(ProtocolOptions.Compression.LZ4, profile.getCompression());
+        assertTrue(profile.isTokenAware());
+        assertNull(profile.getKeyspace());
+        assertEquals(0, profile.getSpeculativeDelayMs());
+    }
+
+    @Test
+    void rejectsInconsistentSettingsAtOnce() {
+        CassandraConnectionProfile profile = CassandraConnectionProfile.builder()
+                .coreConnectionsPerHost(4)
+                .maxConnectionsPerHost(2)
+                .maxRequestsPerConnection(40_000)
+                .statementTimeoutMs(100)
+                .speculativeDelayMs(100)
+                .build();
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, profile::validate);
+        assertTrue(e.getMessage().contains("core <= max"), e.getMessage());
+        assertTrue(e.getMessage().contains("CASSANDRA_MAX_REQUESTS_PER_CONNECTION"), e.getMessage());
+        assertTrue(e.getMessage().contains("CASSANDRA_SPECULATIVE_DELAY_MS"), e.getMessage());
+        assertThrows(IllegalArgumentException.class,
+                () -> CassandraConnectionProfile.fromEnv(name -> name.equals("CASSANDRA_PORT") ? "0" : null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CassandraClientProvider(profile.toBuilder().coreConnectionsPerHost(1).build()));
+    }
+
+    @Test
+    void appliesEverySettingToTheCluster() {
+        CassandraConnectionProfile profile = CassandraConnectionProfile.builder()
+                .contactPoints(Arrays.asList("10.0.0.1", "10.0.0.2"))
+                .port(9142)
+                .clusterName("catalog")
+                .compression(ProtocolOptions.Compression.SNAPPY)
+                .coreConnectionsPerHost(2)
+                .maxConnectionsPerHost(4)
+                .maxRequestsPerConnection(2048)
+                .poolTimeoutMs(100)
+                .maxQueueSize(64)
+                .connectTimeoutMs(1000)
+                .readTimeoutMs(3000)
+                .speculativeDelayMs(40)
+                .speculativeMaxExecutions(2)
+                .build();
+
+        Cluster.Builder builder = profile.clusterBuilder();
+        Configuration configuration = builder.getConfiguration();
+
+        assertEquals("catalog", builder.getClusterName());
+        assertEquals(2, builder.getContactPoints().size());
+        assertEquals(9142, configuration.getProtocolOptions().getPort());
+        assertEquals(ProtocolOptions.Compression.SNAPPY, configuration.getProtocolOptions().getCompression());
+        assertEquals(2, configuration.getPoolingOptions().getCoreConnectionsPerHost(HostDistance.LOCAL));
+        assertEquals(4, configuration.getPoolingOptions().getMaxConnectionsPerHost(HostDistance.LOCAL));
+        assertEquals(2048, configuration.getPoolingOptions().getMaxRequestsPerConnection(HostDistance.LOCAL));
+        assertEquals(100, configuration.getPoolingOptions().getPoolTimeoutMillis());
+        assertEquals(64, configuration.getPoolingOptions().getMaxQueueSize());
+        assertEquals(1000, configuration.getSocketOptions().getConnectTimeoutMillis());
+        assertEquals(3000, configuration.getSocketOptions().getReadTimeoutMillis());
+        assertInstanceOf(TokenAwarePolicy.class, configuration.getPolicies().getLoadBalancingPolicy());
+        assertInstanceOf(ConstantSpeculativeExecutionPolicy.class,
+                configuration.getPolicies().getSpeculativeExecutionPolicy());
+
+        Configuration plain = profile.toBuilder().tokenAware(false).speculativeDelayMs(0).build()
+                .clusterBuilder().getConfiguration();
+        assertInstanceOf(DCAwareRoundRobinPolicy.class, plain.getPolicies().getLoadBalancingPolicy());
+        assertInstanceOf(NoSpeculativeExecutionPolicy.class, plain.getPolicies().getSpeculativeExecutionPolicy());
+    }
+
+    @Test
+    void writesKeepTheEngineIdempotenceAndCarryTheStatementTimeout() {
+        List<Statement> executed = new ArrayList<>();
+        Session session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> {
+                    if ("executeAsync".equals(method.getName())) {
+                        executed.add((Statement) args[0]);
+                    }
+                    return null;
+                });
+        // Odd ids stand for entities whose statement is not idempotent
+        WriteEngine engine = (entity, timestamp) -> new SimpleStatement("INSERT INTO dish (id) VALUES (?) USING TIMESTAMP ?",
+                entity, timestamp).setIdempotent((Long) entity % 2 == 0);
+        CassandraConnectionProfile profile = CassandraConnectionProfile.builder().statementTimeoutMs(800).build();
+        CassandraSession.RowWriter writer = DriverCassandraSession.rowWriter(session, engine, profile);
+
+        // The stub returns no future; only the statement handed to the driver matters here
+        assertThrows(RuntimeException.class, () -> writer.writeAsync(Collections.singletonList(2L), new long[]{1}));
+        assertThrows(RuntimeException.class, () -> writer.writeAsync(Arrays.asList(2L, 4L), new long[]{1, 2}));
+        assertThrows(RuntimeException.class, () -> writer.writeAsync(Collections.singletonList(1L), new long[]{1}));
+        assertThrows(RuntimeException.class, () -> writer.writeAsync(Arrays.asList(2L, 3L), new long[]{1, 2}));
+
+        assertEquals(4, executed.size());
+        assertTrue(executed.get(0).isIdempotent());
+        assertTrue(executed.get(1).isIdempotent());
+        assertFalse(executed.get(2).isIdempotent());
+        assertFalse(executed.get(3).isIdempotent());
+        for (Statement statement : executed) {
+            assertEquals(800, statement.getReadTimeoutMillis());
+        }
+    }
+
+    @Test
+    void statementTimeoutIsBoundedByTheInvocationDeadline() {
+        CassandraConnectionProfile profile = CassandraConnectionProfile.builder().statementTimeoutMs(800).build();
+
+        Statement unbounded = new SimpleStatement("INSERT INTO dish (id) VALUES (1)");
+        profile.applyTo(unbounded, InvocationDeadline.none());
+        assertEquals(800, unbounded.getReadTimeoutMillis());
+
+        Statement later = new SimpleStatement("INSERT INTO dish (id) VALUES (1)");
+        profile.applyTo(later, InvocationDeadline.after(60_000));
+        assertEquals(800, later.getReadTimeoutMillis());
+
+        Statement soon = new SimpleStatement("INSERT INTO dish (id) VALUES (1)");
+        profile.applyTo(soon, InvocationDeadline.after(300));
+        assertTrue(soon.getReadTimeoutMillis() > 0 && soon.getReadTimeoutMillis() <= 300,
+                "timeout " + soon.getReadTimeoutMillis());
+
+        Statement expired = new SimpleStatement("INSERT INTO dish (id) VALUES (1)");
+        profile.applyTo(expired, InvocationDeadline.after(0));
+        assertEquals(1, expired.getReadTimeoutMillis());
+
+        // Without a statement timeout, the session's read timeout is the bound
+        Statement session = new SimpleStatement("INSERT INTO dish (id) VALUES (1)");
+        CassandraConnectionProfile.builder().readTimeoutMs(2000).build().applyTo(session, InvocationDeadline.after(60_000));
+        assertEquals(2000, session.getReadTimeoutMillis());
+    }
+
+    @Test
+    void rowWriterPassesTheDeadlineToEachStatement() {
+        List<Statement> executed = new ArrayList<>();
+        Session session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> {
+                    if ("executeAsync".equals(method.getName())) {
+                        executed.add((Statement) args[0]);
+                    }
+                    return null;
+                });
+        WriteEngine engine = (entity, timestamp) -> new SimpleStatement("INSERT INTO dish (id) VALUES (?) USING TIMESTAMP ?",
+                entity, timestamp);
+        CassandraSession.RowWriter writer = DriverCassandraSession.rowWriter(session, engine,
+                CassandraConnectionProfile.builder().statementTimeoutMs(800).build());
+
+        assertThrows(RuntimeException.class,
+                () -> writer.writeAsync(Collections.singletonList(1L), new long[]{1}, InvocationDeadline.after(200)));
+
+        assertEquals(1, executed.size());
+        assertTrue(executed.get(0).getReadTimeoutMillis() <= 200, "timeout " + executed.get(0).getReadTimeoutMillis());
+    }
+}
@@ -0,0 +1,124 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.example.TestUtils.generatedDish;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeDetectionCacheTest {
+
+    private static final String TP = "o2o.store.1-0";
+
+    private ChangeDetectionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ChangeDetectionCache(Dish.class, 1024 * 1024, true);
+        cache.beginPartition(TP, 0);
+    }
+
+    @Test
+    void skipsUnchangedContentOnlyAfterTheWriteWasAcknowledged() {
+        ChangeDetectionCache.Filtered first = cache.filter(TP, List.of(generatedDish(1, 100)));
+        assertEquals(1, first.getWrites().size());
+
+        // Still in flight: the new version must be written, it could otherwise be overtaken
+        ChangeDetectionCache.Filtered inFlight = cache.filter(TP, List.of(generatedDish(1, 200)));
+        assertEquals(1, inFlight.getWrites().size());
+        cache.onWritten(first, Collections.emptyList());
+        cache.onWritten(inFlight, Collections.emptyList());
+
+        ChangeDetectionCache.Filtered unchanged = cache.filter(TP, List.of(generatedDish(1, 300)));
+        assertTrue(unchanged.getWrites().isEmpty());
+        assertEquals(1, unchanged.getUnchanged());
+        assertEquals(1, unchanged.getHits());
+
+        Dish changed = generatedDish(1, 400);
+        changed.setSalePrice(1.0);
+        assertEquals(1, cache.filter(TP, List.of(changed)).getWrites().size());
+    }
+
+    @Test
+    void dropsVersionsAtOrBelowTheSkippedOne() {
+        write(generatedDish(1, 100));
+        assertEquals(1, cache.filter(TP, List.of(generatedDish(1, 300))).getUnchanged());
+
+        // Older than the skipped version with other content: Cassandra holds version 100, so it would win there
+        Dish outOfOrder = generatedDish(1, 200);
+        outOfOrder.setSalePrice(1.0);
+        ChangeDetectionCache.Filtered filtered = cache.filter(TP, List.of(outOfOrder));
+        assertTrue(filtered.getWrites().isEmpty());
+        assertEquals(1, filtered.getSuperseded());
+    }
+
+    @Test
+    void offsetGapInvalidatesThePartitionsRows() {
+        write(generatedDish(1, 100));
+        cache.endPartition(TP, 9);
+
+        cache.beginPartition(TP, 10);
+        assertEquals(1, cache.filter(TP, List.of(generatedDish(1, 200))).getUnchanged());
+        cache.endPartition(TP, 19);
+
+        // Offsets 20..29 went to another container
+        cache.beginPartition(TP, 30);
+        ChangeDetectionCache.Filtered filtered = cache.filter(TP, List.of(generatedDish(1, 300)));
+        assertEquals(1, filtered.getWrites().size());
+        assertEquals(0, filtered.getHits());
+    }
+
+    @Test
+    void failedWriteSuspendsSkipsUntilResumed() {
+        write(generatedDish(1, 100));
+        Dish failing = generatedDish(2, 100);
+        ChangeDetectionCache.Filtered filtered = cache.filter(TP, List.of(failing));
+        cache.onWritten(filtered, List.of(failing));
+        assertTrue(cache.isSkipsSuspended());
+        assertEquals(0, cache.size());
+
+        write(generatedDish(1, 200));
+        ChangeDetectionCache.Filtered suspended = cache.filter(TP, List.of(generatedDish(1, 300)));
+        assertEquals(1, suspended.getWrites().size());
+        cache.onWritten(suspended, Collections.emptyList());
+
+        cache.resumeSkips();
+        assertEquals(1, cache.filter(TP, List.of(generatedDish(1, 400))).getUnchanged());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedRowsBeyondTheByteBudget() {
+        cache = new ChangeDetectionCache(Dish.class, 2 * ChangeDetectionCache.ENTRY_OVERHEAD_BYTES, true);
+        cache.beginPartition(TP, 0);
+        write(generatedDish(1, 100));
+        write(generatedDish(2, 100));
+        cache.filter(TP, List.of(generatedDish(1, 50)));
+        write(generatedDish(3, 100));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.filter(TP, List.of(generatedDish(1, 200))).getUnchanged());
+        assertEquals(0, cache.filter(TP, List.of(generatedDish(2, 200))).getHits());
+    }
+
+    @Test
+    void sparseRowsAreNeverSkipped() {
+        cache = new ChangeDetectionCache(Dish.class, 1024 * 1024, false);
+        cache.beginPartition(TP, 0);
+        Dish sparse = generatedDish(1, 100);
+        sparse.setSaleToAt(null);
+        write(sparse);
+
+        Dish next = generatedDish(1, 200);
+        next.setSaleToAt(null);
+        assertEquals(1, cache.filter(TP, List.of(next)).getWrites().size());
+    }
+
+    private void write(Dish dish) {
+        ChangeDetectionCache.Filtered filtered = cache.filter(TP, List.of(dish));
+        assertEquals(1, filtered.getWrites().size());
+        cache.onWritten(filtered, Collections.emptyList());
+    }
+}
@@ -0,0 +1,141 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecodeBufferTest {
+
+    @Test
+    void decodesLikeTheJdkDecoder() {
+        Random random = new Random(42);
+        for (int size = 0; size < 100; size++) {
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            for (String base64 : new String[]{Base64.getEncoder().encodeToString(bytes),
+                    Base64.getEncoder().withoutPadding().encodeToString(bytes)}) {
+                DecodeBuffer buffer = DecodeBuffer.decode(base64);
+                assertArrayEquals(bytes, Arrays.copyOf(buffer.array(), buffer.length()), base64);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> DecodeBuffer.decode("ab-_"));
+        assertThrows(IllegalArgumentException.class, () -> DecodeBuffer.decode("abcde"));
+    }
+
+    @Test
+    void rejectsTheMalformedPaddingTheJdkDecoderRejects() {
+        for (String base64 : new String[]{"=", "==", "Q=", "QQ=", "QUI==", "QUJD=", "QUJD==", "QQ==QQ==", "Q===",
+                "QUJDQQ="}) {
+            assertThrows(IllegalArgumentException.class, () -> Base64.getDecoder().decode(base64), base64);
+            assertThrows(IllegalArgumentException.class, () -> DecodeBuffer.decode(base64), base64);
+        }
+        for (String base64 : new String[]{"", "QQ", "QQ==", "QUI", "QUI=", "QUJD", "QUJDQQ=="}) {
+            DecodeBuffer buffer = DecodeBuffer.decode(base64);
+            assertArrayEquals(Base64.getDecoder().decode(base64), Arrays.copyOf(buffer.array(), buffer.length()),
+                    base64);
+        }
+    }
+
+    @Test
+    void growsToTheLargestValueButDoesNotKeepOversizedOnes() {
+        DecodeBuffer.decode(Base64.getEncoder().encodeToString(new byte[10_000]));
+        int grown = DecodeBuffer.decode("AAAA").retainedCapacity();
+        assertTrue(grown >= 10_000, "capacity " + grown);
+
+        DecodeBuffer huge = DecodeBuffer.decode(
+                Base64.getEncoder().encodeToString(new byte[DecodeBuffer.MAX_RETAINED_CAPACITY + 1]));
+        assertEquals(DecodeBuffer.MAX_RETAINED_CAPACITY + 1, huge.length());
+        assertEquals(grown, huge.retainedCapacity());
+    }
+
+    @Test
+    void decodingIntoTheReusedBufferAllocatesNothing() throws Exception {
+        String value = Base64.getEncoder().encodeToString(new byte[8 * 1024]);
+
+        double bytes = AllocationMeter.bytesPerCall(20_000, 10_000, call -> DecodeBuffer.decode(value));
+
+        assertTrue(bytes < 16, bytes + " bytes per decode");
+    }
+
+    @Test
+    void dishParserAllocatesLessPerRecordThanDecodingToAFreshArray() throws Exception {
+        List<KafkaEvent.KafkaEventRecord> records = KafkaEventFlattener.flatten(KafkaEventGenerator.builder()
+                .recordsPerPartition(64)
+                .dishOptions(20)
+                .optionItemsPerOption(5)
+                .openHours(7)
+                .build()
+                .generate());
+        DishParser parser = new DishParser();
+        ObjectReader reader = new ObjectMapper().registerModule(new BlackbirdModule()).readerFor(Dish.class);
+
+        double reused = AllocationMeter.bytesPerCall(5_000, 5_000,
+                call -> parser.parseRecord(records.get(call % records.size())));
+        double baseline = AllocationMeter.bytesPerCall(5_000, 5_000,
+                call -> reader.readValue(Base64.getDecoder().decode(records.get(call % records.size()).getValue())));
+
+        assertSavesTheDecodedArray(records, reused, baseline);
+    }
+
+    @Test
+    void itemCatalogParserAllocatesLessPerRecordThanDecodingToAFreshArray() throws Exception {
+        List<KafkaEvent.KafkaEventRecord> records = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            records.add(ItemCatalogRecords.record(i,
+                    ItemCatalogRecords.encode(ItemCatalogRecords.dto(i + 1, 1_000L + i, 4), null)));
+        }
+        ItemCatalogParser parser = new ItemCatalogParser(AvroRecordParser.WireFormat.RAW, new AvroSchemaCache());
+        SpecificDatumReader<ItemCatalogDTO> reader = new SpecificDatumReader<>(ItemCatalogDTO.class);
+
+        double reused = AllocationMeter.bytesPerCall(5_000, 5_000,
+                call -> parser.parseRecord(records.get(call % records.size())));
+        double baseline = AllocationMeter.bytesPerCall(5_000, 5_000, call -> reader.read(null,
+                DecoderFactory.get().binaryDecoder(Base64.getDecoder().decode(records.get(call % records.size()).getValue()), null)));
+
+        assertSavesTheDecodedArray(records, reused, baseline);
+    }
+
+    @Test
+    void reusedDtoDoesNotLeakIntoEarlierModels() throws Exception {
+        ItemCatalogParser parser = new ItemCatalogParser(AvroRecordParser.WireFormat.RAW, new AvroSchemaCache());
+        ItemCatalogDTO first = ItemCatalogRecords.dto(1L, 10L, 2);
+
+        ItemCatalog one = parser.parseRecord(ItemCatalogRecords.record(0, ItemCatalogRecords.encode(first, null)));
+        ItemCatalog two = parser.parseRecord(ItemCatalogRecords.record(1,
+                ItemCatalogRecords.encode(ItemCatalogRecords.dto(2L, 20L, 3), null)));
+
+        assertEquals(1L, one.getItemId());
+        assertEquals("Item 1", one.getName().get("ko_KR"));
+        assertEquals(first.getReconciledAttributes(), one.getReconciledAttributes());
+        assertEquals(2L, two.getItemId());
+        assertEquals(3, two.getReconciledAttributes().size());
+    }
+
+    /**
+     * The baseline allocates a fresh byte[] of the decoded value per record, which the reused buffer avoids;
+     * half of its mean length leaves room for allocations the two paths do not share.
+     */
+    private static void assertSavesTheDecodedArray(List<KafkaEvent.KafkaEventRecord> records,
+                                                   double reused, double baseline) {
+        long decodedBytes = 0;
+        for (KafkaEvent.KafkaEventRecord record : records) {
+            decodedBytes += Base64.getDecoder().decode(record.getValue()).length;
+        }
+        double meanDecodedBytes = (double) decodedBytes / records.size();
+        assertTrue(reused > 0, "nothing measured: " + reused);
+        assertTrue(baseline - reused >= meanDecodedBytes / 2,
+                "reused=" + reused + " baseline=" + baseline + " meanDecodedBytes=" + meanDecodedBytes);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DishParserTest {
+
+    @Test
+    void streamsBase64JsonIntoDish() throws Exception {
+        KafkaEvent event = TestUtils.buildKafkaEventFromJson();
+        KafkaEvent.KafkaEventRecord record = event.getRecords().get("o2o.store.1-6").get(0);
+
+        Dish dish = new DishParser().parseRecord(record);
+
+        assertEquals(77593308L, dish.getId());
+        assertEquals(1726727253238000000L, dish.getVersion());
+        assertEquals(679858L, dish.getStoreId());
+        assertEquals(3600.0, dish.getSalePrice());
+        assertEquals(1, dish.getImagePaths().size());
+        assertFalse(dish.getNames().get("ko_KR").isEmpty());
+    }
+
+    @Test
+    void recordsTheValueDecodeTime() throws Exception {
+        KafkaEvent.KafkaEventRecord record = TestUtils.buildKafkaEventFromJson().getRecords().get("o2o.store.1-6").get(0);
+        LatencyHistogram decodeLatency = new LatencyHistogram();
+
+        Dish dish = new DishParser().parseRecord(record, decodeLatency);
+
+        assertEquals(77593308L, dish.getId());
+        assertEquals(1, decodeLatency.getCount());
+    }
+
+    @Test
+    void emptyValueIsSkipped() throws Exception {
+        KafkaEvent.KafkaEventRecord record = new KafkaEvent.KafkaEventRecord();
+        record.setValue("");
+
+        assertNull(new DishParser().parseRecord(record));
+    }
+}
@@ -0,0 +1,42 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnvironmentConfigTest {
+
+    @Test
+    void intSettingsRejectValuesOutsideTheIntRange() {
+        assertEquals(Integer.MAX_VALUE, EnvironmentConfig.intValue("WRITE_LANE_STRIPES", " 2147483647 ", 4096));
+        assertEquals(Integer.MIN_VALUE, EnvironmentConfig.intValue("WRITE_LANE_STRIPES", "-2147483648", 4096));
+        assertEquals(4096, EnvironmentConfig.intValue("WRITE_LANE_STRIPES", "", 4096));
+
+        IllegalArgumentException tooLarge = assertThrows(IllegalArgumentException.class,
+                () -> EnvironmentConfig.intValue("WRITE_LANE_STRIPES", "4294967296", 4096));
+        assertEquals("Invalid numeric value for WRITE_LANE_STRIPES: 4294967296", tooLarge.getMessage());
+        assertThrows(IllegalArgumentException.class,
+                () -> EnvironmentConfig.intValue("WRITE_LANE_STRIPES", "-2147483649", 4096));
+        assertThrows(IllegalArgumentException.class,
+                () -> EnvironmentConfig.intValue("WRITE_LANE_STRIPES", "many", 4096));
+    }
+
+    @Test
+    void avroSchemaIdsAreACommaSeparatedList() {
+        assertEquals(Set.of(7, 12), EnvironmentConfig.parseSchemaIds("AVRO_SCHEMA_IDS", " 7, 12,"));
+        assertThrows(IllegalArgumentException.class, () -> EnvironmentConfig.parseSchemaIds("AVRO_SCHEMA_IDS", "7;12"));
+    }
+
+    @Test
+    void countSettingsMustBePositive() {
+        EnvironmentConfig.checkPositive("PARSE_THREADS", 1);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> EnvironmentConfig.checkPositive("PARSE_THREADS", 0));
+        assertEquals("PARSE_THREADS must be positive: 0", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> EnvironmentConfig.checkPositive("PARSE_THREADS", -2));
+        assertThrows(IllegalArgumentException.class, () -> EnvironmentConfig.checkPositive("WRITE_CHUNK_SIZE", 0));
+    }
+}
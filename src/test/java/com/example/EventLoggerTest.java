@@ -0,0 +1,108 @@
+package com.example;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLoggerTest {
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(EventLogger.class);
+    private final ListAppender<ILoggingEvent> lines = new ListAppender<>();
+
+    @BeforeEach
+    void capture() {
+        lines.start();
+        logger.addAppender(lines);
+    }
+
+    @AfterEach
+    void release() {
+        logger.detachAppender(lines);
+    }
+
+    @Test
+    void samplesOneRecordInEverySampleEveryAcrossEvents() {
+        EventLogger eventLogger = new EventLogger(EventLogger.Mode.SAMPLED, 3, 100);
+
+        eventLogger.log(event(4, "AAAA"));
+        eventLogger.log(event(4, "AAAA"));
+
+        List<String> samples = samples();
+        assertEquals(2, samples.size());
+        assertTrue(samples.get(0).contains("offset=2"), samples.get(0));
+        assertTrue(samples.get(1).contains("offset=1"), samples.get(1));
+    }
+
+    @Test
+    void sampledValuesAreTruncatedToMaxDecodedBytes() {
+        EventLogger eventLogger = new EventLogger(EventLogger.Mode.SAMPLED, 1, 8);
+        byte[] value = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+        eventLogger.log(event(1, Base64.getEncoder().encodeToString(value)));
+        eventLogger.log(event(1, Base64.getEncoder().encodeToString(Arrays.copyOf(value, 8))));
+        eventLogger.log(event(1, "not base64 at all"));
+
+        List<String> samples = samples();
+        String first8 = Base64.getEncoder().encodeToString(Arrays.copyOf(value, 8));
+        assertTrue(samples.get(0).endsWith("value(16 bytes)=" + first8 + "..."), samples.get(0));
+        assertTrue(samples.get(1).endsWith("value(8 bytes)=" + first8), samples.get(1));
+        assertTrue(samples.get(2).endsWith("=not base... (not base64)"), samples.get(2));
+    }
+
+    @Test
+    void summaryModeLogsNoSample() {
+        new EventLogger(EventLogger.Mode.SUMMARY, 1, 100).log(event(3, "AAAA"));
+
+        assertTrue(samples().isEmpty());
+        assertFalse(lines.list.isEmpty());
+    }
+
+    @Test
+    void handlerRebuildsTheLoggerWhenAnySettingChanges() {
+        MainLambdaHandler handler = new MainLambdaHandler(new CassandraClientProvider(() -> null), () -> null);
+        EnvironmentConfig config = EnvironmentConfig.builder().eventLogMode(EventLogger.Mode.SAMPLED).build();
+
+        EventLogger first = handler.eventLogger(config);
+        assertSame(first, handler.eventLogger(config.toBuilder().build()));
+        EventLogger resampled = handler.eventLogger(config.toBuilder().eventLogSampleEvery(10).build());
+        assertNotSame(first, resampled);
+        assertNotSame(resampled, handler.eventLogger(config.toBuilder().eventLogSampleEvery(10).eventLogMaxBytes(64).build()));
+    }
+
+    private List<String> samples() {
+        return lines.list.stream()
+                .map(ILoggingEvent::getFormattedMessage)
+                .filter(line -> line.startsWith("Sampled record"))
+                .collect(Collectors.toList());
+    }
+
+    private static KafkaEvent event(int records, String value) {
+        List<KafkaEvent.KafkaEventRecord> partition = new ArrayList<>();
+        for (int offset = 0; offset < records; offset++) {
+            KafkaEvent.KafkaEventRecord r = new KafkaEvent.KafkaEventRecord();
+            r.setTopic("o2o.store.1");
+            r.setPartition(0);
+            r.setOffset(offset);
+            r.setValue(value);
+            partition.add(r);
+        }
+        KafkaEvent event = new KafkaEvent();
+        event.setRecords(Map.of("o2o.store.1-0", partition));
+        return event;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example;
+
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import lombok.Builder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A network-free CassandraSession that keeps rows in memory with Cassandra's write semantics:
+ * every non-null column is a cell carrying its write timestamp, and a write only replaces a cell
+ * written with a lower timestamp (last write wins by USING TIMESTAMP, whatever the arrival order).
+ * Null columns are not written, as with PreparedWriteEngine.
+ *
+ * Rows are keyed by RouteKey (model class and table) and @PartitionKey value. Requests are acknowledged after
+ * {@code latencyMicros} (plus up to {@code latencyJitterMicros}), and fail with {@code failure}
+ * at {@code errorRate}, so tests can exercise the write window and the retry path.
+ */
+@Builder
+public class InMemoryCassandraSession implements CassandraSession {
+
+    @Builder.Default
+    private final long latencyMicros = 0;
+    @Builder.Default
+    private final long latencyJitterMicros = 0;
+    /** Fraction of requests, between 0 and 1, that fail instead of being applied */
+    @Builder.Default
+    private final double errorRate = 0;
+    @Builder.Default
+    private final Supplier<Throwable> failure = () -> new NoHostAvailableException(Collections.emptyMap());
+
+    private final ConcurrentMap<RouteKey, ConcurrentMap<Object, Row>> tables = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong statements = new AtomicLong();
+    private final ScheduledExecutorService acks = Executors.newScheduledThreadPool(2, r -> {
+        Thread t = new Thread(r, "in-memory-cassandra-ack");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    @Override
+    public RowWriter rowWriter(Class<?> modelClass, EnvironmentConfig config) {
+        ModelMetadata metadata = ModelMetadata.of(modelClass);
+        ConcurrentMap<Object, Row> table = tables.computeIfAbsent(RouteKey.of(modelClass, config),
+                k -> new ConcurrentHashMap<>());
+        return (entities, timestamps) -> {
+            requests.incrementAndGet();
+            statements.addAndGet(entities.size());
+            CompletableFuture<Void> cf = new CompletableFuture<>();
+            Runnable ack = () -> {
+                if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                    failedRequests.incrementAndGet();
+                    cf.completeExceptionally(failure.get());
+                    return;
+                }
+                try {
+                    for (int i = 0; i < entities.size(); i++) {
+                        apply(table, metadata, entities.get(i), timestamps[i]);
+                    }
+                    cf.complete(null);
+                } catch (RuntimeException e) {
+                    cf.completeExceptionally(e);
+                }
+            };
+            long delay = latencyMicros
+                    + (latencyJitterMicros > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMicros + 1) : 0);
+            if (delay > 0) {
+                acks.schedule(ack, delay, TimeUnit.MICROSECONDS);
+            } else {
+                ack.run();
+            }
+            return cf;
+        };
+    }
+
+    private static void apply(ConcurrentMap<Object, Row> table, ModelMetadata metadata, Object entity, long timestamp) {
+        Object key = metadata.partitionKeyOf(entity);
+        if (key == null) {
+            throw new IllegalArgumentException("Partition key " + metadata.getPartitionKey().getName() + " is null");
+        }
+        Row row = table.computeIfAbsent(key, k -> new Row(metadata.getColumns().size()));
+        synchronized (row) {
+            for (ModelMetadata.Column column : metadata.getColumns()) {
+                Object value = column.get(entity);
+                int i = column.getIndex();
+                if (value != null && timestamp > row.timestamps[i]) {
+                    row.values[i] = value;
+                    row.timestamps[i] = timestamp;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the stored columns of a row by name, from whichever table of the model has it, or null if the
+     * row was never written.
+     */
+    public Map<String, Object> row(Class<?> modelClass, Object partitionKey) {
+        for (Map.Entry<RouteKey, ConcurrentMap<Object, Row>> table : tables.entrySet()) {
+            if (table.getKey().getModelClass() == modelClass && table.getValue().containsKey(partitionKey)) {
+                return row(table.getKey(), partitionKey);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the stored columns of a row of one table by name, or null if the row was never written.
+     */
+    public Map<String, Object> row(RouteKey table, Object partitionKey) {
+        Row row = tables.getOrDefault(table, new ConcurrentHashMap<>()).get(partitionKey);
+        if (row == null) {
+            return null;
+        }
+        Map<String, Object> columns = new LinkedHashMap<>();
+        synchronized (row) {
+            for (ModelMetadata.Column column : ModelMetadata.of(table.getModelClass()).getColumns()) {
+                if (row.values[column.getIndex()] != null) {
+                    columns.put(column.getName(), row.values[column.getIndex()]);
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * The number of rows of the model, over all its tables.
+     */
+    public int rowCount(Class<?> modelClass) {
+        int rows = 0;
+        for (Map.Entry<RouteKey, ConcurrentMap<Object, Row>> table : tables.entrySet()) {
+            if (table.getKey().getModelClass() == modelClass) {
+                rows += table.getValue().size();
+            }
+        }
+        return rows;
+    }
+
+    public int rowCount(RouteKey table) {
+        return tables.getOrDefault(table, new ConcurrentHashMap<>()).size();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    public long getStatements() {
+        return statements.get();
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return !closed.get();
+    }
+
+    @Override
+    public void close() {
+        closed.set(true);
+        acks.shutdown();
+    }
+
+    private static final class Row {
+        private final Object[] values;
+        private final long[] timestamps;
+
+        private Row(int columns) {
+            this.values = new Object[columns];
+            this.timestamps = new long[columns];
+            Arrays.fill(timestamps, Long.MIN_VALUE);
+        }
+    }
+}
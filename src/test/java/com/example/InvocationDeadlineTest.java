@@ -0,0 +1,79 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvocationDeadlineTest {
+
+    @Test
+    void deadlineIsTheRemainingTimeMinusTheSafetyMargin() {
+        InvocationDeadline deadline = InvocationDeadline.fromContext(context(10_000), 4_000);
+
+        assertTrue(deadline.isBounded());
+        assertFalse(deadline.isExpired());
+        assertTrue(deadline.remainingMillis() > 5_000 && deadline.remainingMillis() <= 6_000);
+        assertTrue(InvocationDeadline.fromContext(context(3_000), 4_000).isExpired());
+        assertFalse(InvocationDeadline.fromContext(null, 4_000).isBounded());
+        assertEquals(Long.MAX_VALUE, InvocationDeadline.none().remainingMillis());
+    }
+
+    @Test
+    void pendingFuturesAreCancelledAtTheDeadline() throws Exception {
+        InvocationDeadline deadline = InvocationDeadline.after(50);
+        CompletableFuture<Void> pending = deadline.cancelOnExpiry(new CompletableFuture<>());
+        CompletableFuture<Void> completed = deadline.cancelOnExpiry(new CompletableFuture<>());
+        completed.complete(null);
+
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        assertTrue(pending.isCancelled());
+        assertFalse(completed.isCancelled());
+        assertFalse(InvocationDeadline.none().cancelOnExpiry(new CompletableFuture<>()).isDone());
+    }
+
+    @Test
+    void writesInFlightAtTheDeadlineAreSetAsideInsteadOfTimingOut(@TempDir Path spoolDir) throws Exception {
+        // Acks take far longer than the Lambda has left
+        InMemoryCassandraSession cassandra = InMemoryCassandraSession.builder().latencyMicros(10_000_000).build();
+        MainLambdaHandler handler = new MainLambdaHandler(new CassandraClientProvider(() -> cassandra),
+                () -> TestUtils.testConfig(spoolDir).toBuilder().deadlineSafetyMarginMs(1_000).build());
+
+        long start = System.nanoTime();
+        String result = handler.handleRequest(TestUtils.buildKafkaEventFromJson(), context(1_500));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("completed", result);
+        assertTrue(elapsedMs < 1_500, "invocation took " + elapsedMs + " ms");
+        // Dish has non-frozen list columns: a write cancelled in flight may have been applied, so it is not replayed
+        WriteSpool spool = new WriteSpool(spoolDir, 1024 * 1024, 5);
+        assertEquals(0, spool.pending().size());
+        assertEquals(2, spool.deadLetters().size());
+        cassandra.close();
+    }
+
+    @Test
+    void recordsLeftUnparsedFailTheInvocationForRedelivery(@TempDir Path spoolDir) throws Exception {
+        InMemoryCassandraSession cassandra = InMemoryCassandraSession.builder().build();
+        MainLambdaHandler handler = new MainLambdaHandler(new CassandraClientProvider(() -> cassandra),
+                () -> TestUtils.testConfig(spoolDir).toBuilder().deadlineSafetyMarginMs(1_000).build());
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> handler.handleRequest(TestUtils.buildKafkaEventFromJson(), context(1_000)));
+
+        assertTrue(e.getMessage().contains("2 record(s) not processed"), e.getMessage());
+        assertEquals(0, cassandra.getRequests());
+    }
+
+    private static Context context(int remainingMillis) {
+        return (Context) Proxy.newProxyInstance(Context.class.getClassLoader(), new Class<?>[]{Context.class},
+                (proxy, method, args) -> "getRemainingTimeInMillis".equals(method.getName()) ? remainingMillis : null);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvocationMetricsTest {
+
+    @Test
+    void histogramReportsPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100_000, histogram.getMaxMicros());
+        long p50 = histogram.percentileMicros(50);
+        assertTrue(p50 >= 1000 && p50 <= 1250, "p50=" + p50);
+        assertEquals(p50, histogram.percentileMicros(99));
+        assertEquals(100_000, histogram.percentileMicros(100));
+    }
+
+    @Test
+    void bucketUpperBoundsCoverTheirValues() {
+        for (long micros = 0; micros < 1_000_000; micros += 7) {
+            int index = LatencyHistogram.indexOf(micros);
+            assertTrue(LatencyHistogram.upperBoundOf(index) >= micros, "micros=" + micros);
+            assertTrue(index == 0 || LatencyHistogram.upperBoundOf(index - 1) < micros, "micros=" + micros);
+        }
+    }
+
+    @Test
+    void emitsOneEmfDocumentWithTotalsAndPartitionBreakdown() throws Exception {
+        InvocationMetrics metrics = new InvocationMetrics("Dish");
+        metrics.record(InvocationMetrics.Stage.PARSE, "topic-0", TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.record(InvocationMetrics.Stage.PARSE, "topic-1", TimeUnit.MILLISECONDS.toNanos(4));
+        metrics.add(InvocationMetrics.Counter.WRITTEN, "topic-0", 3);
+        metrics.add(InvocationMetrics.Counter.WRITTEN, "topic-1", 2);
+
+        JsonNode emf = new ObjectMapper().readTree(metrics.toEmf("Test", 1234L));
+
+        JsonNode directive = emf.at("/_aws/CloudWatchMetrics/0");
+        assertEquals(1234L, emf.at("/_aws/Timestamp").asLong());
+        assertEquals("Test", directive.get("Namespace").asText());
+        assertEquals("Model", directive.at("/Dimensions/0/0").asText());
+        assertEquals("Dish", emf.get("Model").asText());
+        // Every declared metric has a value in the document
+        for (JsonNode metric : directive.get("Metrics")) {
+            assertTrue(emf.has(metric.get("Name").asText()), metric.toString());
+        }
+        assertEquals(2, emf.get("PARSE.count").asLong());
+        assertEquals(5, emf.get("WRITTEN").asLong());
+        assertEquals(0, emf.get("PARSE_FAILURES").asLong());
+        assertEquals(3, emf.at("/TopicPartitions/topic-0/WRITTEN").asLong());
+        assertEquals(1, emf.at("/TopicPartitions/topic-1/PARSE/count").asLong());
+    }
+}
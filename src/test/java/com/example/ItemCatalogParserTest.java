@@ -0,0 +1,88 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ItemCatalogParserTest {
+
+    // src/test/resources/avro-schemas/7.avsc
+    private static final int RESOURCE_SCHEMA_ID = 7;
+
+    @Test
+    void parsesPlainAvro() throws Exception {
+        ItemCatalogParser parser = new ItemCatalogParser(AvroRecordParser.WireFormat.RAW, new AvroSchemaCache());
+        ItemCatalogDTO dto = ItemCatalogRecords.dto(42L, 1001L, 2);
+
+        ItemCatalog item = parser.parseRecord(ItemCatalogRecords.record(0, ItemCatalogRecords.encode(dto, null)));
+
+        assertEquals(42L, item.getItemId());
+        assertEquals(1001L, item.getVersion());
+        assertEquals(1001L, item.getSequence());
+        assertEquals("Item 42", item.getName().get("ko_KR"));
+        assertEquals(dto.getReconciledAttributes(), item.getReconciledAttributes());
+    }
+
+    @Test
+    void recordsTheValueDecodeTime() throws Exception {
+        ItemCatalogParser parser = new ItemCatalogParser(AvroRecordParser.WireFormat.RAW, new AvroSchemaCache());
+        LatencyHistogram decodeLatency = new LatencyHistogram();
+
+        parser.parseRecord(ItemCatalogRecords.record(0, ItemCatalogRecords.encode(ItemCatalogRecords.dto(1L, 1L, 1), null)),
+                decodeLatency);
+        parser.parseRecord(ItemCatalogRecords.record(1, ""), decodeLatency);
+
+        assertEquals(1, decodeLatency.getCount());
+    }
+
+    @Test
+    void parsesConfluentFramedAvroWithSchemaFromResources() throws Exception {
+        ItemCatalogParser parser = new ItemCatalogParser(AvroRecordParser.WireFormat.CONFLUENT, new AvroSchemaCache());
+        String value = ItemCatalogRecords.encode(ItemCatalogRecords.dto(7L, 2002L, 1), RESOURCE_SCHEMA_ID);
+
+        ItemCatalog item = parser.parseRecord(ItemCatalogRecords.record(0, value));
+
+        assertEquals(7L, item.getItemId());
+        assertEquals(2002L, item.getVersion());
+    }
+
+    @Test
+    void autoDetectsTheFramingPerRecord() throws Exception {
+        AvroSchemaCache schemas = new AvroSchemaCache();
+        schemas.register(3, ItemCatalogDTO.getClassSchema());
+        ItemCatalogParser parser = new ItemCatalogParser(AvroRecordParser.WireFormat.AUTO, schemas);
+
+        ItemCatalog framed = parser.parseRecord(ItemCatalogRecords.record(0,
+                ItemCatalogRecords.encode(ItemCatalogRecords.dto(1L, 10L, 1), 3)));
+        // itemId 0 encodes to a leading 0x00 byte, which is not followed by a known schema id
+        ItemCatalog plain = parser.parseRecord(ItemCatalogRecords.record(1,
+                ItemCatalogRecords.encode(ItemCatalogRecords.dto(0L, 20L, 1), null)));
+
+        assertEquals(1L, framed.getItemId());
+        assertEquals(0L, plain.getItemId());
+        assertEquals(20L, plain.getVersion());
+    }
+
+    @Test
+    void rejectsUnknownSchemaIdWithoutCallingARegistry() {
+        ItemCatalogParser parser = new ItemCatalogParser(AvroRecordParser.WireFormat.CONFLUENT, new AvroSchemaCache());
+        String value = ItemCatalogRecords.encode(ItemCatalogRecords.dto(1L, 10L, 1), 999);
+
+        IOException e = assertThrows(IOException.class, () -> parser.parseRecord(ItemCatalogRecords.record(0, value)));
+        assertTrue(e.getMessage().contains("999"));
+    }
+
+    @Test
+    void requireAllNamesEverySchemaIdWithoutAResource() {
+        AvroSchemaCache schemas = new AvroSchemaCache();
+        schemas.requireAll(List.of(RESOURCE_SCHEMA_ID));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> schemas.requireAll(List.of(RESOURCE_SCHEMA_ID, 998, 999)));
+        assertTrue(e.getMessage().contains("[998, 999]"), e.getMessage());
+        assertTrue(e.getMessage().contains("avro-schemas/<id>.avsc"), e.getMessage());
+    }
+}
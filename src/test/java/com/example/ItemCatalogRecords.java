@@ -0,0 +1,86 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds ItemCatalogDTO values and Kafka records carrying them as base64 Avro, plain or Confluent-framed.
+ */
+public final class ItemCatalogRecords {
+
+    private static final SpecificDatumWriter<ItemCatalogDTO> WRITER = new SpecificDatumWriter<>(ItemCatalogDTO.class);
+
+    private ItemCatalogRecords() {
+    }
+
+    /**
+     * @param attributes number of entries at each of the three levels of reconciledAttributes
+     */
+    public static ItemCatalogDTO dto(long itemId, long sequence, int attributes) {
+        Map<String, Map<String, Map<String, String>>> reconciled = new HashMap<>();
+        for (int a = 0; a < attributes; a++) {
+            Map<String, Map<String, String>> locales = new HashMap<>();
+            for (int l = 0; l < attributes; l++) {
+                Map<String, String> values = new HashMap<>();
+                for (int v = 0; v < attributes; v++) {
+                    values.put("value" + v, "attribute " + a + "/" + l + "/" + v + " of item " + itemId);
+                }
+                locales.put("locale" + l, values);
+            }
+            reconciled.put("attribute" + a, locales);
+        }
+        Map<String, String> name = new HashMap<>();
+        name.put("ko_KR", "Item " + itemId);
+        return ItemCatalogDTO.newBuilder()
+                .setItemId(itemId)
+                .setSequence(sequence)
+                .setProductId(itemId * 10)
+                .setDivisionType("FOOD")
+                .setName(name)
+                .setReconciledAttributes(reconciled)
+                .setValid(true)
+                .setCreatedAt(1_726_727_253_000L)
+                .setMainImage("/image/item/" + itemId + ".jpg")
+                .build();
+    }
+
+    /**
+     * @param schemaId Confluent schema id to frame the value with, or null for plain Avro
+     */
+    public static String encode(ItemCatalogDTO dto, Integer schemaId) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (schemaId != null) {
+                out.write(0);
+                out.write(schemaId >>> 24);
+                out.write(schemaId >>> 16);
+                out.write(schemaId >>> 8);
+                out.write(schemaId);
+            }
+            BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+            WRITER.write(dto, encoder);
+            encoder.flush();
+            return Base64.getEncoder().encodeToString(out.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static KafkaEvent.KafkaEventRecord record(long offset, String base64Value) {
+        KafkaEvent.KafkaEventRecord record = new KafkaEvent.KafkaEventRecord();
+        record.setTopic("item.catalog");
+        record.setPartition(0);
+        record.setOffset(offset);
+        record.setValue(base64Value);
+        return record;
+    }
+}
@@ -0,0 +1,197 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Builder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds synthetic KafkaEvents of Dish records, shaped like the events the handler receives from an
+ * event source mapping: {@code partitions} topic-partitions of {@code recordsPerPartition} records each,
+ * every value a base64-encoded Dish JSON.
+ *
+ * The payload size is driven by the number of dishOptions (each with dishOptionItems) and openHours.
+ * With {@code distinctKeys} set, dish ids are drawn from that many keys, so the same key shows up several
+ * times within and across partitions; {@code outOfOrderRate} of the records then carry a version older than
+ * records already emitted. Generation is deterministic for a given seed.
+ */
+@Builder
+public class KafkaEventGenerator {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String[] DAYS = {"MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY", "SATURDAY", "SUNDAY"};
+
+    @Builder.Default
+    private final String topic = "o2o.store.1";
+    @Builder.Default
+    private final int partitions = 1;
+    @Builder.Default
+    private final int recordsPerPartition = 100;
+    @Builder.Default
+    private final int dishOptions = 0;
+    @Builder.Default
+    private final int optionItemsPerOption = 0;
+    @Builder.Default
+    private final int openHours = 0;
+    /** Number of distinct dish ids; 0 gives every record its own id */
+    @Builder.Default
+    private final int distinctKeys = 0;
+    /** Fraction of records, between 0 and 1, whose version is older than the records emitted before them */
+    @Builder.Default
+    private final double outOfOrderRate = 0;
+    @Builder.Default
+    private final long seed = 42;
+
+    public KafkaEvent generate() {
+        Random random = new Random(seed);
+        Map<String, List<KafkaEvent.KafkaEventRecord>> records = new LinkedHashMap<>();
+        long sequence = 0;
+        for (int p = 0; p < partitions; p++) {
+            List<KafkaEvent.KafkaEventRecord> partition = new ArrayList<>(recordsPerPartition);
+            for (int i = 0; i < recordsPerPartition; i++) {
+                sequence++;
+                long dishId = distinctKeys > 0 ? 1 + random.nextInt(distinctKeys) : sequence;
+                partition.add(record(p, i, dish(dishId, versionOf(sequence, random), random)));
+            }
+            records.put(topic + "-" + p, partition);
+        }
+        KafkaEvent event = new KafkaEvent();
+        event.setEventSource("SelfManagedKafka");
+        event.setRecords(records);
+        return event;
+    }
+
+    /**
+     * In-order versions grow by 1000 per record; an out-of-order one falls between two earlier in-order
+     * versions, so it never ties with them.
+     */
+    private long versionOf(long sequence, Random random) {
+        long base = 1_726_727_253_000_000_000L;
+        if (sequence > 1 && outOfOrderRate > 0 && random.nextDouble() < outOfOrderRate) {
+            long earlier = sequence - 1 - random.nextInt((int) Math.min(Integer.MAX_VALUE, sequence - 1));
+            return base + earlier * 1000 - 1 - random.nextInt(999);
+        }
+        return base + sequence * 1000;
+    }
+
+    private KafkaEvent.KafkaEventRecord record(int partition, long offset, Dish dish) {
+        KafkaEvent.KafkaEventRecord record = new KafkaEvent.KafkaEventRecord();
+        record.setTopic(topic);
+        record.setPartition(partition);
+        record.setOffset(offset);
+        record.setTimestamp(System.currentTimeMillis());
+        record.setTimestampType("LOG_APPEND_TIME");
+        record.setKey(base64(String.valueOf(dish.getId()).getBytes(StandardCharsets.UTF_8)));
+        try {
+            record.setValue(base64(MAPPER.writeValueAsBytes(dish)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize generated dish " + dish.getId(), e);
+        }
+        record.setHeaders(Collections.emptyList());
+        return record;
+    }
+
+    Dish dish(long id, long version, Random random) {
+        long storeId = 600_000 + random.nextInt(10_000);
+        Dish dish = new Dish();
+        dish.setId(id);
+        dish.setVersion(version);
+        dish.setStoreId(storeId);
+        dish.setNames(localized("Dish " + id));
+        dish.setDescriptions(localized("Generated dish " + id + " with " + dishOptions + " option(s)"));
+        dish.setTaxBaseType("TAXABLE");
+        dish.setDisplayStatus("ON_SALE");
+        dish.setTargetAvailableTime("");
+        dish.setSalePrice(1000.0 + random.nextInt(50) * 100);
+        dish.setCurrencyType("KRW");
+        dish.setImagePaths(Collections.singletonList("/image/eats_catalog/" + Long.toHexString(random.nextLong()) + ".jpg"));
+        dish.setSaleFromAt("");
+        dish.setSaleToAt("");
+        List<DishOption> options = new ArrayList<>(dishOptions);
+        for (int o = 0; o < dishOptions; o++) {
+            options.add(option(id * 100 + o, storeId, random));
+        }
+        dish.setDishOptions(options);
+        List<DishOpenHour> hours = new ArrayList<>(openHours);
+        for (int h = 0; h < openHours; h++) {
+            DishOpenHour hour = new DishOpenHour();
+            hour.setId(id * 10 + h);
+            hour.setDishId(id);
+            hour.setDayOfWeek(DAYS[h % DAYS.length]);
+            hour.setFromHour(9);
+            hour.setFromMinute(0);
+            hour.setToHour(21);
+            hour.setToMinute(30);
+            hours.add(hour);
+        }
+        dish.setOpenHours(hours);
+        dish.setDisposable(false);
+        dish.setDisposablePrice(0.0);
+        dish.setDeleted(false);
+        dish.setDisplayPrice(0.0);
+        return dish;
+    }
+
+    private DishOption option(long optionId, long storeId, Random random) {
+        DishOption option = new DishOption();
+        option.setId(optionId);
+        option.setStoreId(storeId);
+        option.setNames(localized("Option " + optionId));
+        option.setDescriptions(localized(""));
+        option.setType("SINGLE");
+        option.setExposeStatus("EXPOSE");
+        option.setMinQuantity(0);
+        option.setMaxQuantity(1);
+        option.setMinSelect(0L);
+        option.setMaxSelect(1L);
+        option.setDeleted(false);
+        List<DishOptionItem> items = new ArrayList<>(optionItemsPerOption);
+        for (int i = 0; i < optionItemsPerOption; i++) {
+            DishOptionItem item = new DishOptionItem();
+            item.setId(optionId * 100 + i);
+            item.setOptionId(optionId);
+            item.setNames(localized("Item " + i));
+            item.setQuantityChangeable(false);
+            item.setMinQuantity(0);
+            item.setMaxQuantity(1);
+            item.setType("NORMAL");
+            item.setSalePrice(random.nextInt(20) * 100.0);
+            item.setCurrencyType("KRW");
+            item.setTaxBaseType("TAXABLE");
+            item.setRestrictionType("NONE");
+            item.setSaleFromAt("");
+            item.setSaleToAt("");
+            item.setTargetAvailableTime("");
+            item.setDeleted(false);
+            item.setDisposable(false);
+            item.setDisposablePrice(0.0);
+            item.setDisplayPrice(0.0);
+            items.add(item);
+        }
+        if (!items.isEmpty()) {
+            option.setDefaultDishOptionItemId(items.get(0).getId());
+        }
+        option.setDishOptionItems(items);
+        return option;
+    }
+
+    private static Map<String, String> localized(String text) {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("ko_KR", text);
+        values.put("en_US", "");
+        return values;
+    }
+
+    private static String base64(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+}
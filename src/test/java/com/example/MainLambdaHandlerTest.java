@@ -1,7 +1,23 @@
 package com.example;
 
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.read.ListAppender;
 import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,14 +43,97 @@ class MainLambdaHandlerTest {
     }
 
     @Test
-    void testMainLambdaHandlerWithSampleJson() throws Exception {
+    void testMainLambdaHandlerWithSampleJson(@TempDir Path spoolDir) throws Exception {
         KafkaEvent event = TestUtils.buildKafkaEventFromJson();
-        MainLambdaHandler handler = new MainLambdaHandler();
+        InMemoryCassandraSession cassandra = InMemoryCassandraSession.builder().build();
+        MainLambdaHandler handler = new MainLambdaHandler(new CassandraClientProvider(() -> cassandra),
+                () -> TestUtils.testConfig(spoolDir));
 
         String result = handler.handleRequest(event, null);
 
-        // assertions, etc.
-        System.out.println("Lambda result: " + result);
+        assertEquals("completed", result);
+        assertEquals(2, cassandra.rowCount(Dish.class));
+        assertEquals(1726727253238000000L, cassandra.row(Dish.class, 77593308L).get("version"));
+        assertEquals(1726727253306000000L, cassandra.row(Dish.class, 77593296L).get("version"));
+        assertEquals(679858L, cassandra.row(Dish.class, 77593296L).get("storeId"));
+    }
+
+    @Test
+    void parseFailuresFailTheInvocationUnlessConfiguredOtherwise(@TempDir Path spoolDir) throws Exception {
+        KafkaEvent event = TestUtils.buildKafkaEventFromJson();
+        event.getRecords().get("o2o.store.1-6").get(1).setValue("bm90IGpzb24=");
+        InMemoryCassandraSession cassandra = InMemoryCassandraSession.builder().build();
+        EnvironmentConfig config = TestUtils.testConfig(spoolDir);
+        assertTrue(config.getFatalFailures().contains(FailureKind.PARSE_ERROR));
+
+        MainLambdaHandler strict = new MainLambdaHandler(new CassandraClientProvider(() -> cassandra), () -> config);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> strict.handleRequest(event, null));
+        assertTrue(e.getMessage().contains("Failed to parse 1 record(s)"), e.getMessage());
+
+        MainLambdaHandler lenient = new MainLambdaHandler(new CassandraClientProvider(() -> cassandra),
+                () -> config.toBuilder().fatalFailures(EnumSet.of(FailureKind.SPOOL_ERROR)).build());
+        assertEquals("completed", lenient.handleRequest(event, null));
+        assertEquals(1, cassandra.rowCount(Dish.class));
+    }
+
+    @Test
+    void missingAvroSchemaFailsTheInvocationBeforeAnyRecord(@TempDir Path spoolDir) throws Exception {
+        InMemoryCassandraSession cassandra = InMemoryCassandraSession.builder().build();
+        MainLambdaHandler handler = new MainLambdaHandler(new CassandraClientProvider(() -> cassandra),
+                () -> TestUtils.testConfig(spoolDir).toBuilder().avroSchemaIds(Set.of(999)).build());
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> handler.handleRequest(TestUtils.buildKafkaEventFromJson(), null));
+        assertTrue(e.getMessage().contains("[999]"), e.getMessage());
+        assertEquals(0, cassandra.rowCount(Dish.class));
+    }
+
+    @Test
+    void partialUpdatesKeepTheColumnsOfSupersededRecordsWhenNullsAreSkipped(@TempDir Path spoolDir) {
+        KafkaEvent event = new KafkaEvent();
+        event.setRecords(Map.of("o2o.store.1-8", List.of(
+                record(1, "{\"id\":5,\"version\":10,\"storeId\":600}"),
+                record(2, "{\"id\":5,\"version\":20}"))));
+        InMemoryCassandraSession cassandra = InMemoryCassandraSession.builder().build();
+        MainLambdaHandler handler = new MainLambdaHandler(new CassandraClientProvider(() -> cassandra),
+                () -> TestUtils.testConfig(spoolDir).toBuilder().writeEngine(WriteEngine.Kind.PREPARED).build());
+
+        assertEquals("completed", handler.handleRequest(event, null));
+        assertEquals(20L, cassandra.row(Dish.class, 5L).get("version"));
+        assertEquals(600L, cassandra.row(Dish.class, 5L).get("storeId"));
     }
 
+    @Test
+    void summaryLineIsWrittenSynchronously(@TempDir Path spoolDir) throws Exception {
+        Logger summary = (Logger) LoggerFactory.getLogger("summary");
+        ListAppender<ILoggingEvent> lines = new ListAppender<>();
+        lines.start();
+        summary.addAppender(lines);
+        try {
+            new MainLambdaHandler(new CassandraClientProvider(() -> InMemoryCassandraSession.builder().build()),
+                    () -> TestUtils.testConfig(spoolDir)).handleRequest(TestUtils.buildKafkaEventFromJson(), null);
+        } finally {
+            summary.detachAppender(lines);
+        }
+
+        assertEquals(1, lines.list.size());
+        assertTrue(lines.list.get(0).getFormattedMessage().startsWith("Lambda Execution Summary: processed=2"));
+        assertFalse(summary.isAdditive(), "the summary must not reach the root's async appender");
+        List<Appender<ILoggingEvent>> appenders = new ArrayList<>();
+        summary.iteratorForAppenders().forEachRemaining(appenders::add);
+        assertFalse(appenders.isEmpty());
+        for (Appender<ILoggingEvent> appender : appenders) {
+            assertFalse(appender instanceof AsyncAppender, appender.getName());
+        }
+    }
+
+    private static KafkaEvent.KafkaEventRecord record(long offset, String json) {
+        KafkaEvent.KafkaEventRecord r = new KafkaEvent.KafkaEventRecord();
+        r.setTopic("o2o.store.1");
+        r.setPartition(8);
+        r.setOffset(offset);
+        r.setKey(Base64.getEncoder().encodeToString("5".getBytes(StandardCharsets.UTF_8)));
+        r.setValue(Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8)));
+        return r;
+    }
 }
@@ -0,0 +1,66 @@
+package com.example;
+
+import com.datastax.driver.mapping.annotations.Frozen;
+import com.example.annotations.PartitionKey;
+import com.example.annotations.VersionKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelMetadataTest {
+
+    @Test
+    void readsKeysAndColumnsThroughGeneratedAccessors() {
+        ModelMetadata metadata = ModelMetadata.of(Dish.class);
+        assertSame(metadata, ModelMetadata.of(Dish.class));
+
+        Dish dish = new Dish();
+        dish.setId(42L);
+        dish.setVersion(7L);
+        dish.setDeleted(true);
+
+        assertEquals("id", metadata.getPartitionKey().getName());
+        assertEquals("version", metadata.getVersion().getName());
+        assertEquals(42L, metadata.partitionKeyOf(dish));
+        assertEquals(7L, metadata.versionOf(dish));
+        assertEquals(Dish.class.getDeclaredFields().length, metadata.getColumns().size());
+
+        ModelMetadata.Column deleted = metadata.getColumns().stream()
+                .filter(c -> c.getName().equals("deleted"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(Boolean.TRUE, deleted.get(dish));
+        assertEquals("deleted", deleted.getCqlName());
+        assertEquals("storeid", metadata.getColumns().get(2).getCqlName());
+    }
+
+    @Test
+    void modelsWithNonFrozenListsAreNotIdempotent() {
+        assertFalse(ModelMetadata.of(Dish.class).isIdempotent());
+        assertTrue(ModelMetadata.of(ItemCatalog.class).isIdempotent());
+        assertTrue(ModelMetadata.of(FrozenList.class).isIdempotent());
+    }
+
+    @Test
+    void rejectsModelsWithoutPartitionKey() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> ModelMetadata.of(NoPartitionKey.class));
+        assertTrue(e.getMessage().contains("@PartitionKey"));
+    }
+
+    static class FrozenList {
+        @PartitionKey
+        private Long id;
+        @VersionKey
+        private Long version;
+        @Frozen
+        private List<String> tags;
+    }
+
+    static class NoPartitionKey {
+        @VersionKey
+        private Long version;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParserFactoryTest {
+
+    @Test
+    void modelClassNameGivesACachedJsonParser() throws Exception {
+        ParserInterface<?> parser = ParserFactory.createParser(Dish.class.getName());
+
+        assertTrue(parser instanceof ModelJsonParser);
+        assertSame(parser, ParserFactory.createParser(Dish.class.getName()));
+        assertEquals(Dish.class, parser.getModelClass());
+
+        KafkaEvent.KafkaEventRecord record = TestUtils.buildKafkaEventFromJson().getRecords().get("o2o.store.1-6").get(0);
+        assertEquals(new DishParser().parseRecord(record), parser.parseRecord(record));
+    }
+
+    @Test
+    void parserClassNameIsInstantiatedOnce() {
+        ParserInterface<?> parser = ParserFactory.createParser(DishParser.class.getName());
+
+        assertTrue(parser instanceof DishParser);
+        assertSame(parser, ParserFactory.createParser(DishParser.class.getName()));
+    }
+
+    @Test
+    void invalidModelFailsFast() {
+        // No @PartitionKey / @VersionKey
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> ParserFactory.createParser(DishOption.class.getName()));
+        assertTrue(e.getMessage().contains("DishOption"));
+        assertThrows(IllegalArgumentException.class, () -> ParserFactory.createParser("com.example.NoSuchModel"));
+    }
+}
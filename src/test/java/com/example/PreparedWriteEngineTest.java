@@ -0,0 +1,142 @@
+package com.example;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.mapping.annotations.Column;
+import com.datastax.driver.mapping.annotations.Transient;
+import com.example.annotations.PartitionKey;
+import com.example.annotations.VersionKey;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.TestUtils.dish;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PreparedWriteEngineTest {
+
+    @Test
+    void preparesOneStatementPerSetOfNonNullColumns() {
+        RecordingSession session = new RecordingSession();
+        PreparedWriteEngine engine = new PreparedWriteEngine(session.proxy(), "eats", "dish", Dish.class);
+
+        engine.statementFor(dish(1L, 10L, 600L), 10L);
+        engine.statementFor(dish(2L, 20L, 601L), 20L);
+        engine.statementFor(dish(3L, 30L, null), 30L);
+
+        assertEquals(List.of(
+                "INSERT INTO eats.dish (id, version, storeid) VALUES (?, ?, ?) USING TIMESTAMP ?",
+                "INSERT INTO eats.dish (id, version) VALUES (?, ?) USING TIMESTAMP ?"), session.prepared);
+    }
+
+    @Test
+    void bindsOnlyNonNullValuesFollowedByTheTimestamp() {
+        RecordingSession session = new RecordingSession();
+        PreparedWriteEngine engine = new PreparedWriteEngine(session.proxy(), null, "dish", Dish.class);
+
+        engine.statementFor(dish(1L, 10L, 600L), 1_726_727_253_238_000_000L);
+        engine.statementFor(dish(2L, 20L, null), 20L);
+
+        assertEquals(List.of(1L, 10L, 600L, 1_726_727_253_238_000_000L), session.bound.get(0));
+        assertEquals(List.of(2L, 20L, 20L), session.bound.get(1));
+    }
+
+    @Test
+    void statementsWritingANonFrozenListAreNotIdempotent() {
+        RecordingSession session = new RecordingSession();
+        PreparedWriteEngine engine = new PreparedWriteEngine(session.proxy(), null, "dish", Dish.class);
+        Dish withImages = dish(2L, 20L, 600L);
+        withImages.setImagePaths(List.of("a.jpg"));
+
+        engine.statementFor(dish(1L, 10L, 600L), 10L);
+        engine.statementFor(withImages, 20L);
+
+        assertEquals(Boolean.TRUE, session.idempotence.get("INSERT INTO dish (id, version, storeid) VALUES (?, ?, ?) USING TIMESTAMP ?"));
+        assertEquals(Boolean.FALSE, session.idempotence.get(
+                "INSERT INTO dish (id, version, storeid, imagepaths) VALUES (?, ?, ?, ?) USING TIMESTAMP ?"));
+    }
+
+    @Test
+    void writesTheColumnsTheMapperWouldWrite() {
+        RecordingSession session = new RecordingSession();
+        PreparedWriteEngine engine = new PreparedWriteEngine(session.proxy(), "Eats", "order", Annotated.class);
+        Annotated entity = new Annotated();
+        entity.id = 1L;
+        entity.version = 10L;
+        entity.label = "a";
+        entity.order = 2;
+        entity.displayName = "A";
+        entity.cached = "not a column";
+
+        engine.statementFor(entity, 10L);
+        new PreparedWriteEngine(session.proxy(), null, "\"Orders\"", Annotated.class).statementFor(entity, 10L);
+
+        assertEquals(List.of(
+                "INSERT INTO eats.\"order\" (item_id, version, \"Label\", \"order\", displayname)"
+                        + " VALUES (?, ?, ?, ?, ?) USING TIMESTAMP ?",
+                "INSERT INTO \"Orders\" (item_id, version, \"Label\", \"order\", displayname)"
+                        + " VALUES (?, ?, ?, ?, ?) USING TIMESTAMP ?"),
+                session.prepared);
+    }
+
+    @Test
+    void rejectsEntitiesWithoutAPartitionKey() {
+        PreparedWriteEngine engine = new PreparedWriteEngine(new RecordingSession().proxy(), null, "dish", Dish.class);
+
+        assertThrows(IllegalArgumentException.class, () -> engine.statementFor(dish(null, 10L, 600L), 10L));
+        assertThrows(IllegalArgumentException.class, () -> new PreparedWriteEngine(new RecordingSession().proxy(),
+                null, "", Dish.class));
+    }
+
+    static class Annotated {
+        @PartitionKey
+        @Column(name = "ITEM_ID")
+        private Long id;
+        @VersionKey
+        private Long version;
+        @Column(name = "Label", caseSensitive = true)
+        private String label;
+        private Integer order;
+        private String displayName;
+        @Transient
+        private String cached;
+    }
+
+    /**
+     * A Session stub recording the CQL it prepares, and the values bound to and idempotence set on each
+     * prepared statement. Bound statements are not built: the engine's output is only observed here.
+     */
+    private static final class RecordingSession {
+
+        final List<String> prepared = new ArrayList<>();
+        final List<List<Object>> bound = new ArrayList<>();
+        final Map<String, Boolean> idempotence = new HashMap<>();
+
+        Session proxy() {
+            return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                    (proxy, method, args) -> "prepare".equals(method.getName()) ? statement((String) args[0]) : null);
+        }
+
+        private PreparedStatement statement(String cql) {
+            prepared.add(cql);
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "setIdempotent":
+                                idempotence.put(cql, (Boolean) args[0]);
+                                return proxy;
+                            case "bind":
+                                bound.add(Arrays.asList((Object[]) args[0]));
+                                return null;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.TestUtils.dish;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordCoalescerTest {
+
+    private static final ModelMetadata DISH = ModelMetadata.of(Dish.class);
+
+    @Test
+    void keepsNewestOffsetPerKeyWithinPartition() {
+        KafkaEvent.KafkaEventRecord a1 = record(0, 10, "a");
+        KafkaEvent.KafkaEventRecord b1 = record(0, 11, "b");
+        KafkaEvent.KafkaEventRecord a2 = record(0, 12, "a");
+        KafkaEvent.KafkaEventRecord noKey = record(0, 13, null);
+
+        RecordCoalescer.CoalescedBatch batch = RecordCoalescer.coalesce(Arrays.asList(a1, b1, a2, noKey), true);
+
+        assertEquals(Arrays.asList(b1, a2, noKey), batch.getRecords());
+        assertEquals(1, batch.getDroppedCount());
+        assertFalse(batch.isContested(a2));
+    }
+
+    @Test
+    void resolvesKeysSpanningPartitionsByVersion() {
+        KafkaEvent.KafkaEventRecord p0 = record(0, 100, "a");
+        KafkaEvent.KafkaEventRecord p1 = record(1, 5, "a");
+
+        RecordCoalescer.CoalescedBatch batch = RecordCoalescer.coalesce(Arrays.asList(p0, p1), true);
+        assertEquals(2, batch.getRecords().size());
+        assertTrue(batch.isContested(p0));
+        assertTrue(batch.isContested(p1));
+
+        Dish newer = dish(1, 7);
+        Dish older = dish(1, 3);
+        batch.offerContested(p0, newer, DISH);
+        batch.offerContested(p1, older, DISH);
+
+        List<Object> winners = List.copyOf(batch.getContestedWinners());
+        assertEquals(List.of(newer), winners);
+        assertEquals(1, batch.getDroppedCount());
+    }
+
+    @Test
+    void keepsSupersededRecordsTheNewestDoesNotCoverWhenNullsAreSkipped() {
+        KafkaEvent.KafkaEventRecord a1 = record(0, 10, "a");
+        KafkaEvent.KafkaEventRecord b1 = record(0, 11, "b");
+        KafkaEvent.KafkaEventRecord a2 = record(0, 12, "a");
+        KafkaEvent.KafkaEventRecord b2 = record(0, 13, "b");
+
+        RecordCoalescer.CoalescedBatch batch = RecordCoalescer.coalesce(Arrays.asList(a1, b1, a2, b2), false);
+        assertEquals(Arrays.asList(a1, b1, a2, b2), batch.getRecords());
+        assertTrue(batch.isSuperseded(a1));
+        assertFalse(batch.isSuperseded(a2));
+
+        Dish full = dish(1, 100);
+        Dish partial = dish(1L, 200L, null);
+        batch.hold(a1, full);
+        batch.hold(b1, dish(2, 100));
+
+        // The partial update leaves storeId null: the older record still has to write it
+        assertEquals(List.of(full), batch.release(a2, partial, DISH));
+        assertEquals(List.of(), batch.release(b2, dish(2, 200), DISH));
+        assertEquals(1, batch.getDroppedCount());
+        assertTrue(batch.releaseAll("o2o.store.1-0").isEmpty());
+    }
+
+    @Test
+    void heldRecordsAreWrittenWhenTheNewestOneNeverArrives() {
+        KafkaEvent.KafkaEventRecord a1 = record(0, 10, "a");
+        KafkaEvent.KafkaEventRecord a2 = record(0, 12, "a");
+
+        RecordCoalescer.CoalescedBatch batch = RecordCoalescer.coalesce(Arrays.asList(a1, a2), false);
+        Dish held = dish(1, 100);
+        batch.hold(a1, held);
+
+        assertEquals(List.of(held), batch.releaseAll("o2o.store.1-0"));
+        assertEquals(0, batch.getDroppedCount());
+    }
+
+    @Test
+    void keepsContestedRecordsTheWinnerDoesNotCoverWhenNullsAreSkipped() {
+        KafkaEvent.KafkaEventRecord p0 = record(0, 100, "a");
+        KafkaEvent.KafkaEventRecord p1 = record(1, 5, "a");
+        KafkaEvent.KafkaEventRecord p2 = record(2, 7, "a");
+
+        RecordCoalescer.CoalescedBatch batch = RecordCoalescer.coalesce(Arrays.asList(p0, p1, p2), false);
+        Dish partial = dish(1L, 7L, null);
+        Dish older = dish(1, 3);
+        Dish oldest = dish(1, 2);
+        batch.offerContested(p0, partial, DISH);
+        batch.offerContested(p1, older, DISH);
+        batch.offerContested(p2, oldest, DISH);
+
+        // oldest is covered by older, which the partial newest one does not cover
+        assertEquals(List.of(partial, older), List.copyOf(batch.getContestedWinners()));
+        assertEquals(1, batch.getDroppedCount());
+    }
+
+    private static KafkaEvent.KafkaEventRecord record(int partition, long offset, String key) {
+        KafkaEvent.KafkaEventRecord r = new KafkaEvent.KafkaEventRecord();
+        r.setTopic("o2o.store.1");
+        r.setPartition(partition);
+        r.setOffset(offset);
+        r.setKey(key);
+        return r;
+    }
+}
@@ -0,0 +1,246 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.example.TestUtils.dish;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordPipelineTest {
+
+    @Test
+    void recordsOfATopicPartitionAreParsedAndWrittenInOffsetOrder() {
+        OffsetParser parser = new OffsetParser(r -> { });
+        RecordingRows rows = new RecordingRows();
+        RecordCoalescer.CoalescedBatch batch = RecordCoalescer.coalesce(records(4, 200), true);
+
+        RecordPipeline.Result result = new RecordPipeline(4, 8).run(batch, invocation(parser, rows));
+
+        assertEquals(800, result.getWritten());
+        for (int partition = 0; partition < 4; partition++) {
+            List<Long> offsets = new ArrayList<>();
+            for (long offset = 0; offset < 200; offset++) {
+                offsets.add(offset);
+            }
+            assertEquals(offsets, parser.parsed.get(partition), "parse order of partition " + partition);
+            assertEquals(offsets, rows.versionsOfStore(partition), "write order of partition " + partition);
+        }
+    }
+
+    @Test
+    void fullChunksAreWrittenWhileLaterRecordsAreStillParsed() {
+        CountDownLatch firstWrite = new CountDownLatch(1);
+        OffsetParser parser = new OffsetParser(r -> {
+            // The first two chunks of 2 are handed to the writer before offset 4 is parsed
+            if (r.getOffset() >= 4 && !await(firstWrite)) {
+                throw new IllegalStateException("Nothing written before offset " + r.getOffset() + " was parsed");
+            }
+        });
+        RecordingRows rows = new RecordingRows() {
+            @Override
+            public CompletableFuture<Void> writeAsync(List<Object> entities, long[] timestamps) {
+                firstWrite.countDown();
+                return super.writeAsync(entities, timestamps);
+            }
+        };
+
+        RecordPipeline.Result result = new RecordPipeline(1, 2)
+                .run(RecordCoalescer.coalesce(records(1, 10), true), invocation(parser, rows));
+
+        assertEquals(0, result.getParseFailures());
+        assertEquals(10, result.getWritten());
+    }
+
+    @Test
+    void countsMatchASequentialParseAndWriteOfTheSameBatch() throws Exception {
+        List<KafkaEvent.KafkaEventRecord> records = KafkaEventFlattener.flatten(KafkaEventGenerator.builder()
+                .partitions(3)
+                .recordsPerPartition(100)
+                .distinctKeys(60)
+                .build()
+                .generate());
+        // The last record of a partition is never superseded, so both reach the parser
+        records.get(99).setValue("bm90IGpzb24=");
+        records.get(299).setValue("bm90IGpzb24=");
+        ParserInterface<?> parser = ParserFactory.createParser(Dish.class.getName());
+        RecordingRows rows = new RecordingRows();
+        rows.failing.add(7L);
+
+        // What MainLambdaHandler did before the pipeline: parse every coalesced record on one thread, then write
+        RecordCoalescer.CoalescedBatch sequential = RecordCoalescer.coalesce(records, true);
+        ModelMetadata metadata = ModelMetadata.of(Dish.class);
+        int processed = 0;
+        int failed = 0;
+        List<Object> models = new ArrayList<>();
+        for (KafkaEvent.KafkaEventRecord r : sequential.getRecords()) {
+            try {
+                Object model = parser.parseRecord(r);
+                if (model == null) {
+                    continue;
+                }
+                processed++;
+                if (sequential.isContested(r)) {
+                    sequential.offerContested(r, model, metadata);
+                } else {
+                    models.add(model);
+                }
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        models.addAll(sequential.getContestedWinners());
+        long failingWrites = models.stream().filter(m -> ((Dish) m).getId() == 7L).count();
+
+        RecordPipeline.Result result = new RecordPipeline(3, 16)
+                .run(RecordCoalescer.coalesce(records, true), invocation(parser, rows));
+
+        assertEquals(2, failed);
+        assertEquals(1, failingWrites);
+        assertEquals(processed, result.getParsed());
+        assertEquals(failed, result.getParseFailures());
+        assertEquals(models.size() - failingWrites, result.getWritten());
+        assertEquals(failingWrites, result.getWriteFailures());
+    }
+
+    @Test
+    void parseThreadsSetsHowManyPartitionsAreParsedAtOnce() {
+        OffsetParser sequential = new OffsetParser(r -> { });
+        new RecordPipeline(1, 8).run(RecordCoalescer.coalesce(records(6, 20), true),
+                invocation(sequential, new RecordingRows()));
+
+        // Three partitions can only all reach the barrier if three workers parse them at the same time
+        CyclicBarrier threePartitions = new CyclicBarrier(3);
+        OffsetParser parallel = new OffsetParser(r -> {
+            if (r.getOffset() == 0) {
+                try {
+                    threePartitions.await(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Partitions were not parsed in parallel", e);
+                }
+            }
+        });
+        RecordPipeline.Result result = new RecordPipeline(3, 8).run(RecordCoalescer.coalesce(records(6, 20), true),
+                invocation(parallel, new RecordingRows()));
+
+        assertEquals(1, sequential.threads.size());
+        assertEquals(0, result.getParseFailures());
+        assertEquals(3, parallel.threads.size());
+    }
+
+    private static RecordPipeline.Invocation invocation(ParserInterface<?> parser, CassandraSession.RowWriter rows) {
+        AsyncCassandraWriter writer = new AsyncCassandraWriter(AsyncCassandraWriter.Settings.builder()
+                .rows(rows)
+                .modelClass(Dish.class)
+                .window(new AdaptiveWriteWindow(64, 64, 1000))
+                .retryPolicy(WriteRetryPolicy.fromConfig(EnvironmentConfig.builder().writeMaxAttempts(1).build()))
+                .build());
+        return RecordPipeline.Invocation.builder()
+                .routes(TopicRoutes.single(parser, writer))
+                .metrics(new InvocationMetrics("Dish"))
+                .nullsWritten(true)
+                .build();
+    }
+
+    /**
+     * {@code recordsPerPartition} records in each partition, every one with its own key.
+     */
+    private static List<KafkaEvent.KafkaEventRecord> records(int partitions, int recordsPerPartition) {
+        List<KafkaEvent.KafkaEventRecord> records = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            for (int offset = 0; offset < recordsPerPartition; offset++) {
+                KafkaEvent.KafkaEventRecord r = new KafkaEvent.KafkaEventRecord();
+                r.setTopic("o2o.store.1");
+                r.setPartition(partition);
+                r.setOffset(offset);
+                r.setKey(String.valueOf(partition * recordsPerPartition + offset + 1));
+                r.setValue("");
+                records.add(r);
+            }
+        }
+        return records;
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Parses a record into a Dish with the record's key as id, its offset as version and its partition as
+     * storeId, recording the parse order of each partition and the threads parsing.
+     */
+    private static final class OffsetParser implements ParserInterface<Dish> {
+
+        final Map<Integer, List<Long>> parsed = new ConcurrentHashMap<>();
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        private final Consumer<KafkaEvent.KafkaEventRecord> beforeParse;
+
+        OffsetParser(Consumer<KafkaEvent.KafkaEventRecord> beforeParse) {
+            this.beforeParse = beforeParse;
+        }
+
+        @Override
+        public Dish parseRecord(KafkaEvent.KafkaEventRecord record) {
+            beforeParse.accept(record);
+            threads.add(Thread.currentThread().getName());
+            parsed.computeIfAbsent(record.getPartition(), p -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(record.getOffset());
+            return dish(Long.parseLong(record.getKey()), record.getOffset(), (long) record.getPartition());
+        }
+
+        @Override
+        public Class<Dish> getModelClass() {
+            return Dish.class;
+        }
+    }
+
+    /**
+     * A RowWriter acknowledging every write in the order it is called, except those of the failing dish ids.
+     */
+    private static class RecordingRows implements CassandraSession.RowWriter {
+
+        final List<Dish> written = Collections.synchronizedList(new ArrayList<>());
+        final Set<Long> failing = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public CompletableFuture<Void> writeAsync(List<Object> entities, long[] timestamps) {
+            for (Object entity : entities) {
+                if (failing.contains(((Dish) entity).getId())) {
+                    return CompletableFuture.failedFuture(new IllegalStateException("write failed"));
+                }
+            }
+            for (Object entity : entities) {
+                written.add((Dish) entity);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<Long> versionsOfStore(long storeId) {
+            List<Long> versions = new ArrayList<>();
+            synchronized (written) {
+                for (Dish dish : written) {
+                    if (dish.getStoreId() == storeId) {
+                        versions.add(dish.getVersion());
+                    }
+                }
+            }
+            return versions;
+        }
+    }
+}
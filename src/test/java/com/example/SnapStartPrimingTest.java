@@ -0,0 +1,81 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapStartPrimingTest {
+
+    @Test
+    void firstRecordAfterRestoreNeedsNoFurtherInitialization(@TempDir Path spoolDir) throws Exception {
+        AtomicInteger connects = new AtomicInteger();
+        CassandraClientProvider provider = new CassandraClientProvider(() -> {
+            connects.incrementAndGet();
+            return InMemoryCassandraSession.builder().build();
+        });
+        Supplier<EnvironmentConfig> config = () -> TestUtils.testConfig(spoolDir).toBuilder()
+                .parserName(CountingParser.class.getName())
+                .build();
+        SnapStartPriming priming = new SnapStartPriming(provider, config);
+        // Init phase: the session is open when the snapshot is taken
+        provider.getSession();
+
+        priming.beforeCheckpoint(null);
+
+        assertFalse(provider.isHealthy(), "sockets must not be in the snapshot");
+        assertEquals(1, CountingParser.INSTANCES.get());
+        assertEquals(SnapStartPriming.PRIMING_ROUNDS, CountingParser.PARSED.get());
+
+        priming.afterRestore(null);
+
+        assertTrue(provider.isHealthy());
+        assertEquals(2, connects.get());
+
+        MainLambdaHandler handler = new MainLambdaHandler(provider, config);
+        assertEquals("completed", handler.handleRequest(TestUtils.buildKafkaEventFromJson(), null));
+
+        // Neither a parser nor a connection was built for the real records
+        assertEquals(1, CountingParser.INSTANCES.get());
+        assertEquals(2, connects.get());
+        assertEquals(SnapStartPriming.PRIMING_ROUNDS + 2, CountingParser.PARSED.get());
+        assertEquals(2, ((InMemoryCassandraSession) provider.getSession()).rowCount(Dish.class));
+    }
+
+    @Test
+    void everyParserPrimesWithItsOwnWireFormat() throws Exception {
+        for (ParserInterface<?> parser : new ParserInterface<?>[]{new DishParser(), new ItemCatalogParser()}) {
+            assertFalse(parser.primingRecords().isEmpty(), parser.getClass().getSimpleName());
+            for (KafkaEvent.KafkaEventRecord record : parser.primingRecords()) {
+                assertNotNull(parser.parseRecord(record), parser.getClass().getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * A Dish parser that counts its instances and parsed records; only used by this test, so ParserFactory
+     * has not cached it before.
+     */
+    static class CountingParser extends JsonRecordParser<Dish> {
+
+        static final AtomicInteger INSTANCES = new AtomicInteger();
+        static final AtomicInteger PARSED = new AtomicInteger();
+
+        CountingParser() {
+            super(Dish.class);
+            INSTANCES.incrementAndGet();
+        }
+
+        // Both overloads end here: priming parses without a histogram, the pipeline with one
+        @Override
+        public Dish parseRecord(KafkaEvent.KafkaEventRecord record, LatencyHistogram decodeLatency) throws Exception {
+            PARSED.incrementAndGet();
+            return super.parseRecord(record, decodeLatency);
+        }
+    }
+}
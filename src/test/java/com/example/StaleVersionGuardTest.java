@@ -0,0 +1,98 @@
+package com.example;
+
+import com.example.annotations.PartitionKey;
+import com.example.annotations.VersionKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.example.TestUtils.dish;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StaleVersionGuardTest {
+
+    @Test
+    void dropsVersionsNotNewerThanTheAcknowledgedOne() {
+        StaleVersionGuard guard = new StaleVersionGuard(Dish.class, 1024, true);
+        ack(guard, dish(1, 200));
+
+        List<Object> fresh = guard.dropStale(List.of(dish(1, 100), dish(1, 200), dish(1, 300), dish(2, 50)));
+
+        assertEquals(List.of(300L, 50L), versions(fresh));
+        assertEquals(2, guard.getDropped());
+    }
+
+    @Test
+    void onlyAcknowledgedWritesArePopulated() {
+        StaleVersionGuard guard = new StaleVersionGuard(Dish.class, 1024, true);
+        Dish failed = dish(1, 200);
+        guard.onWritten(List.of(failed), List.of(failed));
+
+        assertEquals(1, guard.dropStale(List.of(dish(1, 100))).size());
+
+        // Acks arriving out of order never lower the version
+        ack(guard, dish(1, 300));
+        ack(guard, dish(1, 150));
+        assertTrue(guard.dropStale(List.of(dish(1, 250))).isEmpty());
+    }
+
+    @Test
+    void keepsOlderRecordsWritingColumnsTheNewerOneLeftNull() {
+        StaleVersionGuard guard = new StaleVersionGuard(Dish.class, 1024, false);
+        Dish newer = dish(1, 200);
+        newer.setStoreId(null);
+        ack(guard, newer);
+
+        assertEquals(1, guard.dropStale(List.of(dish(1, 100))).size());
+        Dish older = dish(1, 100);
+        older.setStoreId(null);
+        assertTrue(guard.dropStale(List.of(older)).isEmpty());
+    }
+
+    @Test
+    void staysBoundedAndForgetsEvictedKeys() {
+        StaleVersionGuard guard = new StaleVersionGuard(Dish.class, 4, true);
+        for (long id = 1; id <= 1000; id++) {
+            ack(guard, dish(id, 100));
+        }
+        long remembered = 0;
+        for (long id = 1; id <= 1000; id++) {
+            remembered += guard.dropStale(List.of(dish(id, 100))).isEmpty() ? 1 : 0;
+        }
+        assertTrue(remembered <= 4, "remembered " + remembered);
+    }
+
+    @Test
+    void fallsBackToAnLruMapForNonLongKeys() {
+        StaleVersionGuard guard = new StaleVersionGuard(Coded.class, 2, true);
+        ack(guard, coded("a", 10));
+        ack(guard, coded("b", 10));
+        ack(guard, coded("c", 10));
+
+        assertEquals(1, guard.dropStale(List.of(coded("a", 5))).size());
+        assertTrue(guard.dropStale(List.of(coded("c", 5))).isEmpty());
+    }
+
+    private static void ack(StaleVersionGuard guard, Object entity) {
+        guard.onWritten(List.of(entity), Collections.emptyList());
+    }
+
+    private static List<Long> versions(List<Object> dishes) {
+        return dishes.stream().map(d -> ((Dish) d).getVersion()).toList();
+    }
+
+    private static Coded coded(String code, long version) {
+        Coded coded = new Coded();
+        coded.code = code;
+        coded.version = version;
+        return coded;
+    }
+
+    static class Coded {
+        @PartitionKey
+        private String code;
+        @VersionKey
+        private Long version;
+    }
+}
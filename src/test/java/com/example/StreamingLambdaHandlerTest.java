@@ -0,0 +1,117 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingLambdaHandlerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void streamsSampleJson(@TempDir Path spoolDir) throws Exception {
+        InMemoryCassandraSession cassandra = InMemoryCassandraSession.builder().build();
+        StreamingLambdaHandler handler = new StreamingLambdaHandler(new CassandraClientProvider(() -> cassandra),
+                () -> TestUtils.testConfig(spoolDir));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        handler.handleRequest(TestUtils.sampleKafkaJsonStream(), output, null);
+
+        assertEquals("\"completed\"", output.toString(StandardCharsets.UTF_8));
+        assertEquals(2, cassandra.rowCount(Dish.class));
+        assertEquals(1726727253238000000L, cassandra.row(Dish.class, 77593308L).get("version"));
+        assertEquals(679858L, cassandra.row(Dish.class, 77593296L).get("storeId"));
+    }
+
+    @Test
+    void readerSkipsUnknownFieldsAndKeepsRecordOrder() throws Exception {
+        String json = "{\"eventSource\":\"SelfManagedKafka\",\"extra\":{\"records\":[1,2]},\"records\":{"
+                + "\"t-0\":[{\"topic\":\"t\",\"partition\":0,\"offset\":1,\"unknown\":true},"
+                + "{\"topic\":\"t\",\"partition\":0,\"offset\":2}],"
+                + "\"t-1\":[{\"topic\":\"t\",\"partition\":1,\"offset\":7,\"headers\":[]}]}}";
+        List<Long> offsets = new ArrayList<>();
+
+        int read = KafkaEventStreamReader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                r -> offsets.add(r.getOffset()));
+
+        assertEquals(3, read);
+        assertEquals(List.of(1L, 2L, 7L), offsets);
+    }
+
+    @Test
+    void streamingAndMaterializedHandlersEndWithTheSameRows(@TempDir Path spoolDir) throws Exception {
+        // In-order versions: the highest offset of a key is also its highest version, so coalescing
+        // (MainLambdaHandler) and writing every record (StreamingLambdaHandler) must agree
+        KafkaEvent event = KafkaEventGenerator.builder()
+                .partitions(3)
+                .recordsPerPartition(300)
+                .distinctKeys(200)
+                .dishOptions(2)
+                .optionItemsPerOption(2)
+                .build()
+                .generate();
+        byte[] payload = MAPPER.writeValueAsBytes(event);
+
+        InMemoryCassandraSession materialized = InMemoryCassandraSession.builder().build();
+        new MainLambdaHandler(new CassandraClientProvider(() -> materialized),
+                () -> TestUtils.testConfig(spoolDir.resolve("main"))).handleRequest(event, null);
+
+        InMemoryCassandraSession streamed = InMemoryCassandraSession.builder().build();
+        new StreamingLambdaHandler(new CassandraClientProvider(() -> streamed),
+                () -> TestUtils.testConfig(spoolDir.resolve("streaming")))
+                .handleRequest(new ByteArrayInputStream(payload), new ByteArrayOutputStream(), null);
+
+        assertEquals(materialized.rowCount(Dish.class), streamed.rowCount(Dish.class));
+        for (List<KafkaEvent.KafkaEventRecord> partition : event.getRecords().values()) {
+            for (KafkaEvent.KafkaEventRecord record : partition) {
+                long id = Long.parseLong(new String(Base64.getDecoder().decode(record.getKey()),
+                        StandardCharsets.UTF_8));
+                assertEquals(materialized.row(Dish.class, id), streamed.row(Dish.class, id), "dish " + id);
+            }
+        }
+    }
+
+    @Test
+    void streamedChunksAreCoalescedLikeTheMaterializedBatch(@TempDir Path spoolDir) throws Exception {
+        // Few keys over small chunks: every chunk repeats keys, and a key's chunks must be written in order
+        KafkaEvent event = KafkaEventGenerator.builder()
+                .partitions(2)
+                .recordsPerPartition(400)
+                .distinctKeys(20)
+                .build()
+                .generate();
+        byte[] payload = MAPPER.writeValueAsBytes(event);
+        UnaryOperator<EnvironmentConfig> config = c -> c.toBuilder()
+                .writeEngine(WriteEngine.Kind.PREPARED)
+                .writeChunkSize(16)
+                .parseThreads(4)
+                .build();
+
+        InMemoryCassandraSession materialized = InMemoryCassandraSession.builder().build();
+        new MainLambdaHandler(new CassandraClientProvider(() -> materialized),
+                () -> config.apply(TestUtils.testConfig(spoolDir.resolve("main")))).handleRequest(event, null);
+
+        InMemoryCassandraSession streamed = InMemoryCassandraSession.builder().build();
+        new StreamingLambdaHandler(new CassandraClientProvider(() -> streamed),
+                () -> config.apply(TestUtils.testConfig(spoolDir.resolve("streaming"))))
+                .handleRequest(new ByteArrayInputStream(payload), new ByteArrayOutputStream(), null);
+
+        assertTrue(streamed.getStatements() < 800, "streamed chunks were not coalesced: " + streamed.getStatements());
+        assertEquals(materialized.rowCount(Dish.class), streamed.rowCount(Dish.class));
+        for (long id = 1; id <= 20; id++) {
+            assertEquals(materialized.row(Dish.class, id), streamed.row(Dish.class, id), "dish " + id);
+        }
+    }
+}
@@ -1,9 +1,18 @@
 package com.example;
 
 import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import com.datastax.driver.core.Session;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TestUtils {
 
@@ -50,4 +59,78 @@ public class TestUtils {
         // This will read "eventSource", "bootstrapServer", and "records" -> "topic/partition" map.
         return mapper.readValue(SAMPLE_KAFKA_JSON, KafkaEvent.class);
     }
+
+    /**
+     * Returns SAMPLE_KAFKA_JSON as the raw invocation payload, for RequestStreamHandlers.
+     */
+    public static InputStream sampleKafkaJsonStream() {
+        return new ByteArrayInputStream(SAMPLE_KAFKA_JSON.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A Dish with only its keys and storeId set: the smallest entity the write path accepts.
+     */
+    public static Dish dish(long id, long version) {
+        return dish(id, version, 600_000L);
+    }
+
+    /**
+     * A Dish with the given keys and storeId, any of which may be null; every other column is null.
+     */
+    public static Dish dish(Long id, Long version, Long storeId) {
+        Dish dish = new Dish();
+        dish.setId(id);
+        dish.setVersion(version);
+        dish.setStoreId(storeId);
+        return dish;
+    }
+
+    /**
+     * A Dish with every column set, derived from its id only: two versions of an id have equal contents.
+     */
+    public static Dish generatedDish(long id, long version) {
+        return KafkaEventGenerator.builder().build().dish(id, version, new Random(id));
+    }
+
+    /**
+     * Builds a network-free Session stub that reports one connected host until {@code closed} is set.
+     * Only the methods used by CassandraClientProvider's lifecycle are answered.
+     */
+    public static Session stubSession(AtomicBoolean closed) {
+        Session.State state = (Session.State) Proxy.newProxyInstance(
+                Session.State.class.getClassLoader(), new Class<?>[]{Session.State.class},
+                (proxy, method, args) -> "getConnectedHosts".equals(method.getName())
+                        ? Collections.singletonList(null)
+                        : null);
+        return (Session) Proxy.newProxyInstance(
+                Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isClosed":
+                            return closed.get();
+                        case "close":
+                            closed.set(true);
+                            return null;
+                        case "getState":
+                            return state;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    /**
+     * Configuration for running the handler against an in-memory session: Dish records, spool under
+     * {@code spoolDir}, and enough retry attempts that injected errors do not leave writes behind.
+     */
+    public static EnvironmentConfig testConfig(Path spoolDir) {
+        return EnvironmentConfig.builder()
+                .parserName(DishParser.class.getName())
+                .cassandraTableName("dish")
+                .spoolDir(spoolDir.toString())
+                .writeMaxAttempts(5)
+                .writeRetryBaseDelayMs(1)
+                .writeRetryMaxDelayMs(20)
+                .build();
+    }
 }
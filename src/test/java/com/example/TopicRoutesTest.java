@@ -0,0 +1,117 @@
+package com.example;
+
+import com.amazonaws.services.lambda.runtime.events.KafkaEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopicRoutesTest {
+
+    @Test
+    void parsesTopicRoutes() {
+        Map<String, EnvironmentConfig.TopicRoute> routes =
+                EnvironmentConfig.parseTopicRoutes(" o2o.store.1=com.example.DishParser , item.catalog=ItemCatalogParser:item_catalog,");
+
+        assertEquals(2, routes.size());
+        assertEquals(new EnvironmentConfig.TopicRoute("com.example.DishParser", null), routes.get("o2o.store.1"));
+        assertEquals(new EnvironmentConfig.TopicRoute("ItemCatalogParser", "item_catalog"), routes.get("item.catalog"));
+        assertThrows(IllegalArgumentException.class, () -> EnvironmentConfig.parseTopicRoutes("no-parser="));
+    }
+
+    @Test
+    void routeTablesRequireThePreparedEngine() {
+        Map<String, EnvironmentConfig.TopicRoute> routes =
+                EnvironmentConfig.parseTopicRoutes("o2o.store.1=DishParser,item.catalog=ItemCatalogParser:item_catalog");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> EnvironmentConfig.checkRouteTables(routes, WriteEngine.Kind.MAPPER));
+        assertDoesNotThrow(() -> EnvironmentConfig.checkRouteTables(routes, WriteEngine.Kind.PREPARED));
+        assertDoesNotThrow(() -> EnvironmentConfig.checkRouteTables(
+                EnvironmentConfig.parseTopicRoutes("o2o.store.1=DishParser"), WriteEngine.Kind.MAPPER));
+    }
+
+    @Test
+    void oneInvocationWritesEveryRoutedModelThroughOneSession(@TempDir Path spoolDir) throws Exception {
+        KafkaEvent event = KafkaEventGenerator.builder()
+                .partitions(2)
+                .recordsPerPartition(50)
+                .build()
+                .generate();
+        Map<String, List<KafkaEvent.KafkaEventRecord>> records = new LinkedHashMap<>(event.getRecords());
+        List<KafkaEvent.KafkaEventRecord> items = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            items.add(ItemCatalogRecords.record(id, ItemCatalogRecords.encode(ItemCatalogRecords.dto(id, 100 + id, 2), null)));
+        }
+        records.put("item.catalog-0", items);
+        KafkaEvent.KafkaEventRecord unrouted = ItemCatalogRecords.record(1, "AA==");
+        unrouted.setTopic("unknown.topic");
+        records.put("unknown.topic-0", List.of(unrouted));
+        event.setRecords(records);
+
+        Map<String, EnvironmentConfig.TopicRoute> routes = new LinkedHashMap<>();
+        routes.put("o2o.store.1", new EnvironmentConfig.TopicRoute(DishParser.class.getName(), "dish"));
+        routes.put("item.catalog", new EnvironmentConfig.TopicRoute(ItemCatalogParser.class.getName(), "item_catalog"));
+        EnvironmentConfig config = TestUtils.testConfig(spoolDir).toBuilder()
+                .parserName(null)
+                .writeEngine(WriteEngine.Kind.PREPARED)
+                .topicRoutes(routes)
+                // The unrouted record counts as a parse failure
+                .fatalFailures(EnumSet.of(FailureKind.SPOOL_ERROR))
+                .build();
+        InMemoryCassandraSession cassandra = InMemoryCassandraSession.builder().build();
+        List<CassandraSession> connected = new ArrayList<>();
+        MainLambdaHandler handler = new MainLambdaHandler(new CassandraClientProvider(() -> {
+            connected.add(cassandra);
+            return cassandra;
+        }), () -> config);
+
+        assertEquals("completed", handler.handleRequest(event, null));
+
+        assertEquals(1, connected.size());
+        assertEquals(100, cassandra.rowCount(Dish.class));
+        assertEquals(20, cassandra.rowCount(ItemCatalog.class));
+        assertEquals(120L, cassandra.row(ItemCatalog.class, 20L).get("version"));
+    }
+
+    @Test
+    void contestedKeysAreWrittenToTheTableOfTheirTopic(@TempDir Path spoolDir) {
+        Map<String, List<KafkaEvent.KafkaEventRecord>> records = new LinkedHashMap<>();
+        for (String topic : List.of("o2o.store.1", "o2o.store.archive")) {
+            // Few keys over two partitions: every key is contested
+            records.putAll(KafkaEventGenerator.builder()
+                    .topic(topic)
+                    .partitions(2)
+                    .recordsPerPartition(20)
+                    .distinctKeys(5)
+                    .build()
+                    .generate()
+                    .getRecords());
+        }
+        KafkaEvent event = new KafkaEvent();
+        event.setRecords(records);
+
+        Map<String, EnvironmentConfig.TopicRoute> routes = new LinkedHashMap<>();
+        routes.put("o2o.store.1", new EnvironmentConfig.TopicRoute(DishParser.class.getName(), "dish"));
+        routes.put("o2o.store.archive", new EnvironmentConfig.TopicRoute(DishParser.class.getName(), "dish_archive"));
+        EnvironmentConfig config = TestUtils.testConfig(spoolDir).toBuilder()
+                .parserName(null)
+                .writeEngine(WriteEngine.Kind.PREPARED)
+                .topicRoutes(routes)
+                .build();
+        InMemoryCassandraSession cassandra = InMemoryCassandraSession.builder().build();
+        MainLambdaHandler handler = new MainLambdaHandler(new CassandraClientProvider(() -> cassandra), () -> config);
+
+        assertEquals("completed", handler.handleRequest(event, null));
+
+        assertEquals(5, cassandra.rowCount(new RouteKey(Dish.class, "dish")));
+        assertEquals(5, cassandra.rowCount(new RouteKey(Dish.class, "dish_archive")));
+    }
+}
@@ -0,0 +1,189 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.TestUtils.dish;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteLanesTest {
+
+    @Test
+    void sameKeyWritesRunInOrderWhileOtherKeysRunInParallel() {
+        ManualRows rows = new ManualRows();
+        WriteLanes lanes = new WriteLanes(Dish.class, 1024, true);
+        AsyncCassandraWriter writer = writer(rows, lanes);
+
+        CompletableFuture<List<Object>> first = writer.writeAsync(List.of(dish(1, 100), dish(2, 100)));
+        CompletableFuture<List<Object>> second = writer.writeAsync(List.of(dish(1, 200), dish(3, 100)));
+
+        assertEquals(List.of(100L, 100L, 100L), rows.versions());
+        assertEquals(1, lanes.depths()[lanes.stripeOf(1L)]);
+        assertEquals(1, lanes.stats().getMaxDepth());
+        assertEquals(lanes.stripeOf(1L), lanes.stats().getHottestStripe());
+
+        rows.ack(0);
+        rows.awaitRequests(4);
+        assertEquals(List.of(100L, 100L, 100L, 200L), rows.versions());
+        assertEquals(1L, ((Dish) rows.entities.get(3)).getId());
+        assertEquals(0, lanes.stats().getWaiting());
+
+        rows.ackAll();
+        assertTrue(first.join().isEmpty());
+        assertTrue(second.join().isEmpty());
+        assertEquals(0, writer.getWindowStats().getInFlight());
+        assertEquals(0, writer.getWindowStats().getQueued());
+    }
+
+    @Test
+    void waitingWriteIsCollapsedIntoTheNewestVersion() {
+        ManualRows rows = new ManualRows();
+        WriteLanes lanes = new WriteLanes(Dish.class, 1024, true);
+        AsyncCassandraWriter writer = writer(rows, lanes);
+
+        writer.writeAsync(List.of(dish(1, 100)));
+        CompletableFuture<List<Object>> waiting = writer.writeAsync(List.of(dish(1, 200)));
+        CompletableFuture<List<Object>> newest = writer.writeAsync(List.of(dish(1, 300)));
+        CompletableFuture<List<Object>> late = writer.writeAsync(List.of(dish(1, 250)));
+
+        rows.ack(0);
+        rows.awaitRequests(2);
+        assertEquals(List.of(100L, 300L), rows.versions());
+        assertFalse(waiting.isDone());
+
+        rows.fail(1);
+        assertEquals(1, waiting.join().size());
+        assertEquals(1, newest.join().size());
+        assertEquals(1, late.join().size());
+        assertEquals(2, lanes.stats().getCollapsed());
+        assertEquals(0, writer.getWindowStats().getQueued());
+    }
+
+    @Test
+    void writesNotCoveringTheOlderColumnsAreNotCollapsed() {
+        ManualRows rows = new ManualRows();
+        WriteLanes lanes = new WriteLanes(Dish.class, 1024, false);
+        AsyncCassandraWriter writer = writer(rows, lanes);
+
+        writer.writeAsync(List.of(dish(1, 100)));
+        writer.writeAsync(List.of(dish(1, 200)));
+        Dish partial = dish(1, 300);
+        partial.setStoreId(null);
+        writer.writeAsync(List.of(partial));
+
+        assertEquals(2, lanes.depths()[lanes.stripeOf(1L)]);
+        rows.ack(0);
+        rows.awaitRequests(2);
+        rows.ack(1);
+        rows.awaitRequests(3);
+        assertEquals(List.of(100L, 200L, 300L), rows.versions());
+        assertEquals(0, lanes.stats().getCollapsed());
+        assertEquals(2, lanes.stats().getPeakDepth());
+    }
+
+    @Test
+    void writesStillWaitingAtTheDeadlineFailWithoutBeingSent() throws Exception {
+        ManualRows rows = new ManualRows();
+        AsyncCassandraWriter writer = writer(rows, new WriteLanes(Dish.class, 1024, false));
+        InvocationDeadline deadline = InvocationDeadline.after(50);
+
+        CompletableFuture<List<Object>> running = writer.writeAsync(List.of(dish(1, 100)), null, deadline);
+        CompletableFuture<List<Object>> waiting = writer.writeAsync(List.of(dish(1, 200)), null, deadline);
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        assertEquals(1, running.join().size());
+        assertEquals(1, waiting.join().size());
+        assertEquals(List.of(100L), rows.versions());
+        assertEquals(0, writer.getWindowStats().getQueued());
+    }
+
+    @Test
+    void synchronouslyAcknowledgedLaneDoesNotRecurse() {
+        List<Object> written = Collections.synchronizedList(new ArrayList<>());
+        CassandraSession.RowWriter immediate = (entities, timestamps) -> {
+            written.addAll(entities);
+            return CompletableFuture.completedFuture(null);
+        };
+        // One stripe: every request waits behind the previous one, and distinct keys are never collapsed
+        AsyncCassandraWriter writer = writer(immediate, new WriteLanes(Dish.class, 1, true));
+        List<Object> dishes = new ArrayList<>();
+        for (long id = 1; id <= 20_000; id++) {
+            dishes.add(dish(id, 100));
+        }
+
+        assertTrue(writer.writeAsync(dishes).join().isEmpty());
+        assertEquals(dishes, written);
+    }
+
+    @Test
+    void stripesAreRoundedUpToAPowerOfTwoAndOffByDefault() {
+        assertEquals(1024, new WriteLanes(Dish.class, 1000, true).stats().getStripes());
+        assertNull(WriteLanes.fromConfig(Dish.class, EnvironmentConfig.builder().build()), "lanes are opt-in");
+        assertEquals(4096, WriteLanes.fromConfig(Dish.class,
+                EnvironmentConfig.builder().writeLaneStripes(4096).build()).stats().getStripes());
+        assertThrows(IllegalArgumentException.class, () -> new WriteLanes(Dish.class, 0, true));
+    }
+
+    private static AsyncCassandraWriter writer(CassandraSession.RowWriter rows, WriteLanes lanes) {
+        return new AsyncCassandraWriter(AsyncCassandraWriter.Settings.builder()
+                .rows(rows)
+                .modelClass(Dish.class)
+                .window(new AdaptiveWriteWindow(64, 64, 1000))
+                .retryPolicy(WriteRetryPolicy.fromConfig(EnvironmentConfig.builder().writeMaxAttempts(1).build()))
+                .lanes(lanes)
+                .build());
+    }
+
+    /**
+     * Records every request and completes it only when the test acks or fails it.
+     */
+    private static final class ManualRows implements CassandraSession.RowWriter {
+
+        final List<Object> entities = Collections.synchronizedList(new ArrayList<>());
+        final List<CompletableFuture<Void>> acks = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public CompletableFuture<Void> writeAsync(List<Object> entities, long[] timestamps) {
+            CompletableFuture<Void> ack = new CompletableFuture<>();
+            this.entities.addAll(entities);
+            acks.add(ack);
+            return ack;
+        }
+
+        List<Long> versions() {
+            List<Long> versions = new ArrayList<>();
+            for (Object entity : entities) {
+                versions.add(((Dish) entity).getVersion());
+            }
+            return versions;
+        }
+
+        /** Waits for the lane executor to submit the next request of a lane. */
+        void awaitRequests(int count) {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (acks.size() < count) {
+                assertTrue(System.currentTimeMillis() < deadline, "Only " + acks.size() + " of " + count + " requests");
+                Thread.onSpinWait();
+            }
+        }
+
+        void ack(int request) {
+            acks.get(request).complete(null);
+        }
+
+        void fail(int request) {
+            acks.get(request).completeExceptionally(new IllegalStateException("write failed"));
+        }
+
+        void ackAll() {
+            for (CompletableFuture<Void> ack : new ArrayList<>(acks)) {
+                ack.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static com.example.TestUtils.dish;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteSpoolTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void spilledEntitiesAreReplayedUntilDeleted() throws IOException {
+        WriteSpool spool = new WriteSpool(dir, 1024 * 1024, 5);
+        Dish first = dish(1L, 10L);
+        Dish second = dish(2L, 20L);
+
+        spool.spill(Map.of(new RouteKey(Dish.class, null), Arrays.asList(first, second)), null);
+
+        WriteSpool.Pending pending = spool.pending();
+        assertEquals(2, pending.size());
+        List<Object> dishes = pending.getEntitiesByRoute().get(new RouteKey(Dish.class, null));
+        assertEquals(Arrays.asList(first, second), dishes);
+
+        pending.delete();
+        assertTrue(spool.pending().isEmpty());
+    }
+
+    @Test
+    void entitiesKeepTheTableTheyFailedToBeWrittenTo() throws IOException {
+        WriteSpool spool = new WriteSpool(dir, 1024 * 1024, 5);
+        RouteKey dish = new RouteKey(Dish.class, "dish");
+        RouteKey archive = new RouteKey(Dish.class, "dish_archive");
+        Map<RouteKey, List<Object>> failed = new LinkedHashMap<>();
+        failed.put(dish, List.of(dish(1L, 10L)));
+        failed.put(archive, List.of(dish(1L, 10L), dish(2L, 20L)));
+
+        spool.spill(failed, null);
+
+        assertEquals(failed, spool.pending().getEntitiesByRoute());
+    }
+
+    @Test
+    void writesFailingInMaxAttemptsInvocationsAreDeadLettered() throws IOException {
+        WriteSpool spool = new WriteSpool(dir, 1024 * 1024, 3);
+        RouteKey route = new RouteKey(Dish.class, "dish");
+        spool.spill(Map.of(route, List.of(dish(1L, 10L))), null);
+
+        // Each invocation replays the spool, fails the write again and spills it with one more attempt
+        for (int attempts = 1; attempts < 3; attempts++) {
+            WriteSpool.Pending replayed = spool.pending();
+            Object entity = replayed.getEntitiesByRoute().get(route).get(0);
+            assertEquals(attempts, replayed.attemptsOf(entity));
+            assertEquals(attempts == 2 ? 1 : 0, spool.spill(Map.of(route, List.of(entity)), replayed));
+            replayed.delete();
+        }
+
+        assertTrue(spool.pending().isEmpty());
+        WriteSpool.Pending deadLetters = spool.deadLetters();
+        Object poison = deadLetters.getEntitiesByRoute().get(route).get(0);
+        assertEquals(dish(1L, 10L), poison);
+        assertEquals(3, deadLetters.attemptsOf(poison));
+        // An entity that was not replayed, even an equal one, starts at one attempt
+        assertEquals(0, spool.spill(Map.of(route, List.of(dish(1L, 10L))), deadLetters));
+        WriteSpool.Pending fresh = spool.pending();
+        assertEquals(1, fresh.attemptsOf(fresh.getEntitiesByRoute().get(route).get(0)));
+    }
+
+    @Test
+    void refusesToGrowBeyondMaxBytes() {
+        WriteSpool spool = new WriteSpool(dir, 16, 5);
+
+        assertThrows(IOException.class, () -> spool.spill(Map.of(new RouteKey(Dish.class, null), List.of(dish(1L, 10L))), null));
+        assertDoesNotThrow(() -> assertTrue(spool.pending().isEmpty()));
+    }
+
+    @Test
+    void writesThatMayHaveBeenAppliedAreDeadLetteredAtOnce() throws IOException {
+        WriteSpool spool = new WriteSpool(dir, 1024 * 1024, 5);
+        RouteKey route = new RouteKey(Dish.class, "dish");
+        Dish timedOut = dish(1L, 10L);
+        Dish refused = dish(2L, 20L);
+
+        assertEquals(1, spool.spill(Map.of(route, List.of(timedOut, refused)), null, Set.of(timedOut)));
+
+        assertEquals(List.of(refused), spool.pending().getEntitiesByRoute().get(route));
+        assertEquals(List.of(timedOut), spool.deadLetters().getEntitiesByRoute().get(route));
+    }
+
+    @Test
+    void filesOfAnyOtherLayoutAreRejected() throws IOException {
+        WriteSpool spool = new WriteSpool(dir, 1024 * 1024, 5);
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+                Files.newOutputStream(dir.resolve("spool-1-1.spool"))))) {
+            out.writeInt(0x53504F32);
+        }
+
+        IOException e = assertThrows(IOException.class, spool::pending);
+        assertTrue(e.getMessage().startsWith("Not a spool file"), e.getMessage());
+    }
+}